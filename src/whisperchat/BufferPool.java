@@ -0,0 +1,100 @@
+package whisperchat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/*
+ * [다이렉트 버퍼 풀]
+ * 접속마다 버퍼를 들고 있지 않고, 실제로 읽거나 쓸 데이터가 있을 때만 여기서 빌려 쓰고 바로 돌려줌
+ * 크기별 등급(512B ~ 64KB)마다 빈 버퍼 목록을 두고, 요청 크기 이상인 가장 작은 등급에서 꺼냄
+ * 다이렉트 버퍼를 쓰므로 소켓 읽기/쓰기 때 JVM 내부에서 한 번 더 복사하지 않음
+ *
+ * 이벤트 루프 스레드 하나만 사용하는 전용 풀 (동기화 없음)
+ * 통계 값은 다른 스레드(통계 로그)에서 읽을 수 있도록 volatile
+ */
+public final class BufferPool {
+
+	// 크기 등급 (작은 것부터)
+	static final int[] SIZE_CLASSES = { 512, 2 * 1024, 8 * 1024, 32 * 1024, 64 * 1024 };
+	// 가장 큰 등급 = 한 줄(프레임)의 최대 길이
+	public static final int MAX_BUFFER = SIZE_CLASSES[SIZE_CLASSES.length - 1];
+	// 등급마다 보관할 빈 버퍼 최대 개수 (넘치면 GC에 맡김)
+	private static final int MAX_IDLE_PER_CLASS = 256;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final ArrayDeque<ByteBuffer>[] free = new ArrayDeque[SIZE_CLASSES.length];
+
+	// 통계
+	private volatile long allocatedBytes; // 지금까지 만든 다이렉트 버퍼 총 크기 (버린 것 제외)
+	private volatile long inUseBytes; // 지금 빌려간 버퍼 총 크기
+	private volatile long acquireCount;
+	private volatile long allocateCount; // 풀에 없어서 새로 만든 횟수
+
+	public BufferPool() {
+		for (int i = 0; i < free.length; i++)
+			free[i] = new ArrayDeque<>();
+	}
+
+	// [빌리기] minCapacity 이상인 가장 작은 등급의 버퍼를 비운 상태(clear)로 돌려줌
+	public ByteBuffer acquire(int minCapacity) {
+		int cls = classOf(minCapacity);
+		if (cls < 0)
+			throw new IllegalArgumentException("버퍼 요청 크기 초과: " + minCapacity);
+
+		ByteBuffer buf = free[cls].pollLast();
+		if (buf == null) {
+			buf = ByteBuffer.allocateDirect(SIZE_CLASSES[cls]);
+			allocatedBytes += buf.capacity();
+			allocateCount++;
+		}
+		buf.clear();
+		acquireCount++;
+		inUseBytes += buf.capacity();
+		return buf;
+	}
+
+	// [돌려주기] 등급별 목록에 다시 넣음 (목록이 가득 차면 버림)
+	public void release(ByteBuffer buf) {
+		if (buf == null)
+			return;
+		inUseBytes -= buf.capacity();
+		int cls = classOf(buf.capacity());
+		if (cls >= 0 && SIZE_CLASSES[cls] == buf.capacity() && free[cls].size() < MAX_IDLE_PER_CLASS) {
+			free[cls].addLast(buf);
+		} else {
+			allocatedBytes -= buf.capacity();
+		}
+	}
+
+	private static int classOf(int size) {
+		for (int i = 0; i < SIZE_CLASSES.length; i++) {
+			if (size <= SIZE_CLASSES[i])
+				return i;
+		}
+		return -1;
+	}
+
+	// 지금보다 한 단계 큰 등급의 크기 (이미 최대면 -1)
+	static int nextSize(int capacity) {
+		int cls = classOf(capacity);
+		if (cls < 0 || cls + 1 >= SIZE_CLASSES.length)
+			return -1;
+		return SIZE_CLASSES[cls + 1];
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	public long getInUseBytes() {
+		return inUseBytes;
+	}
+
+	public long getAcquireCount() {
+		return acquireCount;
+	}
+
+	public long getAllocateCount() {
+		return allocateCount;
+	}
+}
@@ -0,0 +1,528 @@
+package whisperchat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * [채팅 기록 검색 색인] (역색인: 색인어 -> 그 색인어가 들어 있는 메시지 목록)
+ * broadcast / 귓속말을 색인해서 "지난주에 누가 X라고 했지?"를 SEARCH 명령으로 찾음
+ *
+ * 1. 색인 요청(submit)은 큐에 넣기만 하고 바로 돌아옴 -> 메시지 전달(이벤트 루프)을 기다리게 하지 않음
+ *    큐가 가득 차면 그 메시지는 색인하지 않고 버린 수만 셈 (전달이 우선)
+ * 2. 색인 스레드가 큐를 꺼내 메모리 세그먼트에 추가, FLUSH_DOCS개가 쌓이거나 FLUSH_INTERVAL이 지나면 디스크 세그먼트로 씀
+ * 3. 같은 단계(level)의 세그먼트가 MERGE_FACTOR개 이어지면 합치기 스레드가 한 단계 위 세그먼트 하나로 합침
+ *    (새 세그먼트는 항상 맨 뒤에 붙으므로 같은 단계끼리는 늘 붙어 있음 -> docId 범위도 이어짐)
+ *    합치기는 파일끼리 흘려 쓰므로(IndexSegment.merge) 힙 사용량은 세그먼트 크기와 상관없음
+ *    합칠 세그먼트들의 크기 합이 MAX_MERGE_BYTES를 넘으면 더 합치지 않음 (기록 전체를 계속 다시 쓰지 않고, 세그먼트가 2GB를 넘지 않게)
+ * 4. 검색은 메모리 세그먼트 + 디스크 세그먼트 모두에서, 검색어의 색인어가 전부 들어 있는 메시지를 점수순으로
+ *    귓속말은 보낸 사람과 받는 사람에게만 보임
+ *
+ * 세그먼트 목록 / 메모리 세그먼트는 읽기-쓰기 락으로 보호 (검색끼리는 동시에, 목록을 바꿀 때만 잠깐 배타)
+ * 서버가 갑자기 죽으면 아직 디스크에 쓰지 않은 메모리 세그먼트(최대 FLUSH_INTERVAL 분량)는 잃음
+ */
+public final class ChatIndex {
+
+	// 메모리 세그먼트를 디스크로 내리는 기준 (문서 수 / 시간)
+	private static final int FLUSH_DOCS = 4096;
+	private static final long FLUSH_INTERVAL_MILLIS = 10_000;
+	// 같은 단계 세그먼트가 이만큼 모이면 합침
+	private static final int MERGE_FACTOR = 4;
+	// 합칠 세그먼트들의 파일 크기 합 상한 (이보다 크면 그대로 둠)
+	private static final long MAX_MERGE_BYTES = 512L * 1024 * 1024;
+	// 색인 대기 큐 크기 (넘치면 버림)
+	private static final int QUEUE_CAPACITY = 65_536;
+	// 최근 메시지에 주는 가산점의 반감 기준 (하루)
+	private static final double RECENCY_DAYS = 1.0;
+
+	// 색인된 메시지 하나 (to가 null이면 broadcast, 아니면 귓속말)
+	static final class Doc {
+		final long id;
+		final long time;
+		final String from;
+		final String to;
+		final String text;
+
+		Doc(long id, long time, String from, String to, String text) {
+			this.id = id;
+			this.time = time;
+			this.from = from;
+			this.to = to;
+			this.text = text;
+		}
+	}
+
+	// 검색 결과 한 건
+	public static final class Hit {
+		public final long time;
+		public final String from;
+		public final String to;
+		public final String text;
+		final double score;
+
+		Hit(Doc d, double score) {
+			this.time = d.time;
+			this.from = d.from;
+			this.to = d.to;
+			this.text = d.text;
+			this.score = score;
+		}
+	}
+
+	// 메모리 세그먼트와 디스크 세그먼트를 같은 방식으로 검색하기 위한 공통 모양
+	interface Source {
+		int docCount();
+
+		int docFreq(String term);
+
+		int[] postings(String term);
+
+		Doc doc(int local);
+	}
+
+	// [메모리 세그먼트] 색인 스레드만 추가, 검색은 읽기 락을 잡고 읽음
+	private static final class MemSegment implements Source {
+		final List<Doc> docs = new ArrayList<>();
+		final HashMap<String, int[]> postings = new HashMap<>();
+		final HashMap<String, Integer> sizes = new HashMap<>();
+
+		void add(Doc d) {
+			int local = docs.size();
+			docs.add(d);
+			Map<String, Integer> tf = new HashMap<>();
+			for (String term : ChatTokenizer.tokenize(d.text))
+				tf.merge(term, 1, Integer::sum);
+			for (Map.Entry<String, Integer> e : tf.entrySet()) {
+				String term = e.getKey();
+				int n = sizes.getOrDefault(term, 0);
+				int[] list = postings.get(term);
+				if (list == null || list.length < n + 2) {
+					list = list == null ? new int[4] : Arrays.copyOf(list, list.length * 2);
+					postings.put(term, list);
+				}
+				list[n] = local;
+				list[n + 1] = e.getValue();
+				sizes.put(term, n + 2);
+			}
+		}
+
+		@Override
+		public int docCount() {
+			return docs.size();
+		}
+
+		@Override
+		public int docFreq(String term) {
+			return sizes.getOrDefault(term, 0) / 2;
+		}
+
+		@Override
+		public int[] postings(String term) {
+			int[] list = postings.get(term);
+			return list == null ? null : Arrays.copyOf(list, sizes.get(term));
+		}
+
+		@Override
+		public Doc doc(int local) {
+			return docs.get(local);
+		}
+	}
+
+	private final File dir;
+	private final BlockingQueue<Doc> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	// 디스크 세그먼트 (오래된 것부터, docId 오름차순)
+	private final List<IndexSegment> segments = new ArrayList<>();
+	private MemSegment mem = new MemSegment();
+	// 디스크로 쓰는 중인 메모리 세그먼트 (다 쓸 때까지 검색에 포함)
+	private MemSegment flushing;
+	private final ExecutorService merger = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "index-merge");
+		t.setDaemon(true);
+		return t;
+	});
+	private final Thread indexer;
+	private volatile boolean running = true;
+
+	// 색인 스레드 전용
+	private long nextDocId;
+	private long nextSegmentNo;
+	private long lastFlush = System.currentTimeMillis();
+
+	// 통계
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong searches = new AtomicLong();
+	private final AtomicLong searchNanos = new AtomicLong();
+
+	public ChatIndex(String dirName) {
+		this.dir = new File(dirName);
+		if (!dir.exists() && !dir.mkdirs())
+			ServerLog.warn("index.mkdir_failed", "dir", dir);
+		loadSegments();
+		indexer = new Thread(this::runIndexer, "chat-indexer");
+		indexer.setDaemon(true);
+		indexer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "chat-index-flush"));
+	}
+
+	/*
+	 * 시작할 때 디스크 세그먼트를 모두 엶
+	 * 합치기 도중 멈춰서 옛 세그먼트가 남아 있으면 (합친 세그먼트의 docId 범위 안에 들어감) 지움
+	 */
+	private void loadSegments() {
+		// 쓰다가 멈춘 임시 파일은 버림
+		File[] partial = dir.listFiles((d, name) -> name.endsWith(".idx.tmp"));
+		if (partial != null) {
+			for (File f : partial)
+				f.delete();
+		}
+		File[] files = dir.listFiles((d, name) -> name.startsWith("seg-") && name.endsWith(".idx"));
+		List<IndexSegment> opened = new ArrayList<>();
+		if (files != null) {
+			for (File f : files) {
+				try {
+					opened.add(IndexSegment.open(f));
+				} catch (IOException e) {
+					ServerLog.warn("index.bad_segment", "file", f, "error", e);
+				}
+				nextSegmentNo = Math.max(nextSegmentNo, segmentNo(f) + 1);
+			}
+		}
+		// 큰(합쳐진) 세그먼트부터 보면서, 이미 덮인 범위의 세그먼트는 버림
+		opened.sort(Comparator.comparingInt((IndexSegment s) -> -s.docCount));
+		for (IndexSegment s : opened) {
+			boolean covered = false;
+			for (IndexSegment kept : segments) {
+				if (kept.minDocId <= s.minDocId && s.maxDocId <= kept.maxDocId)
+					covered = true;
+			}
+			if (covered)
+				s.delete();
+			else
+				segments.add(s);
+		}
+		segments.sort(Comparator.comparingLong(s -> s.minDocId));
+		for (IndexSegment s : segments)
+			nextDocId = Math.max(nextDocId, s.maxDocId + 1);
+
+		long docs = 0;
+		for (IndexSegment s : segments)
+			docs += s.docCount;
+		ServerLog.info("index.open", "segments", segments.size(), "docs", docs);
+	}
+
+	private static long segmentNo(File f) {
+		String name = f.getName();
+		try {
+			return Long.parseLong(name.substring(4, name.length() - 4), 16);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	// ---------------- 색인 ----------------
+
+	/*
+	 * [색인 요청] 아무 스레드에서나 호출 (이벤트 루프에서 바로 부름), 큐에 넣기만 함
+	 * to가 null이면 broadcast, 아니면 from -> to 귓속말
+	 */
+	public void submit(String from, String to, String text) {
+		if (!queue.offer(new Doc(0, System.currentTimeMillis(), from, to, text)))
+			dropped.incrementAndGet();
+	}
+
+	private void runIndexer() {
+		List<Doc> batch = new ArrayList<>();
+		while (running || !queue.isEmpty()) {
+			try {
+				Doc first = queue.poll(500, TimeUnit.MILLISECONDS);
+				if (first != null) {
+					batch.add(first);
+					queue.drainTo(batch, 1024);
+					lock.writeLock().lock();
+					try {
+						for (Doc d : batch)
+							mem.add(new Doc(nextDocId++, d.time, d.from, d.to, d.text));
+					} finally {
+						lock.writeLock().unlock();
+					}
+					batch.clear();
+				}
+				if (mem.docCount() >= FLUSH_DOCS
+						|| (mem.docCount() > 0 && System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MILLIS))
+					flush();
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				ServerLog.error("index.error", "error", e);
+			}
+		}
+	}
+
+	/*
+	 * [메모리 세그먼트 -> 디스크] 색인 스레드에서만 호출
+	 * 메모리 세그먼트를 새 것으로 바꿔 두고(락은 잠깐), 파일 쓰기는 락 없이 한 뒤 세그먼트 목록에 붙임
+	 */
+	private void flush() throws IOException {
+		lastFlush = System.currentTimeMillis();
+		MemSegment frozen;
+		lock.writeLock().lock();
+		try {
+			frozen = mem;
+			mem = new MemSegment();
+			flushing = frozen;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		String[] terms = frozen.postings.keySet().toArray(new String[0]);
+		Arrays.sort(terms);
+		int[][] postings = new int[terms.length][];
+		for (int t = 0; t < terms.length; t++)
+			postings[t] = frozen.postings(terms[t]);
+		IndexSegment seg = IndexSegment.write(newSegmentFile(), 0, frozen.docs, terms, postings);
+
+		lock.writeLock().lock();
+		try {
+			segments.add(seg);
+			flushing = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		ServerLog.debug("index.flush", "docs", seg.docCount, "terms", terms.length);
+		merger.execute(this::mergeIfNeeded);
+	}
+
+	private synchronized File newSegmentFile() {
+		return new File(dir, String.format("seg-%016x.idx", nextSegmentNo++));
+	}
+
+	// ---------------- 합치기 (합치기 스레드) ----------------
+
+	// 맨 뒤에서부터 같은 단계 세그먼트가 MERGE_FACTOR개 이어져 있으면 합침 (합친 결과로 또 조건이 맞으면 반복, 너무 크면 두고 멈춤)
+	private void mergeIfNeeded() {
+		while (true) {
+			List<IndexSegment> run;
+			lock.readLock().lock();
+			try {
+				int n = segments.size();
+				if (n < MERGE_FACTOR)
+					return;
+				int level = segments.get(n - 1).level;
+				run = new ArrayList<>(segments.subList(n - MERGE_FACTOR, n));
+				long bytes = 0;
+				for (IndexSegment s : run) {
+					if (s.level != level)
+						return;
+					bytes += s.sizeBytes();
+				}
+				if (bytes > MAX_MERGE_BYTES)
+					return;
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			try {
+				merge(run);
+			} catch (IOException e) {
+				ServerLog.error("index.merge_failed", "error", e);
+				return;
+			}
+		}
+	}
+
+	// 세그먼트 여러 개(docId 순)를 한 단계 위 세그먼트 하나로 합치고 목록에서 바꿔치기
+	private void merge(List<IndexSegment> run) throws IOException {
+		long start = System.nanoTime();
+		IndexSegment merged = IndexSegment.merge(newSegmentFile(), run.get(0).level + 1, run);
+
+		lock.writeLock().lock();
+		try {
+			int at = segments.indexOf(run.get(0));
+			segments.subList(at, at + run.size()).clear();
+			segments.add(at, merged);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		// 쓰기 락을 잡았다 놓았으므로 옛 세그먼트를 읽는 검색은 더 없음
+		for (IndexSegment s : run)
+			s.delete();
+		ServerLog.info("index.merge", "level", merged.level, "docs", merged.docCount, "ms",
+				(System.nanoTime() - start) / 1_000_000);
+	}
+
+	// ---------------- 검색 ----------------
+
+	/*
+	 * [검색] userId가 볼 수 있는 메시지 중 검색어에 맞는 것을 점수 높은 순으로 최대 limit건
+	 * - 검색어를 같은 방식으로 잘라서 색인어가 모두 들어 있는 메시지만 후보 (AND)
+	 * - 후보는 원문에 검색어의 각 단어가 실제로 들어 있는지 한 번 더 확인 (bigram이 떨어져 있는 경우 제외)
+	 * - from:아이디 를 넣으면 그 사람이 보낸 메시지만
+	 * - 점수: 색인어마다 tf/(tf+1.2) * idf 합 + 최근일수록 가산점 (같으면 최신 순)
+	 */
+	public List<Hit> search(String userId, String query, int limit) {
+		long start = System.nanoTime();
+		String fromFilter = null;
+		List<String> words = new ArrayList<>();
+		for (String w : query.trim().split("\\s+")) {
+			if (w.startsWith("from:") && w.length() > 5)
+				fromFilter = w.substring(5);
+			else if (!w.isEmpty())
+				words.add(w.toLowerCase(Locale.ROOT));
+		}
+		LinkedHashSet<String> terms = new LinkedHashSet<>();
+		for (String w : words)
+			terms.addAll(ChatTokenizer.tokenize(w));
+		if (terms.isEmpty())
+			return Collections.emptyList();
+
+		long now = System.currentTimeMillis();
+		PriorityQueue<Hit> top = new PriorityQueue<>(Comparator.comparingDouble((Hit h) -> h.score)
+				.thenComparingLong(h -> h.time));
+		lock.readLock().lock();
+		try {
+			List<Source> sources = new ArrayList<>(segments);
+			if (flushing != null)
+				sources.add(flushing);
+			sources.add(mem);
+
+			// 전체 문서 수와 색인어별 문서 수 (idf 계산용)
+			long total = 0;
+			Map<String, Long> df = new HashMap<>();
+			for (Source s : sources) {
+				total += s.docCount();
+				for (String t : terms)
+					df.merge(t, (long) s.docFreq(t), Long::sum);
+			}
+			for (String t : terms) {
+				if (df.get(t) == 0)
+					return Collections.emptyList();
+			}
+
+			for (Source s : sources)
+				searchSource(s, terms, df, total, userId, fromFilter, words, now, limit, top);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		List<Hit> hits = new ArrayList<>(top);
+		hits.sort(Comparator.comparingDouble((Hit h) -> -h.score).thenComparingLong(h -> -h.time));
+		searches.incrementAndGet();
+		searchNanos.addAndGet(System.nanoTime() - start);
+		return hits;
+	}
+
+	private static void searchSource(Source s, LinkedHashSet<String> terms, Map<String, Long> df, long total,
+			String userId, String fromFilter, List<String> words, long now, int limit, PriorityQueue<Hit> top) {
+		// 문서 수가 적은 색인어부터 교집합 (후보가 빨리 줄어듦)
+		List<String> order = new ArrayList<>(terms);
+		order.sort(Comparator.comparingInt(s::docFreq));
+		if (s.docFreq(order.get(0)) == 0)
+			return;
+
+		// 후보 문서 -> 점수 (첫 색인어의 목록에서 시작해 다음 색인어에 없는 문서를 빼 나감)
+		HashMap<Integer, Double> scores = null;
+		for (String t : order) {
+			int[] p = s.postings(t);
+			if (p == null)
+				return;
+			double idf = Math.log(1.0 + (double) total / df.get(t));
+			HashMap<Integer, Double> next = new HashMap<>();
+			for (int i = 0; i < p.length; i += 2) {
+				int doc = p[i];
+				double w = p[i + 1] / (p[i + 1] + 1.2) * idf;
+				if (scores == null)
+					next.put(doc, w);
+				else {
+					Double prev = scores.get(doc);
+					if (prev != null)
+						next.put(doc, prev + w);
+				}
+			}
+			scores = next;
+			if (scores.isEmpty())
+				return;
+		}
+
+		for (Map.Entry<Integer, Double> e : scores.entrySet()) {
+			Doc d = s.doc(e.getKey());
+			// 귓속말은 보낸 사람 / 받는 사람에게만
+			if (d.to != null && !d.from.equals(userId) && !d.to.equals(userId))
+				continue;
+			if (fromFilter != null && !d.from.equals(fromFilter))
+				continue;
+			String lower = d.text.toLowerCase(Locale.ROOT);
+			boolean all = true;
+			for (String w : words) {
+				if (!lower.contains(w)) {
+					all = false;
+					break;
+				}
+			}
+			if (!all)
+				continue;
+
+			double ageDays = Math.max(0, now - d.time) / 86_400_000.0;
+			double score = e.getValue() + 1.0 / (1.0 + ageDays / RECENCY_DAYS);
+			top.add(new Hit(d, score));
+			if (top.size() > limit)
+				top.poll();
+		}
+	}
+
+	// ---------------- 통계 / 종료 ----------------
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public long getSearchCount() {
+		return searches.get();
+	}
+
+	public double getAvgSearchMillis() {
+		long n = searches.get();
+		return n == 0 ? 0 : searchNanos.get() / 1e6 / n;
+	}
+
+	public int getSegmentCount() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// 남은 큐와 메모리 세그먼트를 디스크에 쓰고 멈춤 (종료 훅)
+	public void close() {
+		if (!running)
+			return;
+		running = false;
+		try {
+			indexer.join(5000);
+			if (mem.docCount() > 0)
+				flush();
+			merger.shutdown();
+			merger.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException | IOException e) {
+			ServerLog.error("index.close_failed", "error", e);
+		}
+	}
+}
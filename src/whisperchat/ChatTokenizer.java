@@ -0,0 +1,60 @@
+package whisperchat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * [검색어 자르기]
+ * 한글(한자/가나 포함)은 띄어쓰기와 조사 때문에 단어 단위로 자르면 "사과를"과 "사과"가 다른 단어가 되므로
+ * 글자 두 개씩 겹쳐 자름(bigram): "사과를 먹었다" -> 사과, 과를, 먹었, 었다
+ * -> 검색어 "사과"의 bigram이 "사과를"에도 들어 있어서 조사가 붙어도 찾아짐 (한 글자짜리 말덩이는 그 글자 하나)
+ * 영문/숫자는 소문자로 바꿔 단어 하나를 그대로 씀
+ * 색인과 검색어 모두 같은 방식으로 잘라야 함
+ */
+final class ChatTokenizer {
+
+	// 영문/숫자 단어 최대 길이 (넘는 부분은 버림)
+	private static final int MAX_WORD = 32;
+
+	private ChatTokenizer() {
+	}
+
+	// 본문을 색인어 목록으로 (같은 색인어가 여러 번 나오면 그만큼 들어 있음 -> 빈도 계산용)
+	static List<String> tokenize(String text) {
+		List<String> terms = new ArrayList<>();
+		String s = text.toLowerCase(Locale.ROOT);
+		int n = s.length();
+		int i = 0;
+		while (i < n) {
+			char c = s.charAt(i);
+			if (isCjk(c)) {
+				int j = i;
+				while (j < n && isCjk(s.charAt(j)))
+					j++;
+				if (j - i == 1) {
+					terms.add(s.substring(i, j));
+				} else {
+					for (int k = i; k + 1 < j; k++)
+						terms.add(s.substring(k, k + 2));
+				}
+				i = j;
+			} else if (Character.isLetterOrDigit(c)) {
+				int j = i;
+				while (j < n && Character.isLetterOrDigit(s.charAt(j)) && !isCjk(s.charAt(j)))
+					j++;
+				terms.add(s.substring(i, Math.min(j, i + MAX_WORD)));
+				i = j;
+			} else {
+				i++;
+			}
+		}
+		return terms;
+	}
+
+	// 한글 음절/자모, 한자, 히라가나/가타카나
+	private static boolean isCjk(char c) {
+		return (c >= 0xAC00 && c <= 0xD7A3) || (c >= 0x1100 && c <= 0x11FF) || (c >= 0x3130 && c <= 0x318F)
+				|| (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3040 && c <= 0x30FF);
+	}
+}
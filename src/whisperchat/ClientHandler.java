@@ -1,137 +1,287 @@
 package whisperchat;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-// 한 클라이언트를 담당하는 작업 클래스
-// Runnable을 구현하므로, 스레드풀에서 execute() 하면
-// 이 객체의 run() 메서드가 별도 스레드에서 실행
-public class ClientHandler implements Runnable {
+// 한 클라이언트를 담당하는 프로토콜 처리 클래스
+// 소켓 입출력은 Connection(이벤트 루프)이 맡고, 여기서는 받은 한 줄씩 명령을 해석해서 처리
+// onLine()은 항상 이 접속을 맡은 이벤트 루프 스레드에서 호출되므로 접속 상태에 락이 필요 없음
+// 파일을 읽는 회원 처리(LOGIN/REGISTER/CHECK_ID)만 별도 스레드풀에서 돌리고, 결과는 다시 루프 스레드로 가져옴
+public class ClientHandler {
+
+	// 이 시간 동안 아무것도 안 오면 PING을 보냄
+	private static final long PING_INTERVAL_MILLIS = 15_000;
+	// 이 시간 동안 PONG을 포함해 아무것도 안 오면 끊긴 연결로 보고 정리
+	private static final long READ_TIMEOUT_MILLIS = 45_000;
+	// SEARCH 결과 최대 건수와 시각 표시 형식
+	private static final int SEARCH_LIMIT = 20;
+	private static final DateTimeFormatter HIT_TIME = DateTimeFormatter.ofPattern("MM-dd HH:mm")
+			.withZone(ZoneId.systemDefault());
 
-	// 해당 스레드가 담당하는 클라이언트와 연결할 소켓
-	private Socket socket;
 	// 회원가입, 로그인, ID 중복 체크를 맡는 회원 관리 객체
 	private MemberManager memberManager;
 	// 채팅방 관리를 맡는 메인 서버 객체
 	private WhisperChatServer server;
 
-	// 클라이언트와 소통하는 입출력 스트림
-	private Scanner in;
-	private PrintWriter out;
+	// 클라이언트와 연결된 접속 (읽기/쓰기는 이벤트 루프가 처리)
+	private Connection conn;
 
-	// 로그인 성공 후 소켓에 매달릴 사용자 ID 저장
+	// 로그인 성공 후 소켓에 매달릴 사용자 ID 저장 (응답 문구 / 로그 / 색인용)
 	private String userId;
+	// 로그인 때 받은 세션 번호 (퇴장 때 이 번호로 반납)
+	private int handle = SessionTable.NONE;
+	// 로그인 때 한 번 만들어 두는 프레임 앞부분 "<MYP2> MESSAGE 아이디: " / "<MYP2> PRIVATE_FROM 아이디 "
+	private byte[] chatPrefix;
+	private byte[] whisperPrefix;
+	// 이 사용자가 받은 귓속말의 확인 창 (ACK 처리용)
+	private WhisperWindow whisperWindow;
+
+	// 회원 처리 결과를 기다리는 중인지, 그동안 들어온 줄 (결과가 오면 순서대로 처리)
+	private boolean busy;
+	private final ArrayDeque<String> backlog = new ArrayDeque<>();
 
-	public ClientHandler(Socket socket, MemberManager memberManager, WhisperChatServer server) {
-		this.socket = socket;
+	// 마지막으로 클라이언트에게서 한 줄을 받은 시각 (유휴 검사용)
+	private volatile long lastReadNanos;
+	// 타이밍 휠에 걸어 둔 다음 유휴 검사
+	private volatile TimingWheel.Timeout idleTimeout;
+	private volatile boolean closed;
+	// 녹화 파일 안의 접속 번호 (녹화하지 않으면 0)
+	private int captureId;
+
+	public ClientHandler(MemberManager memberManager, WhisperChatServer server) {
 		this.memberManager = memberManager;
 		this.server = server;
 	}
 
-	// 스레드가 시작되면 가장 먼저 실행되는 메서드
-	@Override
-	public void run() {
-		try {
-			in = new Scanner(socket.getInputStream());
-			out = new PrintWriter(socket.getOutputStream(), true);
+	// 이벤트 루프에 접속이 등록되면 가장 먼저 호출
+	public void onOpen(Connection conn) {
+		this.conn = conn;
+		TrafficCapture capture = server.getCapture();
+		if (capture != null)
+			captureId = capture.opened();
+		// FIN 없이 사라진 클라이언트를 찾아내기 위한 유휴 검사 시작
+		lastReadNanos = System.nanoTime();
+		scheduleIdleCheck(PING_INTERVAL_MILLIS);
+	}
 
-			// 로그인/회원가입 -> 로그인 성공까지 도는 루프
-			while (true) {
-				if (!in.hasNextLine())
-					return;
-				String line = in.nextLine();
+	/*
+	 * 클라이언트가 보낸 한 줄 처리 (이벤트 루프 스레드)
+	 * 받은 시각을 기록하고, 회원 처리 결과를 기다리는 중이면 순서가 바뀌지 않도록 뒤로 미뤄둠
+	 */
+	public void onLine(String line) {
+		lastReadNanos = System.nanoTime();
+		// 녹화는 받은 순간 기준 (회원 처리를 기다리며 밀린 줄도 받은 시각으로 남김)
+		if (captureId != 0)
+			server.getCapture().line(captureId, line);
+		if (busy) {
+			backlog.addLast(line);
+			return;
+		}
+		handleLine(line);
+	}
 
-				// 들어오는 모든 메시지에서 헤더 제거
-				if (line.startsWith("<MYP2> ")) {
-					line = line.substring(7);
-				}
+	private void handleLine(String line) {
+		// 들어오는 모든 메시지에서 헤더 제거
+		if (line.startsWith("<MYP2> ")) {
+			line = line.substring(7);
+		}
 
-				String[] parts = line.split(" ", 2);
-				String command = parts[0];
-				String body = (parts.length > 1) ? parts[1] : "";
-
-				// 로그인 성공 시 -> while 문 탈출 -> 채팅 모드 진입
-				if ("LOGIN".equals(command)) {
-					if (doLogin(body))
-						break;
-				} else if ("REGISTER".equals(command)) {
-					doRegister(body);
-				} else if ("CHECK_ID".equals(command)) {
-					doCheckId(body);
-				} else {
-					out.println("<MYP2> ERROR 먼저 로그인을 해주세요.");
-				}
-			}
+		// 하트비트(PING/PONG)는 여기서 처리해서 채팅으로 넘기지 않음
+		if ("PING".equals(line)) {
+			conn.send("<MYP2> PONG");
+			return;
+		}
+		if ("PONG".equals(line))
+			return;
 
-			// 채팅 메시지 처리 (로그인 이후)
-			server.addClient(userId, out);
-			// 전체 사용자에게 해당 사용자가 입장했다고 broadcast
-			server.broadcast("SYSTEM", userId + " 님이 입장하셨습니다.");
+		if (userId == null)
+			handleLoginPhase(line);
+		else
+			handleChat(line);
+	}
 
-			while (in.hasNextLine()) {
-				String line = in.nextLine();
+	// 로그인/회원가입 -> 로그인 성공 전까지 받는 명령
+	private void handleLoginPhase(String line) {
+		String[] parts = line.split(" ", 2);
+		String command = parts[0];
+		String body = (parts.length > 1) ? parts[1] : "";
 
-				// 클라이언트가 보낸 <MYP2> 헤더 제거
-				if (line.startsWith("<MYP2> ")) {
-					line = line.substring(7);
-				}
+		// 로그인 성공 시 -> 채팅 모드 진입
+		if ("LOGIN".equals(command)) {
+			doLogin(body);
+		} else if ("REGISTER".equals(command)) {
+			doRegister(body);
+		} else if ("CHECK_ID".equals(command)) {
+			doCheckId(body);
+		} else {
+			conn.send("<MYP2> ERROR 먼저 로그인을 해주세요.");
+		}
+	}
 
-				// /quit 명령이 들어오면 채팅 루프를 빠져나가고 연결 종료 준비
-				if (line.startsWith("/quit"))
-					break;
+	// 채팅 메시지 처리 (로그인 이후)
+	private void handleChat(String line) {
+		// /quit 명령이 들어오면 연결 종료 -> onClose()에서 퇴장 처리
+		if (line.startsWith("/quit")) {
+			conn.close();
+			return;
+		}
 
-				// WHISPER 대상 메시지 형태면 귓속말 처리
-				if (line.startsWith("WHISPER ")) {
-					doWhisper(line);
-				} else {
-					// 그 외에는 일반 채팅 메시지로 간주하여 전체 사용자에게 broadcast
-					server.broadcast("MESSAGE", userId + ": " + line);
-				}
-			}
+		// WHISPER 대상 메시지 형태면 귓속말 처리
+		if (line.startsWith("WHISPER ")) {
+			doWhisper(line);
+		} else if (line.startsWith("WHISPER_MULTI ")) {
+			doWhisperMulti(line.substring(14));
+		} else if (line.startsWith("ACK ")) {
+			doAck(line.substring(4));
+		} else if (line.startsWith("GROUP_SAVE ")) {
+			doGroupSave(line.substring(11));
+		} else if (line.startsWith("GROUP_DELETE ")) {
+			doGroupDelete(line.substring(13).trim());
+		} else if ("GROUP_LIST".equals(line)) {
+			doGroupList();
+		} else if (line.startsWith("FILE_OFFER ")) {
+			doFileOffer(line.substring(11));
+		} else if (line.startsWith("SEARCH ")) {
+			doSearch(line.substring(7));
+		} else {
+			// 그 외에는 일반 채팅 메시지로 간주하여 전체 사용자에게 broadcast (금지어 검사는 보낼 때 한 번만)
+			String text = filterOrReject(line);
+			if (text == null)
+				return;
+			server.broadcastChat(chatPrefix, text);
+			// 검색 색인은 큐에 넣기만 함 (전달을 기다리게 하지 않음)
+			server.getChatIndex().submit(userId, null, text);
+		}
+	}
 
-		} catch (Exception e) {
-			System.out.println("[ClientHandler] 연결 종료 (" + socket.getInetAddress() + ")");
-		} finally {
-			if (userId != null) {
-				server.removeClient(userId);
-				server.broadcast("SYSTEM", userId + " 님이 퇴장하셨습니다.");
-			}
+	// 금지어 검사 -> 전달할 본문, 막혔으면 보낸 사람에게 알리고 null
+	private String filterOrReject(String text) {
+		String filtered = server.filterMessage(userId, text);
+		if (filtered == null)
+			conn.send("<MYP2> ERROR 금지된 내용이 있어 보내지 않았습니다.");
+		return filtered;
+	}
+
+	// 연결이 끊기면 (정상 종료, 오류, 유휴 타임아웃 모두) 이벤트 루프 스레드에서 한 번 호출
+	public void onClose() {
+		closed = true;
+		TimingWheel.Timeout t = idleTimeout;
+		if (t != null)
+			t.cancel();
+		backlog.clear();
+		if (captureId != 0)
+			server.getCapture().closed(captureId);
+		if (userId != null) {
+			server.removeClient(handle);
+			server.broadcast("SYSTEM", userId + " 님이 퇴장하셨습니다.");
+		}
+	}
+
+	/*
+	 * [회원 처리 위임] 파일을 읽는 작업은 이벤트 루프를 막지 않도록 회원 처리 스레드풀에서 실행
+	 * 결과가 나올 때까지 이 접속에서는 더 읽지 않고, 결과(done)는 루프 스레드에서 실행한 뒤 밀린 줄을 이어서 처리
+	 */
+	private <T> void runMemberTask(Supplier<T> work, Consumer<T> done) {
+		busy = true;
+		conn.suspendRead();
+		server.getMemberPool().execute(() -> {
+			T result;
 			try {
-				socket.close();
-			} catch (IOException e) {
+				result = work.get();
+			} catch (RuntimeException e) {
+				// 처리 중 예외가 나면 상태를 알 수 없으므로 연결을 끊음
+				ServerLog.error("member.task_error", "addr", conn.remoteAddress(), "error", e);
+				conn.close();
+				return;
 			}
+			conn.loop().execute(() -> {
+				if (closed)
+					return;
+				done.accept(result);
+				busy = false;
+				while (!busy && !closed && !backlog.isEmpty())
+					handleLine(backlog.pollFirst());
+				if (!busy && !closed)
+					conn.resumeRead();
+			});
+		});
+	}
+
+	private void scheduleIdleCheck(long delayMillis) {
+		if (!closed)
+			idleTimeout = server.getIdleWheel().schedule(this::checkIdle, delayMillis);
+	}
+
+	/*
+	 * [유휴 검사] 타이밍 휠에서 호출
+	 * 마지막 수신 후 PING_INTERVAL이 지났으면 PING을 보내고, READ_TIMEOUT이 지났으면 연결을 닫음
+	 * 연결을 닫으면 onClose()에서 평소 퇴장 처리(removeClient + 퇴장 알림)를 그대로 탐
+	 */
+	private void checkIdle() {
+		if (closed)
+			return;
+		long idle = (System.nanoTime() - lastReadNanos) / 1_000_000;
+
+		if (idle >= READ_TIMEOUT_MILLIS) {
+			ServerLog.info("conn.idle_timeout", "user", userId, "addr", conn.remoteAddress(), "idleMs", idle);
+			conn.close();
+			return;
+		}
+
+		if (idle >= PING_INTERVAL_MILLIS) {
+			conn.send("<MYP2> PING");
+			scheduleIdleCheck(Math.min(PING_INTERVAL_MILLIS, READ_TIMEOUT_MILLIS - idle));
+		} else {
+			scheduleIdleCheck(PING_INTERVAL_MILLIS - idle);
 		}
 	}
 
 	// [LOGIN 처리] MemberManager에 로그인 요청 후, 비밀번호 일치 여부, 이미 접속중인 ID인지 확인
-	private boolean doLogin(String body) {
+	private void doLogin(String body) {
 		String[] args = body.split(" ");
 		if (args.length < 2)
-			return false;
+			return;
 		String id = args[0];
 		String pw = args[1];
 
-		// MemberManager에 인증 요청 (비밀번호 hash + salt 검증)
-		boolean isValid = memberManager.login(id, pw);
-
-		if (isValid) {
-			// 이미 같은 아이디가 로그인 중이면 중복 접속 방지
-			if (server.isUserOnline(id)) {
-				out.println("<MYP2> LOGIN_FAIL 이미 접속 중인 아이디입니다.");
-				return false;
+		// MemberManager에 인증 요청 (비밀번호 hash + salt 검증) -> 성공하면 이름도 함께 가져옴
+		runMemberTask(() -> memberManager.login(id, pw) ? memberManager.getUserName(id) : null, name -> {
+			if (name == null) {
+				// 비밀번호 또는 ID 불일치
+				conn.send("<MYP2> LOGIN_FAIL 아이디 또는 비밀번호가 틀립니다.");
+				return;
+			}
+			// 이미 같은 아이디가 로그인 중이면 중복 접속 방지 (확인과 등록을 한 번에)
+			int h = server.addClient(id, conn);
+			if (h == SessionTable.NONE) {
+				conn.send("<MYP2> LOGIN_FAIL 이미 접속 중인 아이디입니다.");
+				return;
 			}
 			this.userId = id;
-			String name = memberManager.getUserName(id);
+			this.handle = h;
+			this.chatPrefix = ("<MYP2> MESSAGE " + id + ": ").getBytes(StandardCharsets.UTF_8);
+			this.whisperPrefix = ("<MYP2> PRIVATE_FROM " + id + " ").getBytes(StandardCharsets.UTF_8);
+			this.whisperWindow = server.getWhisperWindow(h);
 			// 프로토콜: LOGIN_SUCCESS <이름>
-			out.println("<MYP2> LOGIN_SUCCESS " + name);
-			return true;
-		} else {
-			// 비밀번호 또는 ID 불일치
-			out.println("<MYP2> LOGIN_FAIL 아이디 또는 비밀번호가 틀립니다.");
-			return false;
-		}
+			conn.send("<MYP2> LOGIN_SUCCESS " + name);
+			// 전체 사용자에게 해당 사용자가 입장했다고 broadcast
+			server.broadcast("SYSTEM", userId + " 님이 입장하셨습니다.");
+			// 로그인 응답 뒤에 귓속말 창에 접속을 붙임 (나가 있는 동안 받지 못한 귓속말은 같은 seq로 다시 보냄)
+			int resent = whisperWindow.attach(conn);
+			if (resent > 0)
+				ServerLog.info("whisper.resend", "user", userId, "count", resent);
+		});
 	}
 
 	// [REGISTER 처리] MemberManager.register()를 호출하여
@@ -139,44 +289,244 @@ public class ClientHandler implements Runnable {
 	private void doRegister(String body) {
 		String[] args = body.split(" ");
 		if (args.length < 4) {
-			out.println("<MYP2> REGISTER_FAIL 입력 형식이 잘못되었습니다.");
+			conn.send("<MYP2> REGISTER_FAIL 입력 형식이 잘못되었습니다.");
 			return;
 		}
 		// args[0]=id, args[1]=pw, args[2]=name, args[3]=email
-		boolean success = memberManager.register(args[0], args[1], args[2], args[3]);
-		if (success)
-			out.println("<MYP2> REGISTER_SUCCESS");
-		else
-			out.println("<MYP2> REGISTER_FAIL 이미 존재하는 아이디입니다.");
+		runMemberTask(() -> memberManager.register(args[0], args[1], args[2], args[3]), success -> {
+			if (success)
+				conn.send("<MYP2> REGISTER_SUCCESS");
+			else
+				conn.send("<MYP2> REGISTER_FAIL 이미 존재하는 아이디입니다.");
+		});
 	}
 
 	// [CHECK_ID 처리] 클라이언트에서 보내온 ID가 이미 가입되어 있는지 확인
 	private void doCheckId(String id) {
-		if (memberManager.isUserExists(id))
-			out.println("<MYP2> ID_TAKEN");
-		else
-			out.println("<MYP2> ID_OK");
+		runMemberTask(() -> memberManager.isUserExists(id), taken -> {
+			if (taken)
+				conn.send("<MYP2> ID_TAKEN");
+			else
+				conn.send("<MYP2> ID_OK");
+		});
 	}
 
-	// [WHISPER 처리]
+	/*
+	 * [WHISPER 처리] 받는 사람에게는 PRIVATE_FROM <보낸사람> <seq>: <메시지>
+	 * 응답: PRIVATE_SENT <대상> <귓속말 번호>: <메시지> (번호는 나중에 PRIVATE_DELIVERED / PRIVATE_READ 알림과 맞춰 봄)
+	 */
 	private void doWhisper(String line) {
 		// line은 헤더가 제거된 상태 (WHISPER target msg)
 		String[] parts = line.substring(8).split(" ", 2);
 		if (parts.length < 2) {
-			out.println("<MYP2> ERROR 귓속말 형식이 틀렸습니다.");
+			conn.send("<MYP2> ERROR 귓속말 형식이 틀렸습니다.");
 			return;
 		}
 
 		String targetId = parts[0];
-		String msg = parts[1];
+		String msg = filterOrReject(parts[1]);
+		if (msg == null)
+			return;
 
 		// 서버에 귓속말 전송 요청
-		boolean sent = server.sendWhisper(userId, targetId, msg);
+		long whisperId = server.nextWhisperId();
+		int result = server.sendWhisper(userId, whisperPrefix, targetId, whisperId, msg.getBytes(StandardCharsets.UTF_8));
 
-		if (sent) {
-			out.println("<MYP2> PRIVATE_SENT " + targetId + ": " + msg);
+		if (result == WhisperWindow.DELIVERED) {
+			conn.send("<MYP2> PRIVATE_SENT " + targetId + " " + whisperId + ": " + msg, Connection.LANE_WHISPER);
+			server.getChatIndex().submit(userId, targetId, msg);
+		} else if (result == WhisperWindow.FULL) {
+			conn.send("<MYP2> ERROR " + targetId + " 님이 아직 받지 못한 귓속말이 너무 많습니다.");
 		} else {
-			out.println("<MYP2> ERROR " + targetId + " 님을 찾을 수 없습니다.");
+			conn.send("<MYP2> ERROR " + targetId + " 님을 찾을 수 없습니다.");
+		}
+	}
+
+	/*
+	 * [WHISPER_MULTI 처리] WHISPER_MULTI <대상들> <메시지>
+	 * 대상은 쉼표로 구분한 ID 목록이고, @그룹이름은 저장해 둔 그룹으로 펼침 (섞어 써도 되고, 겹치는 ID는 한 번만)
+	 * 본문 바이트는 한 번만 만들어 모두에게 보내고(귓속말 번호도 하나), 보낸 사람에게는 결과를 한 줄로 돌려줌
+	 * 응답: PRIVATE_SENT_MULTI <받은 ID들 또는 -> <못 받은 ID들 또는 -> <귓속말 번호> <메시지>
+	 */
+	private void doWhisperMulti(String body) {
+		String[] parts = body.split(" ", 2);
+		if (parts.length < 2 || parts[1].isEmpty()) {
+			conn.send("<MYP2> ERROR 귓속말 형식이 틀렸습니다.");
+			return;
 		}
+		Set<String> targets = new LinkedHashSet<>();
+		for (String t : parts[0].split(",")) {
+			if (t.startsWith("@")) {
+				List<String> group = server.getGroupStore().get(userId, t.substring(1));
+				if (group == null) {
+					conn.send("<MYP2> ERROR 그룹 " + t.substring(1) + " 을(를) 찾을 수 없습니다.");
+					return;
+				}
+				targets.addAll(group);
+			} else if (!t.isEmpty()) {
+				targets.add(t);
+			}
+		}
+		if (targets.isEmpty()) {
+			conn.send("<MYP2> ERROR 귓속말 형식이 틀렸습니다.");
+			return;
+		}
+		if (targets.size() > WhisperGroupStore.MAX_MEMBERS) {
+			conn.send("<MYP2> ERROR 귓속말 대상이 너무 많습니다. (최대 " + WhisperGroupStore.MAX_MEMBERS + "명)");
+			return;
+		}
+
+		String msg = filterOrReject(parts[1]);
+		if (msg == null)
+			return;
+		List<String> reached = new ArrayList<>();
+		List<String> unreached = new ArrayList<>();
+		long whisperId = server.nextWhisperId();
+		server.sendWhisperMulti(userId, whisperPrefix, targets, whisperId, msg.getBytes(StandardCharsets.UTF_8), reached,
+				unreached);
+		conn.send("<MYP2> PRIVATE_SENT_MULTI " + joinIds(reached) + " " + joinIds(unreached) + " " + whisperId + " "
+				+ msg, Connection.LANE_WHISPER);
+		// 받는 사람마다 색인해야 각자 SEARCH로 찾을 수 있음
+		for (String to : reached)
+			server.getChatIndex().submit(userId, to, msg);
+	}
+
+	private static String joinIds(List<String> ids) {
+		return ids.isEmpty() ? "-" : String.join(",", ids);
+	}
+
+	/*
+	 * [ACK 처리] ACK <받은 seq> [<읽은 seq>] : 받은 귓속말을 그 seq까지 모두 받음 / 읽음 (응답 없음)
+	 * 클라이언트가 주기적으로 한 줄만 보내므로 메시지마다 확인이 오가지 않음
+	 * 보낸 사람들에게는 PRIVATE_DELIVERED / PRIVATE_READ <받는사람> <귓속말 번호> 를 보낸 사람마다 한 줄씩 알림
+	 * 숫자가 아니면 무시 (오래된 클라이언트나 잘못된 줄 때문에 접속을 끊지 않음)
+	 */
+	private void doAck(String body) {
+		String[] parts = body.trim().split(" ");
+		long delivered;
+		long read;
+		try {
+			delivered = Long.parseLong(parts[0]);
+			read = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+		} catch (NumberFormatException e) {
+			return;
+		}
+		for (String[] notice : whisperWindow.ack(delivered, read))
+			server.sendToUser(notice[0], notice[1], Connection.LANE_WHISPER);
+	}
+
+	/*
+	 * [GROUP_SAVE 처리] GROUP_SAVE <그룹이름> <ID,ID,...> (같은 이름이 있으면 덮어씀)
+	 * 파일을 다시 쓰므로 회원 처리 스레드풀에서 저장
+	 * 응답: GROUP_OK <그룹이름> <인원> / 실패 시 ERROR
+	 */
+	private void doGroupSave(String body) {
+		String[] parts = body.split(" ", 2);
+		String name = parts[0];
+		if (parts.length < 2 || !WhisperGroupStore.isValidName(name)) {
+			conn.send("<MYP2> ERROR 그룹 이름은 1~20자이고 공백, 쉼표, 콜론, @를 쓸 수 없습니다.");
+			return;
+		}
+		Set<String> ids = new LinkedHashSet<>();
+		for (String id : parts[1].trim().split(",")) {
+			if (!id.isEmpty() && !id.startsWith("@") && !id.contains(" "))
+				ids.add(id);
+		}
+		if (ids.isEmpty() || ids.size() > WhisperGroupStore.MAX_MEMBERS) {
+			conn.send("<MYP2> ERROR 그룹 인원은 1~" + WhisperGroupStore.MAX_MEMBERS + "명이어야 합니다.");
+			return;
+		}
+
+		String me = userId;
+		List<String> members = new ArrayList<>(ids);
+		runMemberTask(() -> {
+			try {
+				if (!server.getGroupStore().save(me, name, members))
+					return "<MYP2> ERROR 그룹은 최대 " + WhisperGroupStore.MAX_GROUPS_PER_USER + "개까지 만들 수 있습니다.";
+				return "<MYP2> GROUP_OK " + name + " " + members.size();
+			} catch (IOException e) {
+				ServerLog.error("group.save_failed", "user", me, "error", e);
+				return "<MYP2> ERROR 그룹을 저장하지 못했습니다.";
+			}
+		}, conn::send);
+	}
+
+	// [GROUP_DELETE 처리] 응답: GROUP_DELETED <그룹이름> / 없으면 ERROR
+	private void doGroupDelete(String name) {
+		String me = userId;
+		runMemberTask(() -> {
+			try {
+				if (!server.getGroupStore().delete(me, name))
+					return "<MYP2> ERROR 그룹 " + name + " 을(를) 찾을 수 없습니다.";
+				return "<MYP2> GROUP_DELETED " + name;
+			} catch (IOException e) {
+				ServerLog.error("group.save_failed", "user", me, "error", e);
+				return "<MYP2> ERROR 그룹을 저장하지 못했습니다.";
+			}
+		}, conn::send);
+	}
+
+	// [GROUP_LIST 처리] 메모리에서 바로 읽음, 응답: GROUP_RESULT <개수> 다음에 그룹마다 GROUP_INFO <그룹이름> <ID,ID,...>
+	private void doGroupList() {
+		Map<String, List<String>> mine = server.getGroupStore().list(userId);
+		conn.send("<MYP2> GROUP_RESULT " + mine.size());
+		for (Map.Entry<String, List<String>> g : mine.entrySet())
+			conn.send("<MYP2> GROUP_INFO " + g.getKey() + " " + String.join(",", g.getValue()));
+	}
+
+	/*
+	 * [SEARCH 처리] SEARCH <검색어> (from:아이디 로 보낸 사람 지정 가능)
+	 * 검색은 검색 전용 스레드풀에서 하고, 결과는 대량 전송 통로로 보냄 (채팅/귓속말보다 뒤로)
+	 * 응답: SEARCH_RESULT <건수> <걸린 ms> 다음에 건마다 SEARCH_HIT <MM-dd HH:mm> <보낸사람> <받는사람 또는 *> <내용>
+	 */
+	private void doSearch(String query) {
+		String me = userId;
+		server.getSearchPool().execute(() -> {
+			long start = System.nanoTime();
+			List<ChatIndex.Hit> hits;
+			try {
+				hits = server.getChatIndex().search(me, query, SEARCH_LIMIT);
+			} catch (RuntimeException e) {
+				ServerLog.error("search.error", "user", me, "error", e);
+				conn.send("<MYP2> ERROR 검색 중 오류가 발생했습니다.");
+				return;
+			}
+			long tookMs = (System.nanoTime() - start) / 1_000_000;
+			conn.send("<MYP2> SEARCH_RESULT " + hits.size() + " " + tookMs, Connection.LANE_BULK);
+			for (ChatIndex.Hit h : hits) {
+				conn.send("<MYP2> SEARCH_HIT " + HIT_TIME.format(Instant.ofEpochMilli(h.time)) + " " + h.from + " "
+						+ (h.to == null ? "*" : h.to) + " " + h.text, Connection.LANE_BULK);
+			}
+		});
+	}
+
+	/*
+	 * [FILE_OFFER 처리] FILE_OFFER <대상ID> <크기> <파일명>
+	 * 파일 내용은 채팅 연결로 보내지 않고, 전송 ID와 데이터 포트만 알려줌
+	 * 응답: FILE_READY <전송ID> <데이터포트> <대상ID> <파일명> / 실패 시 FILE_FAIL <사유>
+	 */
+	private void doFileOffer(String body) {
+		String[] args = body.split(" ", 3);
+		if (args.length < 3) {
+			conn.send("<MYP2> FILE_FAIL 파일 전송 형식이 틀렸습니다.");
+			return;
+		}
+
+		String targetId = args[0];
+		long size = FileTransferServer.parseLong(args[1]);
+		String fileName = args[2];
+
+		if (size < 0 || size > FileTransferServer.MAX_FILE_SIZE) {
+			conn.send("<MYP2> FILE_FAIL 파일 크기가 허용 범위를 벗어났습니다.");
+			return;
+		}
+		if (!server.isUserOnline(targetId)) {
+			conn.send("<MYP2> FILE_FAIL " + targetId + " 님을 찾을 수 없습니다.");
+			return;
+		}
+
+		FileTransferServer files = server.getFileTransferServer();
+		String transferId = files.createTransfer(userId, targetId, fileName, size);
+		conn.send("<MYP2> FILE_READY " + transferId + " " + files.getPort() + " " + targetId + " " + fileName);
 	}
-}
\ No newline at end of file
+}
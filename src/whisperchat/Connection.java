@@ -0,0 +1,531 @@
+package whisperchat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/*
+ * [접속 하나의 입출력]
+ * 기존 Scanner / PrintWriter를 대신해서, 논블로킹 소켓에서 바이트를 읽어 '\n' 단위 줄로 잘라 ClientHandler에 넘기고
+ * 보낼 줄은 미리 UTF-8 바이트(프레임)로 만들어 큐에 넣어 두었다가 소켓이 받을 수 있을 때 씀
+ *
+ * 버퍼는 접속이 들고 있지 않고 이벤트 루프의 BufferPool에서 빌림
+ * - 읽기: 읽을 데이터가 오면 빌리고, 줄을 다 잘라 남은 바이트가 없으면 바로 돌려줌 (덜 온 줄이 있을 때만 계속 보관)
+ * - 쓰기: 보낼 프레임이 있을 때 빌려서 채워 보내고, 소켓에 다 넘어가면 돌려줌
+ * -> 아무것도 주고받지 않는 접속은 버퍼를 하나도 들고 있지 않음
+ *
+ * send()는 아무 스레드에서나 호출 가능 (다른 스레드에서 부르면 이 접속을 맡은 루프의 우편함을 거쳐 들어옴)
+ * 나머지는 모두 루프 스레드에서만 실행되므로 전송 큐도 락 없는 일반 큐
+ *
+ * 전송 큐는 우선순위 통로(lane) 4개로 나눔: 제어/인증 응답 > 귓속말 > 채팅 broadcast > 대량 전송(검색 결과 등)
+ * 쌓인 통로가 여럿이면 가중치(8:4:2:1)만큼씩 번갈아 꺼냄 (가중 라운드 로빈)
+ * -> 방 채팅이 몰려 큐가 밀려 있어도 LOGIN_SUCCESS / ERROR / 귓속말은 그 뒤에서 기다리지 않고, 낮은 통로도 굶지 않음
+ * 같은 통로 안에서는 넣은 순서 그대로 나감
+ *
+ * 읽지 않는 클라이언트 때문에 큐가 끝없이 쌓이지 않도록 쌓인 바이트에 상한을 둠
+ * - QUEUE_SOFT_LIMIT를 넘으면 broadcast / 대량 전송 프레임은 버림 (다시 받을 수 있게 되면 몇 개를 못 받았는지 한 줄로 알림)
+ * - 제어 응답 / 귓속말은 버리지 않고, QUEUE_HARD_LIMIT까지 넘으면 접속을 끊음 (받지 못한 귓속말은 확인 창에 남아 다시 로그인하면 다시 감)
+ *
+ * TLS 접속이면 소켓과 이 클래스 사이에 TlsSession이 끼어 암호화/복호화만 맡음 (줄 자르기, 전송 큐, 버퍼 빌리기는 그대로)
+ */
+public final class Connection {
+
+	// 읽기용으로 처음 빌리는 버퍼 크기 (한 줄이 더 길면 한 등급씩 키움)
+	private static final int READ_BUFFER_SIZE = 2 * 1024;
+	// 쓰기용으로 빌리는 버퍼 크기 (여러 프레임을 모아서 한 번에 write)
+	private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+
+	// 전송 우선순위 통로 (숫자가 작을수록 우선)
+	public static final int LANE_CONTROL = 0; // 로그인/회원가입/오류 응답, PING/PONG, 파일 전송 안내
+	public static final int LANE_WHISPER = 1; // 귓속말
+	public static final int LANE_BROADCAST = 2; // 채팅방 broadcast, 입장/퇴장 알림
+	public static final int LANE_BULK = 3; // 대량 전송 (검색 결과 등)
+	// 한 바퀴에 통로마다 꺼낼 수 있는 프레임 수 (가중치)
+	private static final int[] LANE_WEIGHTS = { 8, 4, 2, 1 };
+	// 접속 하나에 쌓아 둘 수 있는 보낼 바이트 (넘으면 broadcast / 대량 전송은 버림, HARD를 넘으면 끊음)
+	private static final int QUEUE_SOFT_LIMIT = 1024 * 1024;
+	private static final int QUEUE_HARD_LIMIT = 4 * 1024 * 1024;
+
+	private final SocketChannel channel;
+	private final EventLoop loop;
+	private final ClientHandler handler;
+	private final InetAddress remoteAddress;
+	// TLS 접속이면 암호화를 맡는 세션 (평문 접속이면 null)
+	private final TlsSession tls;
+	private SelectionKey key;
+
+	// 덜 받은 줄이 남아 있을 때만 들고 있는 읽기 버퍼 (쓰기 모드 상태로 보관)
+	private ByteBuffer readBuf;
+	// 아직 소켓에 다 못 넘긴 바이트가 있을 때만 들고 있는 쓰기 버퍼 (읽기 모드 상태로 보관)
+	private ByteBuffer writeBuf;
+	// 통로별로 보낼 프레임 (루프 스레드 전용, 처음 쓸 때 만듦)
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final ArrayDeque<byte[]>[] lanes = new ArrayDeque[LANE_WEIGHTS.length];
+	// 이번 바퀴에 통로마다 남은 몫
+	private final int[] credits = LANE_WEIGHTS.clone();
+	// 모든 통로에 쌓인 프레임 수와 바이트 수
+	private int queuedFrames;
+	private long queuedBytes;
+	// 큐가 넘쳐서 버린 broadcast / 대량 전송 프레임 수 (다시 넣을 수 있게 되면 알리고 0으로)
+	private int droppedFrames;
+	// 쓰기 버퍼에 절반만 들어간 프레임과 그 위치
+	private byte[] partialFrame;
+	private int partialOffset;
+	// 이번 바퀴 flush 목록에 이미 올라가 있는지
+	private boolean dirty;
+	// 루프의 로그인 사용자 목록(members)에서의 위치 (없으면 -1)
+	int memberIndex = -1;
+	private boolean readSuspended;
+	// TLS 핸드셰이크 계산을 기다리는 동안 읽기를 멈췄는지
+	private boolean tlsPaused;
+	// 보낼 것을 다 보내면 닫을 예정 (오류 응답을 보내고 끊을 때, 그동안은 더 읽지 않음)
+	private boolean closing;
+	private volatile boolean closed;
+
+	Connection(SocketChannel channel, EventLoop loop, ClientHandler handler, TlsAcceptor tlsAcceptor)
+			throws IOException {
+		this.channel = channel;
+		this.loop = loop;
+		this.handler = handler;
+		InetAddress addr = null;
+		try {
+			addr = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+		} catch (IOException | ClassCastException e) {
+		}
+		this.remoteAddress = addr;
+		this.tls = tlsAcceptor == null ? null : tlsAcceptor.open(this, channel);
+	}
+
+	void attach(SelectionKey key) {
+		this.key = key;
+	}
+
+	public EventLoop loop() {
+		return loop;
+	}
+
+	public InetAddress remoteAddress() {
+		return remoteAddress;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	// 프로토콜 한 줄을 UTF-8 바이트 + '\n'으로 (여러 명에게 보낼 때는 한 번만 만들어 sendFrame으로 재사용)
+	public static byte[] encode(String line) {
+		byte[] body = line.getBytes(StandardCharsets.UTF_8);
+		byte[] frame = new byte[body.length + 1];
+		System.arraycopy(body, 0, frame, 0, body.length);
+		frame[body.length] = '\n';
+		return frame;
+	}
+
+	// 미리 인코딩해 둔 앞부분(헤더 + 종류 + 보낸 사람) 뒤에 본문을 붙인 프레임 (메시지마다 문자열을 이어 붙이지 않음)
+	public static byte[] encode(byte[] prefix, String text) {
+		byte[] body = text.getBytes(StandardCharsets.UTF_8);
+		byte[] frame = new byte[prefix.length + body.length + 1];
+		System.arraycopy(prefix, 0, frame, 0, prefix.length);
+		System.arraycopy(body, 0, frame, prefix.length, body.length);
+		frame[frame.length - 1] = '\n';
+		return frame;
+	}
+
+	// [보내기] 제어 응답 한 줄 전송 (아무 스레드에서나 호출 가능)
+	public void send(String line) {
+		sendFrame(encode(line), LANE_CONTROL);
+	}
+
+	public void send(String line, int lane) {
+		sendFrame(encode(line), lane);
+	}
+
+	// [보내기] 이미 인코딩된 프레임 전송 -> 루프 스레드면 바로 큐에, 아니면 루프 우편함을 거쳐서 넣음
+	public void sendFrame(byte[] frame, int lane) {
+		if (closed)
+			return;
+		if (loop.inLoop())
+			enqueue(frame, lane);
+		else
+			loop.execute(() -> enqueue(frame, lane));
+	}
+
+	/*
+	 * [순서 보장 보내기] 루프 스레드에서 불러도 항상 우편함을 거쳐 넣음
+	 * sendFrame은 루프 스레드면 바로 큐에 넣으므로, 다른 루프에서 먼저 부른 것(우편함에서 기다리는 것)을 앞지를 수 있음
+	 * -> 호출하는 쪽이 잠금 안에서 정한 순서가 스레드와 상관없이 그대로 전송 순서가 되어야 할 때 씀 (귓속말 seq)
+	 */
+	void postFrame(byte[] frame, int lane) {
+		if (closed)
+			return;
+		loop.execute(() -> enqueue(frame, lane));
+	}
+
+	/*
+	 * 해당 통로 큐에 넣고 이번 바퀴 끝에 flush되도록 표시 (루프 스레드)
+	 * 쌓인 바이트가 상한을 넘으면 broadcast / 대량 전송은 버리고, 버릴 수 없는 통로가 HARD까지 넘치면 접속을 끊음
+	 */
+	void enqueue(byte[] frame, int lane) {
+		if (closed)
+			return;
+		if (queuedBytes + frame.length > QUEUE_SOFT_LIMIT) {
+			if (lane >= LANE_BROADCAST) {
+				if (droppedFrames++ == 0)
+					ServerLog.warn("conn.slow_consumer", "addr", remoteAddress, "queuedBytes", queuedBytes);
+				return;
+			}
+			if (queuedBytes + frame.length > QUEUE_HARD_LIMIT) {
+				ServerLog.warn("conn.slow_consumer_closed", "addr", remoteAddress, "queuedBytes", queuedBytes);
+				close();
+				return;
+			}
+		} else if (droppedFrames > 0 && lane >= LANE_BROADCAST) {
+			int dropped = droppedFrames;
+			droppedFrames = 0;
+			ServerLog.info("conn.slow_consumer_recovered", "addr", remoteAddress, "dropped", dropped);
+			addFrame(encode("<MYP2> SYSTEM 연결이 느려 메시지 " + dropped + "개를 받지 못했습니다."), LANE_BROADCAST);
+		}
+		addFrame(frame, lane);
+	}
+
+	private void addFrame(byte[] frame, int lane) {
+		ArrayDeque<byte[]> q = lanes[lane];
+		if (q == null)
+			q = lanes[lane] = new ArrayDeque<>();
+		q.addLast(frame);
+		queuedFrames++;
+		queuedBytes += frame.length;
+		if (!dirty) {
+			dirty = true;
+			loop.markDirty(this);
+		}
+	}
+
+	void flush() {
+		dirty = false;
+		if (!closed)
+			writeOut();
+	}
+
+	// ---------------- 읽기 (루프 스레드) ----------------
+
+	void onReadable() {
+		if (closing)
+			return;
+		if (tls != null) {
+			try {
+				tls.onReadable();
+			} catch (IOException e) {
+				ServerLog.info("conn.closed", "addr", remoteAddress, "error", e);
+				close();
+			}
+			return;
+		}
+		if (readBuf == null)
+			readBuf = loop.getBufferPool().acquire(READ_BUFFER_SIZE);
+
+		int n;
+		try {
+			n = channel.read(readBuf);
+		} catch (IOException e) {
+			ServerLog.info("conn.closed", "addr", remoteAddress, "error", e);
+			close();
+			return;
+		}
+		if (n < 0) {
+			close();
+			return;
+		}
+		if (n > 0)
+			decodeLines();
+	}
+
+	// [TLS] 복호화된 평문을 읽기 버퍼에 옮기면서 줄을 자름 (src는 다 쓰고 돌려줌)
+	void onPlainBytes(ByteBuffer src) {
+		while (src.hasRemaining() && !closed && !closing) {
+			if (readBuf == null)
+				readBuf = loop.getBufferPool().acquire(READ_BUFFER_SIZE);
+			int n = Math.min(readBuf.remaining(), src.remaining());
+			int limit = src.limit();
+			src.limit(src.position() + n);
+			readBuf.put(src);
+			src.limit(limit);
+			decodeLines();
+		}
+	}
+
+	/*
+	 * 버퍼에서 '\n'으로 끝난 줄을 모두 잘라 ClientHandler.onLine()에 넘김
+	 * 남은 바이트가 없으면 버퍼를 풀에 돌려주고, 덜 온 줄만 남아 있으면 앞으로 당겨서 보관
+	 * 버퍼가 덜 온 줄 하나로 가득 찼으면 한 등급 큰 버퍼로 옮기고, 최대 크기를 넘으면 연결을 끊음
+	 */
+	private void decodeLines() {
+		ByteBuffer buf = readBuf;
+		buf.flip();
+		byte[] scratch = loop.lineScratch;
+
+		int start = buf.position();
+		for (int i = start; i < buf.limit() && !closed; i++) {
+			if (buf.get(i) != '\n')
+				continue;
+			int len = i - start;
+			if (len > 0 && buf.get(i - 1) == '\r')
+				len--;
+			buf.get(start, scratch, 0, len);
+			String line = new String(scratch, 0, len, StandardCharsets.UTF_8);
+			start = i + 1;
+			handler.onLine(line);
+		}
+		if (closed)
+			return;
+
+		buf.position(start);
+		if (!buf.hasRemaining()) {
+			loop.getBufferPool().release(buf);
+			readBuf = null;
+			return;
+		}
+
+		buf.compact();
+		if (buf.hasRemaining())
+			return;
+
+		int bigger = BufferPool.nextSize(buf.capacity());
+		if (bigger < 0) {
+			ServerLog.warn("conn.line_too_long", "addr", remoteAddress, "limit", BufferPool.MAX_BUFFER);
+			send("<MYP2> ERROR 메시지가 너무 깁니다.");
+			closeAfterFlush();
+			return;
+		}
+		ByteBuffer grown = loop.getBufferPool().acquire(bigger);
+		buf.flip();
+		grown.put(buf);
+		loop.getBufferPool().release(buf);
+		readBuf = grown;
+	}
+
+	// 로그인 처리처럼 결과를 기다리는 동안 더 읽지 않음 (줄이 쌓이지 않게)
+	public void suspendRead() {
+		if (!readSuspended) {
+			readSuspended = true;
+			updateReadInterest();
+		}
+	}
+
+	public void resumeRead() {
+		if (readSuspended) {
+			readSuspended = false;
+			updateReadInterest();
+		}
+	}
+
+	// [TLS] 핸드셰이크 계산 중에는 읽기를 멈춤 (로그인 대기와 따로 관리해서 둘 다 풀렸을 때만 다시 읽음)
+	void pauseReadForTls(boolean paused) {
+		tlsPaused = paused;
+		updateReadInterest();
+	}
+
+	private void updateReadInterest() {
+		if (!key.isValid())
+			return;
+		int ops = key.interestOps();
+		int next = readSuspended || tlsPaused || closing ? (ops & ~SelectionKey.OP_READ) : (ops | SelectionKey.OP_READ);
+		if (next != ops)
+			key.interestOps(next);
+	}
+
+	// [TLS] 핸드셰이크 계산이 끝난 뒤 루프에서 이어서 진행
+	void continueTls() {
+		try {
+			tls.drive();
+		} catch (IOException e) {
+			ServerLog.info("conn.closed", "addr", remoteAddress, "error", e);
+			close();
+		}
+	}
+
+	// ---------------- 쓰기 (루프 스레드) ----------------
+
+	void onWritable() {
+		if (tls != null) {
+			try {
+				tls.onWritable();
+			} catch (IOException e) {
+				ServerLog.info("conn.closed", "addr", remoteAddress, "error", e);
+				close();
+				return;
+			}
+		}
+		writeOut();
+	}
+
+	/*
+	 * 큐의 프레임을 빌린 버퍼에 모아서 소켓에 씀
+	 * 소켓이 다 받지 못하면 버퍼를 들고 OP_WRITE를 걸어 두고, 다 보내면 버퍼를 돌려주고 OP_WRITE를 끔
+	 * TLS면 핸드셰이크가 끝날 때까지 프레임을 큐에 둔 채 기다리고, 버퍼는 소켓 대신 TlsSession에 넘겨 암호화해서 씀
+	 */
+	private void writeOut() {
+		try {
+			if (tls != null) {
+				if (!tls.isReady())
+					return;
+				if (!tls.flushNet()) {
+					setWriteInterest(true);
+					return;
+				}
+			}
+			while (true) {
+				if (writeBuf == null) {
+					if (partialFrame == null && queuedFrames == 0)
+						break;
+					writeBuf = loop.getBufferPool().acquire(WRITE_BUFFER_SIZE);
+					fill(writeBuf);
+					writeBuf.flip();
+				}
+
+				if (tls == null)
+					channel.write(writeBuf);
+				else
+					tls.wrap(writeBuf);
+				if (writeBuf.hasRemaining()) {
+					// TLS 엔진이 핸드셰이크를 기다리며 멈춘 경우는 소켓이 비어 있으므로 OP_WRITE를 걸지 않음 (TlsSession이 다시 씀)
+					setWriteInterest(tls == null || tls.hasPendingNet());
+					return;
+				}
+				loop.getBufferPool().release(writeBuf);
+				writeBuf = null;
+				if (tls != null && tls.hasPendingNet()) {
+					setWriteInterest(true);
+					return;
+				}
+			}
+			setWriteInterest(false);
+			if (closing)
+				close();
+		} catch (IOException e) {
+			ServerLog.info("conn.closed", "addr", remoteAddress, "error", e);
+			close();
+		}
+	}
+
+	// 버퍼가 찰 때까지 통로 순서대로 프레임을 옮겨 담음 (버퍼보다 긴 프레임은 나눠서 다음 버퍼로 이어짐)
+	private void fill(ByteBuffer buf) {
+		while (buf.hasRemaining()) {
+			byte[] frame = partialFrame;
+			int offset = partialOffset;
+			if (frame == null) {
+				frame = nextFrame();
+				offset = 0;
+				if (frame == null)
+					break;
+			}
+			int len = Math.min(buf.remaining(), frame.length - offset);
+			buf.put(frame, offset, len);
+			offset += len;
+			if (offset < frame.length) {
+				partialFrame = frame;
+				partialOffset = offset;
+			} else {
+				partialFrame = null;
+				partialOffset = 0;
+			}
+		}
+	}
+
+	/*
+	 * 다음에 보낼 프레임을 가중 라운드 로빈으로 고름
+	 * 프레임이 있고 몫이 남은 통로 중 가장 우선인 통로에서 꺼내고, 그런 통로가 없으면 모든 몫을 다시 채움
+	 */
+	private byte[] nextFrame() {
+		if (queuedFrames == 0)
+			return null;
+		while (true) {
+			for (int lane = 0; lane < lanes.length; lane++) {
+				ArrayDeque<byte[]> q = lanes[lane];
+				if (q != null && !q.isEmpty() && credits[lane] > 0) {
+					credits[lane]--;
+					queuedFrames--;
+					byte[] frame = q.pollFirst();
+					queuedBytes -= frame.length;
+					return frame;
+				}
+			}
+			System.arraycopy(LANE_WEIGHTS, 0, credits, 0, credits.length);
+		}
+	}
+
+	void setWriteInterest(boolean on) {
+		if (!key.isValid())
+			return;
+		int ops = key.interestOps();
+		int next = on ? (ops | SelectionKey.OP_WRITE) : (ops & ~SelectionKey.OP_WRITE);
+		if (next != ops)
+			key.interestOps(next);
+	}
+
+	// ---------------- 종료 ----------------
+
+	/*
+	 * [보낸 뒤 닫기] 이미 큐에 넣은 프레임(오류 응답 등)을 소켓에 다 넘긴 다음 닫음 (아무 스레드에서나 호출 가능)
+	 * close()는 큐를 버리므로 마지막 응답이 클라이언트에 닿지 않음 -> 읽기를 멈추고 읽기 버퍼를 돌려준 뒤, writeOut이 큐를 비우면 닫음
+	 * 상대가 받지 않아 끝내 다 못 보내면 유휴 검사가 닫음
+	 */
+	public void closeAfterFlush() {
+		if (!loop.inLoop()) {
+			loop.execute(this::closeAfterFlush);
+			return;
+		}
+		if (closed || closing)
+			return;
+		closing = true;
+		updateReadInterest();
+		loop.getBufferPool().release(readBuf);
+		readBuf = null;
+		if (!dirty) {
+			dirty = true;
+			loop.markDirty(this);
+		}
+	}
+
+	// [연결 종료] 아무 스레드에서나 호출 가능 (실제 정리는 루프 스레드에서 한 번만)
+	public void close() {
+		if (!loop.inLoop()) {
+			loop.execute(this::close);
+			return;
+		}
+		if (closed)
+			return;
+		closed = true;
+
+		if (key != null)
+			key.cancel();
+		if (tls != null)
+			tls.close();
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+
+		// 빌려 둔 버퍼 반납
+		loop.getBufferPool().release(readBuf);
+		loop.getBufferPool().release(writeBuf);
+		readBuf = null;
+		writeBuf = null;
+		for (ArrayDeque<byte[]> q : lanes) {
+			if (q != null)
+				q.clear();
+		}
+		queuedFrames = 0;
+		queuedBytes = 0;
+		partialFrame = null;
+
+		loop.leave(this);
+		loop.connectionClosed();
+		handler.onClose();
+	}
+}
@@ -0,0 +1,195 @@
+package whisperchat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * [금지어 / 스팸 링크 거르기] 규칙 파일(기본 filter.rules, -Dwhisperchat.filter.rules=<파일>)을 FilterAutomaton으로 만들어
+ * 채팅 / 귓속말 본문을 한 번 훑어 검사
+ *
+ * 규칙 파일: 한 줄에 "동작 패턴", #으로 시작하는 줄은 설명
+ *   block 패턴  -> 전달하지 않고 보낸 사람에게 ERROR
+ *   mask  패턴  -> 해당 부분을 *로 가려서 전달
+ *   flag  패턴  -> 그대로 전달하고 로그(filter.flag)만 남김 (운영자 확인용)
+ * 패턴은 동작 뒤의 나머지 전부 (공백 포함 가능), 대소문자는 구분하지 않음
+ *
+ * 다시 읽기: 감시 스레드가 RELOAD_CHECK_MILLIS마다 파일 수정 시각을 보고, 바뀌었으면 새 자동자를 만들어 통째로 교체
+ * 만드는 동안에도 이벤트 루프는 예전 자동자로 계속 검사 (volatile 참조 하나만 바꾸므로 전달이 멈추지 않음)
+ * 파일을 못 읽으면 예전 규칙을 그대로 씀, 파일을 지우면 규칙 없음(모두 통과)
+ */
+public final class ContentFilter implements MessageFilter {
+
+	private static final long RELOAD_CHECK_MILLIS = 2_000;
+
+	private final Path file;
+	// 지금 쓰는 자동자 (규칙이 없으면 null -> 검사 없이 통과)
+	private volatile FilterAutomaton automaton;
+	// 마지막으로 읽은 파일의 수정 시각 (파일이 없으면 -1)
+	private long loadedModified = Long.MIN_VALUE;
+
+	private final LongAdder checked = new LongAdder();
+	private final LongAdder blocked = new LongAdder();
+	private final LongAdder masked = new LongAdder();
+	private final LongAdder flagged = new LongAdder();
+
+	public ContentFilter(String fileName) {
+		this.file = Paths.get(fileName);
+		reloadIfChanged();
+	}
+
+	static ContentFilter fromSystemProperty() {
+		return new ContentFilter(System.getProperty("whisperchat.filter.rules", "filter.rules"));
+	}
+
+	// 규칙 파일 감시 시작 (서버에서 한 번 호출)
+	void startWatching() {
+		Thread watcher = new Thread(() -> {
+			while (true) {
+				try {
+					Thread.sleep(RELOAD_CHECK_MILLIS);
+				} catch (InterruptedException e) {
+					return;
+				}
+				reloadIfChanged();
+			}
+		}, "filter-reload");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	// 파일이 바뀌었으면 다시 읽어서 교체 (감시 스레드 / 생성자에서 호출)
+	synchronized void reloadIfChanged() {
+		long modified;
+		try {
+			modified = Files.getLastModifiedTime(file).toMillis();
+		} catch (NoSuchFileException e) {
+			modified = -1;
+		} catch (IOException e) {
+			ServerLog.warn("filter.reload_failed", "file", file, "error", e);
+			return;
+		}
+		if (modified == loadedModified)
+			return;
+		if (modified < 0) {
+			if (automaton != null)
+				ServerLog.info("filter.cleared", "file", file);
+			automaton = null;
+			loadedModified = modified;
+			return;
+		}
+		try {
+			long start = System.nanoTime();
+			FilterAutomaton built = load(file);
+			automaton = built.getRuleCount() == 0 ? null : built;
+			loadedModified = modified;
+			ServerLog.info("filter.reload", "rules", built.getRuleCount(), "states", built.getStateCount(), "buildMs",
+					(System.nanoTime() - start) / 1_000_000);
+		} catch (IOException e) {
+			ServerLog.warn("filter.reload_failed", "file", file, "error", e);
+		}
+	}
+
+	// 규칙 파일을 읽어 자동자로 (형식이 틀린 줄은 경고만 하고 건너뜀)
+	static FilterAutomaton load(Path file) throws IOException {
+		List<String> patterns = new ArrayList<>();
+		List<Integer> actions = new ArrayList<>();
+		try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNo = 0;
+			while ((line = br.readLine()) != null) {
+				lineNo++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] parts = line.split("\\s+", 2);
+				int action = parseAction(parts[0]);
+				if (action == 0 || parts.length < 2) {
+					ServerLog.warn("filter.bad_rule", "line", lineNo, "text", line);
+					continue;
+				}
+				patterns.add(parts[1].trim());
+				actions.add(action);
+			}
+		}
+		return FilterAutomaton.build(FilterAutomaton.merge(patterns, actions));
+	}
+
+	static int parseAction(String word) {
+		switch (word.toLowerCase()) {
+		case "block":
+			return FilterAutomaton.BLOCK;
+		case "mask":
+			return FilterAutomaton.MASK;
+		case "flag":
+			return FilterAutomaton.FLAG;
+		default:
+			return 0;
+		}
+	}
+
+	/*
+	 * [검사] 보낸 사람의 이벤트 루프 스레드에서 메시지마다 한 번 호출
+	 * 걸린 규칙이 없으면 (대부분) 한 번 훑는 것으로 끝나고, 가릴 때만 한 번 더 훑어 새 문자열을 만듦
+	 */
+	@Override
+	public String filter(String from, String text) {
+		FilterAutomaton a = automaton;
+		if (a == null)
+			return text;
+		checked.increment();
+		int found = a.scan(text);
+		if (found == 0)
+			return text;
+		if ((found & FilterAutomaton.BLOCK) != 0) {
+			blocked.increment();
+			ServerLog.info("filter.block", "user", from, "rule", a.firstRule(text, FilterAutomaton.BLOCK));
+			return null;
+		}
+		if ((found & FilterAutomaton.FLAG) != 0) {
+			flagged.increment();
+			ServerLog.warn("filter.flag", "user", from, "rule", a.firstRule(text, FilterAutomaton.FLAG));
+		}
+		if ((found & FilterAutomaton.MASK) != 0) {
+			masked.increment();
+			return a.mask(text);
+		}
+		return text;
+	}
+
+	public int getRuleCount() {
+		FilterAutomaton a = automaton;
+		return a == null ? 0 : a.getRuleCount();
+	}
+
+	public long getCheckedCount() {
+		return checked.sum();
+	}
+
+	public long getBlockedCount() {
+		return blocked.sum();
+	}
+
+	public long getMaskedCount() {
+		return masked.sum();
+	}
+
+	public long getFlaggedCount() {
+		return flagged.sum();
+	}
+
+	// 주기 통계를 남긴 뒤 0으로
+	public void resetStats() {
+		checked.reset();
+		blocked.reset();
+		masked.reset();
+		flagged.reset();
+	}
+}
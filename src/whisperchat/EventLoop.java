@@ -0,0 +1,282 @@
+package whisperchat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * [이벤트 루프]
+ * 스레드 하나가 Selector로 여러 접속을 동시에 돌봄 (접속마다 스레드를 두지 않음)
+ * 서버는 코어 수만큼 루프를 두고, 새 접속을 차례대로(round-robin) 나눠 줌
+ * 접속의 읽기/쓰기 상태와 이 루프에 속한 로그인 사용자 목록(members)은 이 루프 스레드만 만지므로 락이 필요 없음
+ *
+ * 다른 스레드(다른 루프, 타이머, 회원 처리 스레드)는 우편함(mailbox)에 작업을 넣기만 함
+ * -> 여러 생산자 / 소비자 하나(MPSC) 큐, 루프 스레드가 돌면서 넣은 순서대로 실행
+ * 한 바퀴 동안 쌓인 전송은 접속마다 모아 두었다가 마지막에 한 번에 씀
+ *
+ * broadcast는 루프마다 전달 대기열(fanOuts)에 넣고, 한 바퀴에 최대 FANOUT_SHARD명씩 나눠 전달
+ * -> 수신자가 아주 많아도 앞쪽 수신자는 다음 바퀴를 기다리지 않고 바로 소켓에 쓰이고, 그 사이 다른 접속의 입출력도 계속 돎
+ * broadcast끼리는 들어온 순서대로 처리되므로, 누가 받든 같은 보낸 사람의 채팅은 보낸 순서대로 도착
+ * 귓속말/제어 응답은 이 대기열을 거치지 않고 접속의 더 높은 우선순위 통로로 바로 들어감 (Connection 참고)
+ */
+public final class EventLoop implements Runnable {
+
+	private final String name;
+	private final Selector selector;
+	// 다른 스레드가 맡긴 작업 (MPSC 우편함)
+	private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+	// select()에서 자고 있는 루프를 이미 깨웠는지 (wakeup 중복 호출 방지)
+	private final AtomicBoolean wakenUp = new AtomicBoolean();
+	// 이 루프의 접속들이 읽기/쓰기 때 빌려 쓰는 버퍼 풀
+	private final BufferPool bufferPool = new BufferPool();
+	// 한 줄을 String으로 바꿀 때 쓰는 작업용 배열 (루프 스레드 전용)
+	final byte[] lineScratch = new byte[BufferPool.MAX_BUFFER];
+	// TLS 레코드를 풀 때 평문을 받아 두는 작업용 버퍼 (루프 스레드 전용, TLS 접속이 처음 생길 때 만듦)
+	private ByteBuffer tlsScratch;
+
+	private volatile Thread thread;
+	private volatile boolean running = true;
+	// 이 루프가 맡고 있는 접속 수
+	private volatile int connectionCount;
+	// 이 루프에 속한 로그인 사용자 접속 (broadcast 때 이 루프가 직접 돌면서 전달)
+	private final ArrayList<Connection> members = new ArrayList<>();
+	// members 중 전달 도중에 나가서 비워 둔 칸 수 (전달이 끝나면 한꺼번에 당김)
+	private int memberHoles;
+	// 이번 바퀴에 보낼 데이터가 생긴 접속 (바퀴 끝에서 한 번에 flush)
+	private final ArrayList<Connection> dirty = new ArrayList<>();
+
+	// 한 바퀴에 전달할 최대 수신자 수 (이보다 큰 broadcast는 여러 바퀴에 나눠 전달)
+	private static final int FANOUT_SHARD = 8192;
+	// 아직 다 전달하지 못한 broadcast (들어온 순서대로 처리)
+	private final ArrayDeque<Delivery> fanOuts = new ArrayDeque<>();
+
+	// 전달 대기열 한 칸: members[next, end) 범위의 사용자에게 전달 (end는 넣을 때의 인원, 이후 들어온 사람은 받지 않음)
+	private static final class Delivery {
+		final FanOut fanOut;
+		final int end;
+		int next;
+		int delivered;
+
+		Delivery(FanOut fanOut, int end) {
+			this.fanOut = fanOut;
+			this.end = end;
+		}
+	}
+
+	public EventLoop(String name) throws IOException {
+		this.name = name;
+		this.selector = Selector.open();
+	}
+
+	public void start() {
+		Thread t = new Thread(this, name);
+		t.setDaemon(true);
+		thread = t;
+		t.start();
+	}
+
+	public boolean inLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	public int getConnectionCount() {
+		return connectionCount;
+	}
+
+	// [작업 맡기기] 아무 스레드에서나 호출 가능, 루프 스레드에서 넣은 순서대로 실행됨
+	public void execute(Runnable task) {
+		mailbox.add(task);
+		if (!inLoop() && wakenUp.compareAndSet(false, true))
+			selector.wakeup();
+	}
+
+	/*
+	 * [접속 등록] accept된 채널을 이 루프에 붙임
+	 * 실제 등록은 루프 스레드에서 (Selector 등록은 select() 중인 스레드와 겹치면 막히기 때문)
+	 */
+	public void register(SocketChannel channel, ClientHandler handler, TlsAcceptor tls) {
+		execute(() -> {
+			try {
+				channel.configureBlocking(false);
+				// 응답은 짧은 줄이 대부분 -> Nagle이 앞 전송의 ACK(클라이언트의 지연 ACK, 최대 40ms)를 기다리지 않게 함
+				channel.socket().setTcpNoDelay(true);
+				Connection conn = new Connection(channel, this, handler, tls);
+				SelectionKey key = channel.register(selector, SelectionKey.OP_READ, conn);
+				conn.attach(key);
+				connectionCount++;
+				handler.onOpen(conn);
+			} catch (IOException e) {
+				ServerLog.warn("loop.register_failed", "error", e);
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+				}
+			}
+		});
+	}
+
+	// TLS 평문 작업 버퍼를 비운 상태로 돌려줌 (모자라면 minCapacity로 새로 만듦)
+	ByteBuffer tlsScratch(int minCapacity) {
+		if (tlsScratch == null || tlsScratch.capacity() < minCapacity)
+			tlsScratch = ByteBuffer.allocate(minCapacity);
+		tlsScratch.clear();
+		return tlsScratch;
+	}
+
+	// Connection이 닫힐 때 호출 (루프 스레드)
+	void connectionClosed() {
+		connectionCount--;
+	}
+
+	/*
+	 * [로그인 사용자 등록/해제] 루프 스레드에서만 호출, 접속이 자기 위치를 기억해서 O(1)로 뺌
+	 * 나눠 전달하는 중에는 위치가 바뀌면 안 되므로 칸만 비워 두고, 대기열이 비었을 때 당김
+	 */
+	void join(Connection conn) {
+		conn.memberIndex = members.size();
+		members.add(conn);
+	}
+
+	void leave(Connection conn) {
+		int i = conn.memberIndex;
+		if (i < 0)
+			return;
+		conn.memberIndex = -1;
+		if (!fanOuts.isEmpty()) {
+			members.set(i, null);
+			memberHoles++;
+			return;
+		}
+		Connection last = members.remove(members.size() - 1);
+		if (last != conn) {
+			members.set(i, last);
+			last.memberIndex = i;
+		}
+	}
+
+	public int getMemberCount() {
+		return members.size() - memberHoles;
+	}
+
+	// [전체 전달] 이 루프에 속한 로그인 사용자 전체에게 보낼 broadcast를 대기열에 넣음 (루프 스레드)
+	void deliverToMembers(FanOut fanOut) {
+		if (members.isEmpty()) {
+			fanOut.loopDone(0);
+			return;
+		}
+		fanOuts.addLast(new Delivery(fanOut, members.size()));
+	}
+
+	// 이번 바퀴 끝에 flush할 접속으로 표시 (루프 스레드)
+	void markDirty(Connection conn) {
+		dirty.add(conn);
+	}
+
+	public void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				// 맡긴 작업이나 덜 끝난 전달이 있으면 기다리지 않고 바로 확인만 함
+				if (mailbox.isEmpty() && fanOuts.isEmpty())
+					selector.select(1000);
+				else
+					selector.selectNow();
+				wakenUp.set(false);
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					Connection conn = (Connection) key.attachment();
+					if (!key.isValid()) {
+						conn.close();
+						continue;
+					}
+					if (key.isReadable())
+						conn.onReadable();
+					if (key.isValid() && key.isWritable())
+						conn.onWritable();
+				}
+
+				runTasks();
+				runFanOuts();
+				flushDirty();
+			} catch (Exception e) {
+				// 루프 스레드가 죽으면 이 루프의 모든 접속이 멈추므로 기록만 하고 계속 돎
+				ServerLog.error("loop.error", "loop", name, "error", e);
+			}
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = mailbox.poll()) != null) {
+			try {
+				task.run();
+			} catch (Exception e) {
+				ServerLog.error("loop.task_error", "loop", name, "error", e);
+			}
+		}
+	}
+
+	// 대기열 앞에서부터 이번 바퀴 몫(FANOUT_SHARD명)만큼 전달
+	private void runFanOuts() {
+		int budget = FANOUT_SHARD;
+		Delivery d;
+		while (budget > 0 && (d = fanOuts.peekFirst()) != null) {
+			int stop = Math.min(d.end, d.next + budget);
+			budget -= stop - d.next;
+			for (int i = d.next; i < stop; i++) {
+				Connection conn = members.get(i);
+				if (conn != null) {
+					conn.enqueue(d.fanOut.frame, Connection.LANE_BROADCAST);
+					d.delivered++;
+				}
+			}
+			d.next = stop;
+			if (stop < d.end)
+				break;
+			d.fanOut.loopDone(d.delivered);
+			fanOuts.pollFirst();
+		}
+		if (fanOuts.isEmpty() && memberHoles > 0)
+			compactMembers();
+	}
+
+	// 전달 중에 비워 둔 칸을 없애고 위치를 다시 매김
+	private void compactMembers() {
+		int w = 0;
+		for (int r = 0; r < members.size(); r++) {
+			Connection conn = members.get(r);
+			if (conn != null) {
+				conn.memberIndex = w;
+				members.set(w++, conn);
+			}
+		}
+		members.subList(w, members.size()).clear();
+		memberHoles = 0;
+	}
+
+	private void flushDirty() {
+		for (int i = 0; i < dirty.size(); i++)
+			dirty.get(i).flush();
+		dirty.clear();
+	}
+}
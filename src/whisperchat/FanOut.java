@@ -0,0 +1,32 @@
+package whisperchat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * [broadcast 한 건]
+ * 같은 프레임을 모든 이벤트 루프에 나눠 맡기고, 마지막 루프가 자기 몫을 끝냈을 때
+ * 시작부터 걸린 시간(전달 완료 시간)과 총 수신자 수를 FanOutStats에 기록
+ * 여기서 "완료"는 모든 수신자의 전송 큐에 들어간 시점 (소켓 쓰기는 각 루프가 이어서 함)
+ */
+final class FanOut {
+
+	final byte[] frame;
+	private final long startNanos = System.nanoTime();
+	private final FanOutStats stats;
+	// 아직 자기 몫을 끝내지 않은 루프 수
+	private final AtomicInteger pendingLoops;
+	private final AtomicInteger recipients = new AtomicInteger();
+
+	FanOut(byte[] frame, int loopCount, FanOutStats stats) {
+		this.frame = frame;
+		this.pendingLoops = new AtomicInteger(loopCount);
+		this.stats = stats;
+	}
+
+	// 루프 하나가 자기 사용자에게 다 넣었을 때 호출 (delivered: 그 루프에서 받은 사람 수)
+	void loopDone(int delivered) {
+		int total = recipients.addAndGet(delivered);
+		if (pendingLoops.decrementAndGet() == 0)
+			stats.record(System.nanoTime() - startNanos, total);
+	}
+}
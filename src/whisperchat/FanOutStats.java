@@ -0,0 +1,51 @@
+package whisperchat;
+
+/*
+ * [broadcast 전달 완료 시간 통계]
+ * broadcast 한 건이 모든 수신자의 전송 큐에 들어가기까지 걸린 시간을 모아 둠
+ * 서버 통계 로그(server.fanout)에서 주기마다 읽고 초기화, 오래 걸린 건은 바로 경고 로그
+ */
+public final class FanOutStats {
+
+	// 이보다 오래 걸린 broadcast는 따로 경고 로그
+	private static final long SLOW_NANOS = 200_000_000L;
+
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+	private int maxRecipients;
+
+	synchronized void record(long nanos, int recipients) {
+		count++;
+		totalNanos += nanos;
+		if (nanos > maxNanos)
+			maxNanos = nanos;
+		if (recipients > maxRecipients)
+			maxRecipients = recipients;
+		if (nanos >= SLOW_NANOS)
+			ServerLog.warn("fanout.slow", "ms", nanos / 1_000_000, "recipients", recipients);
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized double getAvgMillis() {
+		return count == 0 ? 0 : totalNanos / 1e6 / count;
+	}
+
+	public synchronized double getMaxMillis() {
+		return maxNanos / 1e6;
+	}
+
+	public synchronized int getMaxRecipients() {
+		return maxRecipients;
+	}
+
+	public synchronized void reset() {
+		count = 0;
+		totalNanos = 0;
+		maxNanos = 0;
+		maxRecipients = 0;
+	}
+}
@@ -0,0 +1,140 @@
+package whisperchat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/*
+ * [파일 전송 클라이언트]
+ * 채팅창(WhisperChatClient)에서 FILE_READY / FILE_OFFER를 받으면 별도 스레드에서 호출
+ * 서버의 데이터 포트로 따로 연결해서 파일 바이트만 주고받음 (채팅 연결은 그대로 채팅에만 사용)
+ * 연결이 끊기면 잠시 뒤 다시 접속해서, 서버가 알려주는 위치(OFFSET)나 받은 만큼(.part 크기)부터 이어서 전송
+ */
+public class FileTransferClient {
+
+	// 한 번에 옮기는 덩어리 크기 (64KB) -> 덩어리마다 진행률 표시
+	private static final long CHUNK_SIZE = 64 * 1024;
+	// 끊겼을 때 다시 시도하는 횟수와 간격
+	private static final int MAX_RETRY = 3;
+	private static final long RETRY_DELAY_MILLIS = 1000;
+
+	/*
+	 * [업로드] UPLOAD <전송ID> -> 서버가 OFFSET으로 이미 받은 위치를 알려주면 그 뒤부터 보냄
+	 * transferTo로 파일에서 소켓으로 바로 보내므로 파일 전체를 메모리에 읽지 않음
+	 */
+	public static boolean upload(String host, int port, String transferId, File file, Consumer<String> status) {
+		for (int attempt = 0; attempt <= MAX_RETRY; attempt++) {
+			try (SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+					RandomAccessFile raf = new RandomAccessFile(file, "r");
+					FileChannel fc = raf.getChannel()) {
+
+				FileTransferServer.writeLine(ch, "<MYP2> UPLOAD " + transferId);
+				String reply = stripHeader(FileTransferServer.readHeader(ch));
+				if (reply == null || !reply.startsWith("OFFSET ")) {
+					status.accept("업로드 거부: " + reply);
+					return false;
+				}
+
+				long offset = FileTransferServer.parseLong(reply.substring(7));
+				long size = fc.size();
+				if (offset > 0)
+					status.accept(file.getName() + " 이어서 업로드 (" + offset + "/" + size + " bytes)");
+
+				int lastPercent = -1;
+				while (offset < size) {
+					offset += fc.transferTo(offset, Math.min(CHUNK_SIZE, size - offset), ch);
+					int percent = (int) (offset * 100 / size);
+					if (percent / 25 != lastPercent / 25) {
+						status.accept(file.getName() + " 업로드 " + percent + "%");
+						lastPercent = percent;
+					}
+				}
+
+				String done = stripHeader(FileTransferServer.readHeader(ch));
+				return done != null && done.startsWith("UPLOAD_DONE");
+
+			} catch (IOException e) {
+				status.accept(file.getName() + " 업로드 끊김, 다시 시도합니다... (" + e.getMessage() + ")");
+				sleepQuietly();
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * [다운로드] 받는 중인 내용은 <파일명>.part에 쓰고, 다 받으면 원래 이름으로 바꿈
+	 * 다시 접속할 때는 .part 크기를 시작 위치로 보내서 받은 부분은 건너뜀
+	 * 서버가 다른 시작 위치로 답하면 (.part가 파일보다 큰 경우 등) .part를 그 위치로 잘라서 거기부터 씀
+	 */
+	public static boolean download(String host, int port, String transferId, File target, Consumer<String> status) {
+		File part = new File(target.getPath() + ".part");
+
+		for (int attempt = 0; attempt <= MAX_RETRY; attempt++) {
+			try (SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+					RandomAccessFile raf = new RandomAccessFile(part, "rw");
+					FileChannel fc = raf.getChannel()) {
+
+				long offset = fc.size();
+				FileTransferServer.writeLine(ch, "<MYP2> DOWNLOAD " + transferId + " " + offset);
+				String reply = stripHeader(FileTransferServer.readHeader(ch));
+				if (reply == null || !reply.startsWith("SIZE ")) {
+					status.accept("다운로드 거부: " + reply);
+					return false;
+				}
+
+				// SIZE <전체 크기> <실제 시작 위치>
+				String[] parts = reply.split(" ");
+				long size = FileTransferServer.parseLong(parts[1]);
+				long start = parts.length >= 3 ? FileTransferServer.parseLong(parts[2]) : -1;
+				if (size < 0 || start < 0 || start > size || start > offset) {
+					status.accept("다운로드 거부: " + reply);
+					return false;
+				}
+				if (start != offset) {
+					fc.truncate(start);
+					offset = start;
+				}
+
+				int lastPercent = -1;
+				while (offset < size) {
+					long n = fc.transferFrom(ch, offset, Math.min(CHUNK_SIZE, size - offset));
+					if (n <= 0)
+						throw new IOException("다운로드 중 연결 종료");
+					offset += n;
+					int percent = (int) (offset * 100 / size);
+					if (percent / 25 != lastPercent / 25) {
+						status.accept(target.getName() + " 다운로드 " + percent + "%");
+						lastPercent = percent;
+					}
+				}
+			} catch (IOException e) {
+				status.accept(target.getName() + " 다운로드 끊김, 다시 시도합니다... (" + e.getMessage() + ")");
+				sleepQuietly();
+				continue;
+			}
+
+			// 다 받았으면 .part -> 원래 이름
+			target.delete();
+			return part.renameTo(target);
+		}
+		return false;
+	}
+
+	private static String stripHeader(String line) {
+		if (line != null && line.startsWith("<MYP2> "))
+			return line.substring(7);
+		return line;
+	}
+
+	private static void sleepQuietly() {
+		try {
+			Thread.sleep(RETRY_DELAY_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
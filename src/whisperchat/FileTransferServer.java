@@ -0,0 +1,388 @@
+package whisperchat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * [파일 전송 서버]
+ * 채팅 연결(MYP2 텍스트 줄)과 별도의 데이터 포트에서 파일 내용만 주고받음
+ * -> 큰 파일을 올리는 동안에도 같은 사용자의 채팅 메시지가 파일 데이터 뒤에 밀리지 않음
+ *
+ * 흐름
+ * 1. 채팅 연결: FILE_OFFER <대상ID> <크기> <파일명> -> 서버가 전송 ID를 만들어 FILE_READY로 알려줌 (실패 시 FILE_FAIL)
+ * 2. 데이터 연결: <MYP2> UPLOAD <전송ID> -> 서버가 OFFSET <이미 받은 바이트 수>로 답하고, 그 뒤부터 원본 바이트를 받음
+ * 3. 업로드가 끝나면 받는 사람에게 채팅 연결로 FILE_OFFER를 보냄
+ * 4. 데이터 연결: <MYP2> DOWNLOAD <전송ID> <시작 위치> -> 서버가 SIZE <전체 크기> <실제 시작 위치>로 답하고 나머지 바이트를 보냄
+ *
+ * 파일 내용은 힙에 올리지 않고 FileChannel.transferFrom / transferTo로 소켓과 임시 파일 사이에서 바로 옮김
+ * 연결이 끊겨도 임시 파일에 받은 만큼은 남아 있으므로, 같은 전송 ID로 다시 접속하면 이어서 주고받을 수 있음
+ * 데이터 연결이 30초 동안 멈춰 있으면 닫아서 풀 스레드를 돌려받고, 같은 전송에 새 UPLOAD가 오면 남아 있던 업로드 연결을 닫고 이어받음
+ * 전송 목록은 메모리에만 있으므로, 시작할 때 지난 실행이 남긴 임시 파일은 모두 지우고 한 시간 넘게 오간 데이터가 없는 전송은 타이머로 주기적으로 정리
+ */
+public class FileTransferServer implements Runnable {
+
+	// 한 번에 옮기는 덩어리 크기 (64KB)
+	private static final long CHUNK_SIZE = 64 * 1024;
+	// 올릴 수 있는 최대 파일 크기 (1GB)
+	public static final long MAX_FILE_SIZE = 1L << 30;
+	// 헤더 줄 최대 길이 (이보다 길면 잘못된 요청으로 보고 끊음)
+	private static final int MAX_HEADER = 256;
+	// 아무 데이터도 오가지 않은 전송을 지우기까지 기다리는 시간 (1시간)
+	private static final long EXPIRE_MILLIS = 60L * 60 * 1000;
+	// 오래된 전송을 확인하는 주기 (10분)
+	private static final long EXPIRE_CHECK_MILLIS = 10L * 60 * 1000;
+	// 데이터 연결에서 이 시간 동안 한 바이트도 오가지 않으면 연결을 닫고 스레드를 돌려받음 (30초)
+	private static final long DATA_IDLE_MILLIS = 30_000;
+	// 업로드된 파일을 잠시 보관할 디렉터리
+	private static final String SPOOL_DIR = "transfers";
+
+	private final int port;
+	private final WhisperChatServer server;
+
+	// 진행 중인 전송 목록 (전송ID -> 전송 정보)
+	private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+	// 데이터 연결은 채팅 스레드풀과 따로 처리 (동시 전송 수 제한)
+	private final ExecutorService pool = Executors.newFixedThreadPool(8);
+	private final SecureRandom random = new SecureRandom();
+
+	// 전송 하나에 대한 정보
+	private static class Transfer {
+		final String id;
+		final String fromId;
+		final String toId;
+		final String fileName;
+		final long size;
+		final File spool;
+		// 마지막으로 업로드/다운로드 바이트가 오간 시각 (만료는 만든 시각이 아니라 이 시각 기준)
+		volatile long lastActivity = System.currentTimeMillis();
+		// 지금 업로드 중인 데이터 연결 (없으면 null) -> 같은 전송에 업로드 연결이 두 개 붙지 않게 함
+		SocketChannel uploader;
+		// 지금 이 전송을 받아가고 있는 데이터 연결 수
+		int downloads;
+		// 업로드가 끝나 받는 사람에게 알렸는지 (같은 전송을 다시 UPLOAD해도 FILE_OFFER를 또 보내지 않음)
+		boolean completed;
+
+		Transfer(String id, String fromId, String toId, String fileName, long size, File spool) {
+			this.id = id;
+			this.fromId = fromId;
+			this.toId = toId;
+			this.fileName = fileName;
+			this.size = size;
+			this.spool = spool;
+		}
+	}
+
+	public FileTransferServer(int port, WhisperChatServer server) {
+		this.port = port;
+		this.server = server;
+		new File(SPOOL_DIR).mkdirs();
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/*
+	 * [전송 등록] 채팅 연결에서 FILE_OFFER가 오면 호출
+	 * 추측할 수 없는 임의의 전송 ID를 만들어 돌려줌 (이 ID를 아는 사람만 데이터 연결을 쓸 수 있음)
+	 */
+	public String createTransfer(String fromId, String toId, String fileName, long size) {
+		byte[] raw = new byte[12];
+		random.nextBytes(raw);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : raw)
+			sb.append(String.format("%02x", b));
+		String id = sb.toString();
+
+		File spool = new File(SPOOL_DIR, id + ".part");
+		transfers.put(id, new Transfer(id, fromId, toId, fileName, size, spool));
+		return id;
+	}
+
+	/*
+	 * 오래된 전송(업로드가 끝나지 않았거나 아무도 받아가지 않은 것)의 임시 파일 정리 (타이머에서 주기적으로)
+	 * 지금 올리거나 받고 있는 전송은 아무리 오래 걸려도 건드리지 않음
+	 */
+	private void expireOld() {
+		long now = System.currentTimeMillis();
+		transfers.values().removeIf(t -> {
+			synchronized (t) {
+				if (t.uploader != null || t.downloads > 0 || now - t.lastActivity <= EXPIRE_MILLIS)
+					return false;
+			}
+			t.spool.delete();
+			ServerLog.info("file.expired", "from", t.fromId, "to", t.toId);
+			return true;
+		});
+	}
+
+	private void scheduleExpire() {
+		server.getIdleWheel().schedule(() -> {
+			expireOld();
+			scheduleExpire();
+		}, EXPIRE_CHECK_MILLIS);
+	}
+
+	// 지난 실행이 남긴 임시 파일 정리 (전송 목록은 메모리에만 있으므로 이어 받을 방법이 없음)
+	private void sweepSpool() {
+		File[] stale = new File(SPOOL_DIR).listFiles((d, name) -> name.endsWith(".part"));
+		if (stale == null || stale.length == 0)
+			return;
+		int deleted = 0;
+		for (File f : stale) {
+			if (f.delete())
+				deleted++;
+		}
+		ServerLog.info("file.spool_swept", "files", deleted);
+	}
+
+	// 데이터 포트에서 접속 대기, 접속마다 스레드풀에 맡김
+	@Override
+	public void run() {
+		sweepSpool();
+		scheduleExpire();
+		try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+			listener.bind(new InetSocketAddress(port));
+			ServerLog.info("file.listen", "port", port);
+			while (true) {
+				SocketChannel ch = listener.accept();
+				pool.execute(() -> handle(ch));
+			}
+		} catch (IOException e) {
+			ServerLog.error("file.error", "error", e);
+			pool.shutdown();
+		}
+	}
+
+	// 데이터 연결 하나 (유휴 검사용으로 마지막으로 바이트가 오간 시각을 기록)
+	private static final class DataConn {
+		final SocketChannel ch;
+		volatile long lastActivityNanos = System.nanoTime();
+		volatile boolean finished;
+
+		DataConn(SocketChannel ch) {
+			this.ch = ch;
+		}
+
+		void touch() {
+			lastActivityNanos = System.nanoTime();
+		}
+	}
+
+	/*
+	 * [유휴 검사] 타이밍 휠에서 호출
+	 * 블로킹 소켓은 읽기/쓰기에 시간 제한이 없으므로, 오래 멈춘 연결은 여기서 닫음
+	 * -> 막혀 있던 read/transferFrom/transferTo가 AsynchronousCloseException으로 풀려서 풀 스레드가 돌아옴
+	 */
+	private void checkIdle(DataConn dc) {
+		if (dc.finished)
+			return;
+		long idle = (System.nanoTime() - dc.lastActivityNanos) / 1_000_000;
+		if (idle >= DATA_IDLE_MILLIS) {
+			ServerLog.info("file.idle_timeout", "idleMs", idle);
+			closeQuietly(dc.ch);
+			return;
+		}
+		server.getIdleWheel().schedule(() -> checkIdle(dc), DATA_IDLE_MILLIS - idle);
+	}
+
+	// 데이터 연결 하나 처리: 헤더 줄을 읽고 UPLOAD / DOWNLOAD로 나눔
+	private void handle(SocketChannel ch) {
+		DataConn dc = new DataConn(ch);
+		server.getIdleWheel().schedule(() -> checkIdle(dc), DATA_IDLE_MILLIS);
+		try (ch) {
+			String header = readHeader(ch);
+			if (header == null)
+				return;
+			if (header.startsWith("<MYP2> "))
+				header = header.substring(7);
+
+			String[] parts = header.split(" ");
+			if (parts.length >= 2 && "UPLOAD".equals(parts[0])) {
+				doUpload(dc, parts[1]);
+			} else if (parts.length >= 3 && "DOWNLOAD".equals(parts[0])) {
+				doDownload(dc, parts[1], parseLong(parts[2]));
+			} else {
+				writeLine(ch, "<MYP2> ERROR 잘못된 전송 요청입니다.");
+			}
+		} catch (IOException e) {
+			// 중간에 끊긴 경우: 임시 파일에 받은 만큼은 남아 있으므로 다음 접속에서 이어 받음
+			ServerLog.info("file.disconnect", "error", e);
+		} finally {
+			dc.finished = true;
+		}
+	}
+
+	/*
+	 * [업로드] 이미 받은 바이트 수(임시 파일 크기)를 OFFSET으로 알려주고, 그 뒤부터 덩어리 단위로 받음
+	 * transferFrom으로 소켓에서 파일로 바로 옮기므로 파일 내용이 힙을 거치지 않음
+	 * 같은 전송에 이전 업로드 연결이 남아 있으면 (상대가 죽었는데 TCP가 아직 모르는 경우) 그 연결을 닫고 이어받음
+	 */
+	private void doUpload(DataConn dc, String id) throws IOException {
+		SocketChannel ch = dc.ch;
+		Transfer t = transfers.get(id);
+		if (t == null) {
+			writeLine(ch, "<MYP2> ERROR 존재하지 않는 전송입니다.");
+			return;
+		}
+		synchronized (t) {
+			// 이전 연결의 스레드가 임시 파일 쓰기를 멈출 때까지 기다린 뒤에 OFFSET(파일 크기)을 읽어야 함
+			while (t.uploader != null) {
+				ServerLog.info("file.upload_takeover", "from", t.fromId);
+				closeQuietly(t.uploader);
+				try {
+					t.wait(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("업로드 대기 중 중단");
+				}
+			}
+			t.uploader = ch;
+		}
+
+		try (RandomAccessFile raf = new RandomAccessFile(t.spool, "rw"); FileChannel file = raf.getChannel()) {
+			long offset = Math.min(file.size(), t.size);
+			writeLine(ch, "<MYP2> OFFSET " + offset);
+
+			while (offset < t.size) {
+				long n = file.transferFrom(ch, offset, Math.min(CHUNK_SIZE, t.size - offset));
+				// 블로킹 소켓에서 transferFrom이 0을 돌려주는 경우는 상대가 연결을 닫았을 때(EOF)뿐
+				if (n <= 0)
+					throw new IOException("업로드 중 연결 종료 (" + offset + "/" + t.size + ")");
+				offset += n;
+				dc.touch();
+				t.lastActivity = System.currentTimeMillis();
+			}
+		} finally {
+			synchronized (t) {
+				t.uploader = null;
+				t.lastActivity = System.currentTimeMillis();
+				t.notifyAll();
+			}
+		}
+
+		writeLine(ch, "<MYP2> UPLOAD_DONE " + t.size);
+		// 이미 끝난 전송을 다시 올린 경우 (UPLOAD_DONE을 받기 전에 끊긴 클라이언트가 다시 붙음) -> 알림은 한 번만
+		synchronized (t) {
+			// 이미 알렸거나, 그사이 만료/정리되어 목록에 없는 전송이면 알리지 않음
+			if (t.completed || transfers.get(t.id) != t)
+				return;
+			t.completed = true;
+		}
+		ServerLog.info("file.uploaded", "from", t.fromId, "to", t.toId, "bytes", t.size);
+
+		// 받는 사람에게 채팅 연결로 알림: FILE_OFFER <전송ID> <포트> <보낸사람> <크기> <파일명>
+		boolean notified = server.sendToUser(t.toId,
+				"<MYP2> FILE_OFFER " + t.id + " " + port + " " + t.fromId + " " + t.size + " " + t.fileName);
+		if (!notified) {
+			server.sendToUser(t.fromId, "<MYP2> ERROR " + t.toId + " 님이 접속 중이 아니어서 파일을 전달하지 못했습니다.");
+			transfers.remove(t.id);
+			t.spool.delete();
+		}
+	}
+
+	/*
+	 * [다운로드] FILE_OFFER로 전송 ID를 받은 사람이 요청하면, 요청한 위치부터 transferTo로 소켓에 바로 보냄
+	 * 다 보내면 임시 파일을 지우고 보낸 사람에게 FILE_DONE으로 알림
+	 */
+	private void doDownload(DataConn dc, String id, long offset) throws IOException {
+		SocketChannel ch = dc.ch;
+		Transfer t = transfers.get(id);
+		if (t == null || !startDownload(t)) {
+			writeLine(ch, "<MYP2> ERROR 받을 수 있는 파일이 없습니다.");
+			return;
+		}
+		try {
+			sendFile(dc, t, offset);
+		} finally {
+			synchronized (t) {
+				t.downloads--;
+				t.lastActivity = System.currentTimeMillis();
+			}
+		}
+
+		// 이어 받기로 연결이 두 개 겹쳤어도 삭제와 FILE_DONE은 한 번만
+		if (transfers.remove(t.id, t)) {
+			t.spool.delete();
+			ServerLog.info("file.downloaded", "from", t.fromId, "to", t.toId, "bytes", t.size);
+			server.sendToUser(t.fromId, "<MYP2> FILE_DONE " + t.toId + " " + t.fileName);
+		}
+	}
+
+	// 업로드가 다 끝난 전송이면 받는 중으로 표시 (받는 동안은 만료되지 않음)
+	private static boolean startDownload(Transfer t) {
+		synchronized (t) {
+			if (t.uploader != null || t.spool.length() < t.size)
+				return false;
+			t.downloads++;
+			return true;
+		}
+	}
+
+	private void sendFile(DataConn dc, Transfer t, long offset) throws IOException {
+		SocketChannel ch = dc.ch;
+		// 범위를 벗어난 시작 위치(받는 쪽 .part가 꼬인 경우)는 처음부터 보냄
+		// -> 실제로 쓴 시작 위치를 같이 알려줘야 받는 쪽이 .part를 그 위치로 잘라서 맞춤
+		if (offset < 0 || offset > t.size)
+			offset = 0;
+
+		writeLine(ch, "<MYP2> SIZE " + t.size + " " + offset);
+		try (RandomAccessFile raf = new RandomAccessFile(t.spool, "r"); FileChannel file = raf.getChannel()) {
+			while (offset < t.size) {
+				offset += file.transferTo(offset, Math.min(CHUNK_SIZE, t.size - offset), ch);
+				dc.touch();
+				t.lastActivity = System.currentTimeMillis();
+			}
+		}
+	}
+
+	private static void closeQuietly(SocketChannel ch) {
+		try {
+			ch.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	// 헤더 줄은 파일 데이터와 섞이지 않도록 '\n'까지 한 바이트씩 읽음 (헤더 뒤의 파일 바이트를 미리 읽어버리지 않음)
+	static String readHeader(SocketChannel ch) throws IOException {
+		ByteBuffer one = ByteBuffer.allocate(1);
+		byte[] line = new byte[MAX_HEADER];
+		int len = 0;
+		while (len < MAX_HEADER) {
+			one.clear();
+			if (ch.read(one) < 0)
+				return null;
+			byte b = one.get(0);
+			if (b == '\n')
+				return new String(line, 0, len, StandardCharsets.UTF_8).trim();
+			line[len++] = b;
+		}
+		return null;
+	}
+
+	static void writeLine(SocketChannel ch, String line) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+		while (buf.hasRemaining())
+			ch.write(buf);
+	}
+
+	static long parseLong(String s) {
+		try {
+			return Long.parseLong(s.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
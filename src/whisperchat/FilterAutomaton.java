@@ -0,0 +1,280 @@
+package whisperchat;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * [금지어 자동자] Aho-Corasick: 규칙 전체를 하나의 자동자로 만들어 본문을 한 번만 훑으며 모든 규칙을 찾음
+ * 규칙 수와 상관없이 본문 글자 수에 비례하는 시간 (규칙마다 String.contains를 돌리면 규칙 수에 비례)
+ *
+ * 만들기: 규칙들로 트라이를 만들고, 너비 우선으로 실패 링크(일치가 끊겼을 때 돌아갈, 지금까지 읽은 글자의 가장 긴 접미사 상태)를 계산
+ * 상태마다 전이는 글자순으로 정렬한 배열에 모아 두고 이진 탐색 (한글처럼 글자 종류가 많아도 상태당 메모리는 자식 수만큼)
+ * 대부분의 글자는 루트에서 시작하므로 루트 전이만 글자 코드로 바로 찾는 표(65536칸)를 따로 둠
+ *
+ * 대소문자는 구분하지 않음 (규칙과 본문 모두 글자마다 소문자로)
+ * 만든 뒤에는 바뀌지 않으므로 여러 루프 스레드가 동시에 써도 됨 (규칙이 바뀌면 새로 만들어 통째로 교체)
+ */
+final class FilterAutomaton {
+
+	// 동작 (비트, 한 본문에서 여러 개가 걸리면 OR)
+	static final int FLAG = 1;
+	static final int MASK = 2;
+	static final int BLOCK = 4;
+
+	static final char MASK_CHAR = '*';
+
+	// 규칙 (번호 -> 패턴 / 동작)
+	private final String[] patterns;
+	private final byte[] actions;
+
+	// 상태 s의 전이: keys[first[s] .. first[s + 1]), 같은 자리의 next가 다음 상태 (루트는 0)
+	private final int[] first;
+	private final char[] keys;
+	private final int[] next;
+	private final int[] rootNext = new int[Character.MAX_VALUE + 1];
+	private final int[] fail;
+	// 이 상태에서 끝나는 규칙 (-1: 없음), 실패 링크를 따라가며 만나는 다음 "끝나는 규칙이 있는 상태" (-1: 없음)
+	private final int[] outRule;
+	private final int[] outLink;
+	// 이 상태에서 끝나는 모든 규칙(outLink 사슬 포함)의 동작 OR -> 0이면 사슬을 따라갈 필요 없음
+	private final byte[] chainActions;
+
+	private FilterAutomaton(String[] patterns, byte[] actions, int[] first, char[] keys, int[] next, int[] fail,
+			int[] outRule, int[] outLink, byte[] chainActions) {
+		this.patterns = patterns;
+		this.actions = actions;
+		this.first = first;
+		this.keys = keys;
+		this.next = next;
+		this.fail = fail;
+		this.outRule = outRule;
+		this.outLink = outLink;
+		this.chainActions = chainActions;
+		for (int i = first[0]; i < first[1]; i++)
+			rootNext[keys[i]] = next[i];
+	}
+
+	/*
+	 * [만들기] rules: 소문자로 바꾼 패턴 -> 동작 (merge()로 만든 것, 같은 패턴은 가장 센 동작 하나)
+	 */
+	static FilterAutomaton build(Map<String, Integer> rules) {
+		int n = rules.size();
+		String[] patterns = new String[n];
+		byte[] actions = new byte[n];
+
+		// 1. 트라이 (전이는 (상태 << 16 | 글자) -> 다음 상태 로 임시 보관)
+		Map<Long, Integer> edges = new HashMap<>();
+		int states = 1;
+		int[] terminal = new int[16];
+		Arrays.fill(terminal, -1);
+		int r = 0;
+		for (Map.Entry<String, Integer> e : rules.entrySet()) {
+			String p = e.getKey();
+			patterns[r] = p;
+			actions[r] = (byte) (int) e.getValue();
+			int s = 0;
+			for (int i = 0; i < p.length(); i++) {
+				long key = (long) s << 16 | p.charAt(i);
+				Integer t = edges.get(key);
+				if (t == null) {
+					t = states++;
+					edges.put(key, t);
+				}
+				s = t;
+			}
+			if (s >= terminal.length) {
+				int old = terminal.length;
+				terminal = Arrays.copyOf(terminal, Math.max(s + 1, old * 2));
+				Arrays.fill(terminal, old, terminal.length, -1);
+			}
+			terminal[s] = r++;
+		}
+
+		// 2. 상태별로 전이를 모아 글자순 정렬 (first / keys / next 배열로)
+		int[] first = new int[states + 1];
+		for (long key : edges.keySet())
+			first[(int) (key >>> 16) + 1]++;
+		for (int s = 0; s < states; s++)
+			first[s + 1] += first[s];
+		char[] keys = new char[edges.size()];
+		int[] next = new int[edges.size()];
+		int[] fill = Arrays.copyOf(first, states);
+		for (Map.Entry<Long, Integer> e : edges.entrySet()) {
+			int s = (int) (e.getKey() >>> 16);
+			int at = fill[s]++;
+			keys[at] = (char) (e.getKey() & 0xFFFF);
+			next[at] = e.getValue();
+		}
+		for (int s = 0; s < states; s++)
+			sortRange(keys, next, first[s], first[s + 1]);
+
+		// 3. 너비 우선으로 실패 링크와 출력 사슬 계산 (부모의 실패 링크가 먼저 정해져 있어야 함)
+		int[] fail = new int[states];
+		int[] outRule = new int[states];
+		int[] outLink = new int[states];
+		byte[] chainActions = new byte[states];
+		for (int s = 0; s < states; s++)
+			outRule[s] = s < terminal.length ? terminal[s] : -1;
+		outLink[0] = -1;
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		for (int i = first[0]; i < first[1]; i++) {
+			int child = next[i];
+			fail[child] = 0;
+			outLink[child] = -1;
+			chainActions[child] = outRule[child] >= 0 ? actions[outRule[child]] : 0;
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int s = queue.poll();
+			for (int i = first[s]; i < first[s + 1]; i++) {
+				char c = keys[i];
+				int child = next[i];
+				int f = fail[s];
+				int t;
+				while ((t = step(first, keys, next, f, c)) < 0 && f != 0)
+					f = fail[f];
+				int fc = t < 0 ? 0 : t;
+				fail[child] = fc;
+				outLink[child] = outRule[fc] >= 0 ? fc : outLink[fc];
+				int own = outRule[child] >= 0 ? actions[outRule[child]] : 0;
+				chainActions[child] = (byte) (own | chainActions[fc]);
+				queue.add(child);
+			}
+		}
+		return new FilterAutomaton(patterns, actions, first, keys, next, fail, outRule, outLink, chainActions);
+	}
+
+	// 상태 s에서 글자 c로 가는 전이 (없으면 -1)
+	private static int step(int[] first, char[] keys, int[] next, int s, char c) {
+		int lo = first[s];
+		int hi = first[s + 1] - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char k = keys[mid];
+			if (k < c)
+				lo = mid + 1;
+			else if (k > c)
+				hi = mid - 1;
+			else
+				return next[mid];
+		}
+		return -1;
+	}
+
+	private int go(int s, char c) {
+		while (true) {
+			if (s == 0)
+				return rootNext[c];
+			int t = step(first, keys, next, s, c);
+			if (t >= 0)
+				return t;
+			s = fail[s];
+		}
+	}
+
+	// 전이 배열 한 상태 구간을 글자순으로 (자식 수가 적으므로 삽입 정렬)
+	private static void sortRange(char[] keys, int[] next, int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			char k = keys[i];
+			int v = next[i];
+			int j = i - 1;
+			while (j >= from && keys[j] > k) {
+				keys[j + 1] = keys[j];
+				next[j + 1] = next[j];
+				j--;
+			}
+			keys[j + 1] = k;
+			next[j + 1] = v;
+		}
+	}
+
+	/*
+	 * [검사] 본문을 한 번 훑어 걸린 규칙들의 동작을 OR해서 돌려줌 (0이면 걸린 규칙 없음)
+	 * BLOCK이 걸리면 더 볼 필요가 없으므로 바로 끝냄
+	 */
+	int scan(String text) {
+		int found = 0;
+		int s = 0;
+		for (int i = 0, n = text.length(); i < n; i++) {
+			s = go(s, Character.toLowerCase(text.charAt(i)));
+			found |= chainActions[s];
+			if ((found & BLOCK) != 0)
+				return found;
+		}
+		return found;
+	}
+
+	// 동작 action이 걸린 첫 규칙의 패턴 (로그용, 없으면 null)
+	String firstRule(String text, int action) {
+		int s = 0;
+		for (int i = 0, n = text.length(); i < n; i++) {
+			s = go(s, Character.toLowerCase(text.charAt(i)));
+			if ((chainActions[s] & action) == 0)
+				continue;
+			for (int o = outRule[s] >= 0 ? s : outLink[s]; o >= 0; o = outLink[o]) {
+				if ((actions[outRule[o]] & action) != 0)
+					return patterns[outRule[o]];
+			}
+		}
+		return null;
+	}
+
+	// [가리기] MASK 규칙에 걸린 글자를 모두 MASK_CHAR로 (겹치거나 이어진 규칙도 모두)
+	String mask(String text) {
+		char[] out = null;
+		int s = 0;
+		for (int i = 0, n = text.length(); i < n; i++) {
+			s = go(s, Character.toLowerCase(text.charAt(i)));
+			if ((chainActions[s] & MASK) == 0)
+				continue;
+			for (int o = outRule[s] >= 0 ? s : outLink[s]; o >= 0; o = outLink[o]) {
+				int rule = outRule[o];
+				if ((actions[rule] & MASK) == 0)
+					continue;
+				if (out == null)
+					out = text.toCharArray();
+				Arrays.fill(out, i - patterns[rule].length() + 1, i + 1, MASK_CHAR);
+			}
+		}
+		return out == null ? text : new String(out);
+	}
+
+	int getRuleCount() {
+		return patterns.length;
+	}
+
+	int getStateCount() {
+		return fail.length;
+	}
+
+	// 대략적인 메모리 사용량 (배열 크기 합, 패턴 문자열 제외)
+	long getApproxBytes() {
+		return (long) fail.length * (4 + 4 + 4 + 4 + 1) + (long) keys.length * (2 + 4) + rootNext.length * 4L;
+	}
+
+	// 규칙 목록 -> build()에 넘길 형태 (같은 패턴은 가장 센 동작 하나로, 빈 패턴은 버림)
+	static Map<String, Integer> merge(List<String> patternList, List<Integer> actionList) {
+		Map<String, Integer> rules = new HashMap<>();
+		for (int i = 0; i < patternList.size(); i++) {
+			String p = fold(patternList.get(i));
+			if (!p.isEmpty())
+				rules.merge(p, actionList.get(i), (a, b) -> strongest(a) >= strongest(b) ? a : b);
+		}
+		return rules;
+	}
+
+	// 글자마다 소문자로 (String.toLowerCase와 달리 길이가 바뀌지 않음 -> 가리기 위치가 본문과 맞음)
+	static String fold(String s) {
+		char[] c = s.toCharArray();
+		for (int i = 0; i < c.length; i++)
+			c[i] = Character.toLowerCase(c[i]);
+		return new String(c);
+	}
+
+	private static int strongest(int action) {
+		return Integer.highestOneBit(action);
+	}
+}
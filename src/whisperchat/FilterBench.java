@@ -0,0 +1,143 @@
+package whisperchat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+ * [금지어 검사 측정 도구]
+ * 규칙 수를 늘려 가며 FilterAutomaton(한 번 훑기)과 규칙마다 String.contains를 도는 방식을 같은 메시지로 비교
+ *
+ * 규칙: 한글 2~4글자 단어와 영문 5~12글자 단어 / 링크(http://...)를 반반, 동작은 block / mask / flag를 섞음
+ * 메시지: 한글 단어와 영문 단어를 섞은 평균 40자 안팎의 채팅, 100개 중 하나 꼴로 규칙 하나가 들어 있음
+ * 출력: 자동자 만드는 시간 / 상태 수 / 대략적인 메모리, 초당 검사 메시지 수와 MB(UTF-16 기준)
+ *       contains 방식은 한 번에 최대 NAIVE_MILLIS만 돌려서 잰 값
+ * 서버는 띄우지 않음 (ContentFilter.filter()가 하는 검사 한 번 = scan() 한 번, 가릴 때만 mask() 한 번 더)
+ *
+ * 실행: java whisperchat.FilterBench [규칙 수 목록(기본 10,100,1000,10000,100000)] [메시지 수(기본 200000)]
+ */
+public class FilterBench {
+
+	private static final long NAIVE_MILLIS = 2_000;
+	private static final String HANGUL_START = "가";
+	private static final String[] LATIN_WORDS = { "server", "chat", "hello", "network", "latency", "java", "lunch",
+			"meeting", "deploy", "ticket", "review", "merge", "build", "coffee", "today" };
+
+	public static void main(String[] args) {
+		String[] counts = (args.length > 0 ? args[0] : "10,100,1000,10000,100000").split(",");
+		int messageCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+		Random rnd = new Random(42);
+		int maxRules = 0;
+		for (String c : counts)
+			maxRules = Math.max(maxRules, Integer.parseInt(c.trim()));
+		List<String> allPatterns = new ArrayList<>();
+		List<Integer> allActions = new ArrayList<>();
+		for (int i = 0; i < maxRules; i++) {
+			allPatterns.add(i % 2 == 0 ? hangulWord(rnd, 2 + rnd.nextInt(3)) : latinRule(rnd));
+			allActions.add(i % 10 == 0 ? FilterAutomaton.BLOCK : i % 10 < 4 ? FilterAutomaton.FLAG : FilterAutomaton.MASK);
+		}
+
+		System.out.println("코어 수: " + Runtime.getRuntime().availableProcessors() + ", 메시지 " + messageCount + "개");
+		for (String c : counts) {
+			int n = Integer.parseInt(c.trim());
+			List<String> patterns = allPatterns.subList(0, n);
+			Map<String, Integer> rules = FilterAutomaton.merge(patterns, allActions.subList(0, n));
+			String[] messages = messages(new Random(7), messageCount, patterns);
+
+			long start = System.nanoTime();
+			FilterAutomaton automaton = FilterAutomaton.build(rules);
+			double buildMs = (System.nanoTime() - start) / 1e6;
+
+			// 워밍업 후 측정
+			runAutomaton(automaton, messages);
+			long chars = 0;
+			for (String m : messages)
+				chars += m.length();
+			start = System.nanoTime();
+			int hits = runAutomaton(automaton, messages);
+			long elapsed = System.nanoTime() - start;
+
+			String[] lowered = rules.keySet().toArray(new String[0]);
+			runNaive(lowered, messages, NAIVE_MILLIS / 4);
+			long[] naive = runNaive(lowered, messages, NAIVE_MILLIS);
+
+			System.out.printf("규칙 %,7d개: 만들기 %8.1f ms, 상태 %,9d개 (~%,d KB) | 자동자 초당 %,10.0f건 (%6.1f MB/s, 걸림 %,d건) | contains 초당 %,10.0f건%n",
+					n, buildMs, automaton.getStateCount(), automaton.getApproxBytes() / 1024,
+					messageCount * 1e9 / elapsed, chars * 2 * 1e3 / elapsed, hits, naive[0] * 1e9 / naive[1]);
+		}
+	}
+
+	// 검사 한 번 + 가릴 때만 가리기 (걸린 메시지 수 반환)
+	private static int runAutomaton(FilterAutomaton automaton, String[] messages) {
+		int hits = 0;
+		for (String m : messages) {
+			int found = automaton.scan(m);
+			if (found != 0) {
+				hits++;
+				if ((found & FilterAutomaton.BLOCK) == 0 && (found & FilterAutomaton.MASK) != 0)
+					automaton.mask(m);
+			}
+		}
+		return hits;
+	}
+
+	// 메시지마다 모든 규칙을 contains로 확인, limitMillis 동안 처리한 {메시지 수, 걸린 ns}
+	private static long[] runNaive(String[] rules, String[] messages, long limitMillis) {
+		long start = System.nanoTime();
+		long deadline = start + limitMillis * 1_000_000;
+		long done = 0;
+		int hits = 0;
+		while (System.nanoTime() < deadline) {
+			String m = FilterAutomaton.fold(messages[(int) (done % messages.length)]);
+			for (String r : rules) {
+				if (m.contains(r)) {
+					hits++;
+					break;
+				}
+			}
+			done++;
+		}
+		if (hits < 0)
+			System.out.println(hits); // 최적화로 루프가 사라지지 않게
+		return new long[] { done, System.nanoTime() - start };
+	}
+
+	private static String[] messages(Random rnd, int count, List<String> patterns) {
+		String[] out = new String[count];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.setLength(0);
+			int words = 4 + rnd.nextInt(6);
+			for (int w = 0; w < words; w++) {
+				if (w > 0)
+					sb.append(' ');
+				if (rnd.nextBoolean())
+					sb.append(hangulWord(rnd, 1 + rnd.nextInt(4)));
+				else
+					sb.append(LATIN_WORDS[rnd.nextInt(LATIN_WORDS.length)]);
+			}
+			if (rnd.nextInt(100) == 0)
+				sb.append(' ').append(patterns.get(rnd.nextInt(patterns.size())));
+			out[i] = sb.toString();
+		}
+		return out;
+	}
+
+	// 자주 쓰는 음절 범위(가 ~ 가+2000)에서 고른 한글 단어
+	private static String hangulWord(Random rnd, int len) {
+		char[] c = new char[len];
+		for (int i = 0; i < len; i++)
+			c[i] = (char) (HANGUL_START.charAt(0) + rnd.nextInt(2000));
+		return new String(c);
+	}
+
+	private static String latinRule(Random rnd) {
+		int len = 5 + rnd.nextInt(8);
+		StringBuilder sb = new StringBuilder(rnd.nextInt(4) == 0 ? "http://" : "");
+		for (int i = 0; i < len; i++)
+			sb.append((char) ('a' + rnd.nextInt(26)));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,111 @@
+package whisperchat;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/*
+ * [접속당 메모리 측정 도구]
+ * 아무 메시지도 주고받지 않는 접속(유휴 접속)이 서버 메모리를 얼마나 쓰는지 재서 출력
+ * 같은 JVM 안에서 접속 N개를 열고 GC 후 힙 사용량 차이를 N으로 나눔
+ *
+ * 1. raw: 소켓 채널만 연 경우 (클라이언트 + 서버 쪽 소켓 객체 비용, 비교 기준)
+ * 2. scanner: 기존 방식처럼 접속마다 Scanner + PrintWriter를 만든 경우 (접속마다 스레드 스택은 별도로 더 듦)
+ * 3. server: 실제 WhisperChatServer(이벤트 루프 + 버퍼 풀)에 접속한 경우
+ *
+ * 실행: java whisperchat.FootprintBench [접속 수(기본 2000)] [포트(기본 59101)]
+ */
+public class FootprintBench {
+
+	public static void main(String[] args) throws Exception {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 59101;
+
+		ServerLog.info("bench.footprint", "connections", n);
+		long raw = measureRaw(n, port + 10, false);
+		long legacy = measureRaw(n, port + 20, true);
+
+		WhisperChatServer server = new WhisperChatServer(port, 1);
+		Thread serverThread = new Thread(server::start, "bench-server");
+		serverThread.setDaemon(true);
+		serverThread.start();
+		Thread.sleep(500);
+
+		int threadsBefore = Thread.activeCount();
+		long before = usedHeap();
+		List<SocketChannel> clients = openClients(n, port);
+		while (server.getConnectionCount() < n)
+			Thread.sleep(50);
+		long after = usedHeap();
+		long perConn = (after - before) / n;
+
+		System.out.println();
+		System.out.println("== 유휴 접속 " + n + "개 기준, 접속당 힙 사용량 (클라이언트 쪽 소켓 포함) ==");
+		System.out.printf("raw     (소켓만)               : %,8d bytes%n", raw);
+		System.out.printf("scanner (Scanner+PrintWriter)  : %,8d bytes  (기존 방식, 스레드 스택 제외)%n", legacy);
+		System.out.printf("server  (이벤트 루프+버퍼 풀)  : %,8d bytes%n", perConn);
+		System.out.printf("-> 소켓 외 추가 비용: 기존 %,d bytes / 현재 %,d bytes%n", legacy - raw, perConn - raw);
+		System.out.printf("빌려간 다이렉트 버퍼: %,d bytes (유휴 접속은 0이어야 함), 풀 보관량 %,d bytes%n",
+				server.getBufferInUseBytes(), server.getBufferPooledBytes());
+		System.out.printf("늘어난 스레드 수: %d (기존 방식은 접속당 1개)%n", Thread.activeCount() - threadsBefore);
+
+		for (SocketChannel ch : clients)
+			ch.close();
+		System.exit(0);
+	}
+
+	// 소켓 채널만 (withStreams면 기존 ClientHandler처럼 Scanner + PrintWriter까지) 만들었을 때 접속당 힙 사용량
+	private static long measureRaw(int n, int port, boolean withStreams) throws IOException {
+		try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+			listener.bind(new InetSocketAddress("127.0.0.1", port));
+			List<Object> keep = new ArrayList<>();
+
+			long before = usedHeap();
+			List<SocketChannel> clients = new ArrayList<>();
+			for (int i = 0; i < n; i++) {
+				clients.add(SocketChannel.open(new InetSocketAddress("127.0.0.1", port)));
+				SocketChannel accepted = listener.accept();
+				keep.add(accepted);
+				if (withStreams) {
+					keep.add(new Scanner(accepted.socket().getInputStream()));
+					keep.add(new PrintWriter(accepted.socket().getOutputStream(), true));
+				}
+			}
+			long after = usedHeap();
+
+			for (SocketChannel ch : clients)
+				ch.close();
+			for (Object o : keep) {
+				if (o instanceof SocketChannel)
+					((SocketChannel) o).close();
+			}
+			return (after - before) / n;
+		}
+	}
+
+	private static List<SocketChannel> openClients(int n, int port) throws IOException {
+		List<SocketChannel> clients = new ArrayList<>();
+		for (int i = 0; i < n; i++)
+			clients.add(SocketChannel.open(new InetSocketAddress("127.0.0.1", port)));
+		return clients;
+	}
+
+	// GC를 몇 번 돌린 뒤의 힙 사용량
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
@@ -0,0 +1,216 @@
+package whisperchat;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * [가입 ID 블룸 필터]
+ * 가입된 모든 ID를 비트 배열 하나로 요약해서 메모리에 들고 있는 확률적 집합
+ * mightContain()이 false면 "절대 없는 ID" -> users.dat을 읽지 않고 바로 답할 수 있음
+ * true면 "있을 수도 있음" -> 그때만 users.dat을 실제로 조회
+ * 비트 배열은 users.dat 옆의 파일(users.bloom)에 저장되고, 가입할 때마다 바뀐 워드만 덮어씀
+ */
+public class IdBloomFilter {
+
+	// 파일 포맷 식별용 매직 넘버 ("WBLM")
+	private static final int MAGIC = 0x57424C4D;
+	// 헤더: magic(int) + numHashes(int) + capacity(int) + count(int) + numWords(int)
+	private static final int HEADER_SIZE = 4 * 5;
+	// 거짓 양성 확률 약 1% 목표 -> ID 하나당 10비트, 해시 7개
+	private static final int BITS_PER_ID = 10;
+	private static final int NUM_HASHES = 7;
+	// 처음 만들 때의 최소 용량
+	private static final int MIN_CAPACITY = 1024;
+
+	private final File file;
+
+	private long[] words;
+	private int numBits;
+	// 이 크기로 설계된 최대 ID 수 (넘어가면 거짓 양성 비율이 올라가므로 다시 만듦)
+	private int capacity;
+	// 지금까지 넣은 ID 수
+	private int count;
+
+	private IdBloomFilter(File file, int capacity) {
+		this.file = file;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		this.capacity = Math.max(capacity, MIN_CAPACITY);
+		int numWords = (int) (((long) this.capacity * BITS_PER_ID + 63) / 64);
+		this.words = new long[numWords];
+		this.numBits = numWords * 64;
+		this.count = 0;
+	}
+
+	/*
+	 * 저장된 필터 파일을 읽어오고, 파일이 없거나 users.dat보다 오래됐으면 (서버가 저장 전에 죽은 경우 등)
+	 * users.dat을 한 번 훑어서 새로 만든 뒤 저장
+	 */
+	public static IdBloomFilter open(String bloomFile, String userFile) {
+		File file = new File(bloomFile);
+		File users = new File(userFile);
+
+		if (file.exists() && (!users.exists() || file.lastModified() >= users.lastModified())) {
+			try {
+				IdBloomFilter filter = load(file);
+				if (filter.count <= filter.capacity)
+					return filter;
+			} catch (IOException e) {
+				ServerLog.warn("bloom.rebuild", "reason", e);
+			}
+		}
+		return rebuild(file, users);
+	}
+
+	// users.dat의 ID들을 모두 넣어 필터를 새로 만들고 파일로 저장
+	private static IdBloomFilter rebuild(File file, File users) {
+		int lines = 0;
+		if (users.exists()) {
+			try (BufferedReader br = new BufferedReader(new FileReader(users, StandardCharsets.UTF_8))) {
+				while (br.readLine() != null)
+					lines++;
+			} catch (IOException e) {
+				ServerLog.error("bloom.error", "error", e);
+			}
+		}
+
+		// 앞으로 가입할 사용자를 위해 여유를 두고 두 배로 잡음
+		IdBloomFilter filter = new IdBloomFilter(file, lines * 2);
+		if (users.exists()) {
+			try (BufferedReader br = new BufferedReader(new FileReader(users, StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = br.readLine()) != null) {
+					int end = line.indexOf("::");
+					if (end > 0)
+						filter.put(line.substring(0, end));
+				}
+			} catch (IOException e) {
+				ServerLog.error("bloom.error", "error", e);
+			}
+		}
+		filter.saveAll();
+		return filter;
+	}
+
+	private static IdBloomFilter load(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != NUM_HASHES)
+				throw new IOException("알 수 없는 필터 형식");
+			int capacity = in.readInt();
+			int count = in.readInt();
+			int numWords = in.readInt();
+
+			IdBloomFilter filter = new IdBloomFilter(file, capacity);
+			if (filter.words.length != numWords)
+				throw new IOException("필터 크기 불일치");
+			for (int i = 0; i < numWords; i++)
+				filter.words[i] = in.readLong();
+			filter.count = count;
+			return filter;
+		}
+	}
+
+	// 필터 전체를 파일에 새로 씀 (처음 생성하거나 용량을 늘렸을 때)
+	private void saveAll() {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(NUM_HASHES);
+			out.writeInt(capacity);
+			out.writeInt(count);
+			out.writeInt(words.length);
+			for (long w : words)
+				out.writeLong(w);
+		} catch (IOException e) {
+			ServerLog.error("bloom.error", "error", e);
+		}
+	}
+
+	// [조회] false면 확실히 가입되지 않은 ID, true면 가입됐을 가능성이 있는 ID
+	public synchronized boolean mightContain(String id) {
+		long h = hash64(id);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+		for (int i = 1; i <= NUM_HASHES; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+			if ((words[bit >>> 6] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * [추가] 신규 가입 ID를 필터에 넣고, 바뀐 워드만 파일에 덮어씀
+	 * 용량을 넘으면 users.dat 기준으로 두 배 크기로 다시 만듦
+	 * (users.dat에 먼저 기록한 뒤 호출해야 함 -> 다시 만들 때 이 ID도 함께 들어감)
+	 */
+	public synchronized void add(String id, String userFile) {
+		if (count + 1 > capacity) {
+			IdBloomFilter bigger = rebuild(file, new File(userFile));
+			this.words = bigger.words;
+			this.numBits = bigger.numBits;
+			this.capacity = bigger.capacity;
+			this.count = bigger.count;
+			return;
+		}
+
+		int[] changed = put(id);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			for (int w : changed) {
+				if (w < 0)
+					continue;
+				raf.seek(HEADER_SIZE + (long) w * 8);
+				raf.writeLong(words[w]);
+			}
+			// count 필드 갱신 (magic, numHashes, capacity 다음 위치)
+			raf.seek(12);
+			raf.writeInt(count);
+		} catch (IOException e) {
+			ServerLog.error("bloom.error", "error", e);
+		}
+	}
+
+	// 비트를 세우고, 값이 바뀐 워드 번호를 돌려줌 (바뀌지 않은 자리는 -1)
+	private int[] put(String id) {
+		long h = hash64(id);
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+		int[] changed = new int[NUM_HASHES];
+		for (int i = 1; i <= NUM_HASHES; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+			int w = bit >>> 6;
+			long before = words[w];
+			words[w] = before | (1L << bit);
+			changed[i - 1] = (words[w] != before) ? w : -1;
+		}
+		count++;
+		return changed;
+	}
+
+	// UTF-8 바이트에 대한 64비트 해시 (FNV-1a + 마무리 섞기)
+	private static long hash64(String id) {
+		byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+		long h = 0xcbf29ce484222325L;
+		for (byte b : bytes) {
+			h ^= (b & 0xff);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb93e7f6d6a57L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
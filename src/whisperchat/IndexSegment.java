@@ -0,0 +1,344 @@
+package whisperchat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * [검색 색인 세그먼트 파일] 한 번 쓰면 바뀌지 않음 (합칠 때는 새 파일을 만들고 옛 파일을 지움)
+ * 파일 전체를 메모리 매핑해 두고 위치 지정 읽기(absolute get)만 하므로 여러 검색 스레드가 동시에 읽어도 됨
+ * 색인어 사전(색인어 -> 위치)만 힙에 올리고, 문서 목록과 본문은 필요할 때 매핑된 파일에서 읽음
+ * 위치는 int로 저장하고 파일을 한 번에 매핑하므로 세그먼트 하나는 2GB를 넘을 수 없음 (ChatIndex가 합칠 크기를 제한)
+ *
+ * 파일 구조 (숫자는 모두 big-endian)
+ * [헤더 52B] MAGIC, VERSION, level, docCount, termCount, minDocId, maxDocId,
+ *            docTable 위치, dict 위치, postings 위치, data 위치
+ * [data]     문서마다: fromLen(short) from, toLen(short) to, textLen(int) text (UTF-8)
+ * [postings] 색인어마다 (문서 번호(int), 빈도(int)) x 문서 수, 문서 번호 오름차순
+ * [dict]     색인어 오름차순: 길이(short) 색인어(UTF-8), postings 위치(int), 문서 수(int)
+ * [docTable] 문서마다 24B: docId(long), 시각(long), data 위치(int), 귓속말 여부(int)
+ */
+final class IndexSegment implements ChatIndex.Source {
+
+	private static final int MAGIC = 0x57434958; // "WCIX"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 52;
+	private static final int DOC_ENTRY = 24;
+	private static final int FLAG_WHISPER = 1;
+
+	final File file;
+	final int level;
+	final int docCount;
+	final long minDocId;
+	final long maxDocId;
+
+	private final MappedByteBuffer buf;
+	private final int docTable;
+	private final int postingsBase;
+	private final int dataBase;
+	// 색인어 사전 (오름차순 색인어, 색인어별 postings 위치 / 문서 수)
+	private final String[] terms;
+	private final int[] postingsOffset;
+	private final int[] docFreq;
+	private final HashMap<String, Integer> termIndex;
+
+	private IndexSegment(File file) throws IOException {
+		this.file = file;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel ch = raf.getChannel()) {
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+			throw new IOException("색인 세그먼트 형식이 아님: " + file);
+		level = buf.getInt(8);
+		docCount = buf.getInt(12);
+		int termCount = buf.getInt(16);
+		minDocId = buf.getLong(20);
+		maxDocId = buf.getLong(28);
+		docTable = buf.getInt(36);
+		int dict = buf.getInt(40);
+		postingsBase = buf.getInt(44);
+		dataBase = buf.getInt(48);
+
+		terms = new String[termCount];
+		postingsOffset = new int[termCount];
+		docFreq = new int[termCount];
+		termIndex = new HashMap<>(termCount * 2);
+		int p = dict;
+		for (int t = 0; t < termCount; t++) {
+			int len = buf.getShort(p);
+			byte[] b = new byte[len];
+			buf.get(p + 2, b);
+			p += 2 + len;
+			terms[t] = new String(b, StandardCharsets.UTF_8);
+			postingsOffset[t] = buf.getInt(p);
+			docFreq[t] = buf.getInt(p + 4);
+			p += 8;
+			termIndex.put(terms[t], t);
+		}
+	}
+
+	static IndexSegment open(File file) throws IOException {
+		return new IndexSegment(file);
+	}
+
+	@Override
+	public int docCount() {
+		return docCount;
+	}
+
+	@Override
+	public int docFreq(String term) {
+		Integer t = termIndex.get(term);
+		return t == null ? 0 : docFreq[t];
+	}
+
+	// 색인어의 (문서 번호, 빈도) 목록 (없으면 null)
+	@Override
+	public int[] postings(String term) {
+		Integer t = termIndex.get(term);
+		return t == null ? null : postingsAt(t);
+	}
+
+	String[] terms() {
+		return terms;
+	}
+
+	int[] postingsAt(int t) {
+		int[] out = new int[docFreq[t] * 2];
+		int p = postingsBase + postingsOffset[t];
+		for (int i = 0; i < out.length; i++)
+			out[i] = buf.getInt(p + i * 4);
+		return out;
+	}
+
+	@Override
+	public ChatIndex.Doc doc(int local) {
+		int e = docTable + local * DOC_ENTRY;
+		long id = buf.getLong(e);
+		long time = buf.getLong(e + 8);
+		int p = dataBase + buf.getInt(e + 16);
+		int fromLen = buf.getShort(p);
+		String from = readString(p + 2, fromLen);
+		p += 2 + fromLen;
+		int toLen = buf.getShort(p);
+		String to = toLen == 0 ? null : readString(p + 2, toLen);
+		p += 2 + toLen;
+		int textLen = buf.getInt(p);
+		String text = readString(p + 4, textLen);
+		return new ChatIndex.Doc(id, time, from, to, text);
+	}
+
+	private String readString(int pos, int len) {
+		byte[] b = new byte[len];
+		buf.get(pos, b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * [세그먼트 쓰기] docs는 docId 오름차순, sortedTerms는 오름차순, postings[t]는 sortedTerms[t]의 (문서 번호, 빈도) 목록
+	 * 임시 파일에 다 쓴 뒤 이름을 바꿔서, 중간에 멈춰도 반쯤 쓴 세그먼트가 남지 않게 함
+	 */
+	static IndexSegment write(File file, int level, List<ChatIndex.Doc> docs, String[] sortedTerms, int[][] postings)
+			throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		int[] dataOffsets = new int[docs.size()];
+		int postingsPos;
+		int dictPos;
+		int docTablePos;
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+			out.write(new byte[HEADER_SIZE]); // 헤더는 위치가 다 정해진 뒤 마지막에 채움
+
+			// data는 헤더 바로 뒤(HEADER_SIZE)부터
+			for (int i = 0; i < docs.size(); i++) {
+				ChatIndex.Doc d = docs.get(i);
+				dataOffsets[i] = out.size() - HEADER_SIZE;
+				byte[] from = d.from.getBytes(StandardCharsets.UTF_8);
+				byte[] to = d.to == null ? new byte[0] : d.to.getBytes(StandardCharsets.UTF_8);
+				byte[] text = d.text.getBytes(StandardCharsets.UTF_8);
+				out.writeShort(from.length);
+				out.write(from);
+				out.writeShort(to.length);
+				out.write(to);
+				out.writeInt(text.length);
+				out.write(text);
+			}
+
+			postingsPos = out.size();
+			int[] termOffsets = new int[sortedTerms.length];
+			for (int t = 0; t < sortedTerms.length; t++) {
+				termOffsets[t] = out.size() - postingsPos;
+				for (int v : postings[t])
+					out.writeInt(v);
+			}
+
+			dictPos = out.size();
+			for (int t = 0; t < sortedTerms.length; t++) {
+				byte[] b = sortedTerms[t].getBytes(StandardCharsets.UTF_8);
+				out.writeShort(b.length);
+				out.write(b);
+				out.writeInt(termOffsets[t]);
+				out.writeInt(postings[t].length / 2);
+			}
+
+			docTablePos = out.size();
+			for (int i = 0; i < docs.size(); i++) {
+				ChatIndex.Doc d = docs.get(i);
+				out.writeLong(d.id);
+				out.writeLong(d.time);
+				out.writeInt(dataOffsets[i]);
+				out.writeInt(d.to == null ? 0 : FLAG_WHISPER);
+			}
+			checkedSize(out);
+		}
+		return finish(tmp, file, level, docs.size(), sortedTerms.length, docs.get(0).id, docs.get(docs.size() - 1).id,
+				docTablePos, dictPos, postingsPos);
+	}
+
+	// 파일 크기 (합칠지 정할 때 씀)
+	long sizeBytes() {
+		return buf.capacity();
+	}
+
+	/*
+	 * [세그먼트 합치기] run(docId 순으로 이어진 세그먼트들)을 세그먼트 하나로, 문서나 색인어 목록 전체를 힙에 올리지 않고 흘려 씀
+	 * - data: 세그먼트마다 data 구역을 그대로 이어 붙임 (문서 순서가 곧 docId 순서)
+	 * - postings: 세그먼트마다 오름차순인 색인어 사전을 k-way로 합치면서, 같은 색인어는 세그먼트 순서대로 문서 번호만 밀어서 씀
+	 * - dict / docTable: 합친 색인어 순서대로 / 세그먼트 순서대로 위치만 고쳐서 씀
+	 * 힙에는 색인어 하나당 (원래 세그먼트의 색인어 문자열 참조, 위치, 문서 수)만 남음
+	 */
+	static IndexSegment merge(File file, int level, List<IndexSegment> run) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		int[] docBase = new int[run.size()];
+		int[] dataShift = new int[run.size()];
+		int docCount = 0;
+		List<String> mergedTerms = new ArrayList<>();
+		int[] termOffsets = new int[1024];
+		int[] termDocs = new int[1024];
+		int postingsPos;
+		int dictPos;
+		int docTablePos;
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+			out.write(new byte[HEADER_SIZE]);
+			byte[] chunk = new byte[64 * 1024];
+
+			for (int k = 0; k < run.size(); k++) {
+				IndexSegment s = run.get(k);
+				docBase[k] = docCount;
+				docCount += s.docCount;
+				dataShift[k] = checkedSize(out) - HEADER_SIZE;
+				for (int p = s.dataBase; p < s.postingsBase; p += chunk.length) {
+					int n = Math.min(chunk.length, s.postingsBase - p);
+					s.buf.get(p, chunk, 0, n);
+					out.write(chunk, 0, n);
+				}
+			}
+
+			postingsPos = checkedSize(out);
+			// 커서 {세그먼트 번호, 색인어 번호}: 색인어 순, 같으면 세그먼트(docId) 순
+			PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+				int c = run.get(a[0]).terms[a[1]].compareTo(run.get(b[0]).terms[b[1]]);
+				return c != 0 ? c : Integer.compare(a[0], b[0]);
+			});
+			for (int k = 0; k < run.size(); k++) {
+				if (run.get(k).terms.length > 0)
+					heads.add(new int[] { k, 0 });
+			}
+			while (!heads.isEmpty()) {
+				int[] top = heads.peek();
+				String term = run.get(top[0]).terms[top[1]];
+				int t = mergedTerms.size();
+				if (t == termOffsets.length) {
+					termOffsets = Arrays.copyOf(termOffsets, t * 2);
+					termDocs = Arrays.copyOf(termDocs, t * 2);
+				}
+				termOffsets[t] = checkedSize(out) - postingsPos;
+				while (!heads.isEmpty() && run.get(heads.peek()[0]).terms[heads.peek()[1]].equals(term)) {
+					int[] h = heads.poll();
+					IndexSegment s = run.get(h[0]);
+					int p = s.postingsBase + s.postingsOffset[h[1]];
+					for (int i = 0; i < s.docFreq[h[1]]; i++) {
+						out.writeInt(s.buf.getInt(p + i * 8) + docBase[h[0]]);
+						out.writeInt(s.buf.getInt(p + i * 8 + 4));
+					}
+					termDocs[t] += s.docFreq[h[1]];
+					if (++h[1] < s.terms.length)
+						heads.add(h);
+				}
+				mergedTerms.add(term);
+			}
+
+			dictPos = checkedSize(out);
+			for (int t = 0; t < mergedTerms.size(); t++) {
+				byte[] b = mergedTerms.get(t).getBytes(StandardCharsets.UTF_8);
+				out.writeShort(b.length);
+				out.write(b);
+				out.writeInt(termOffsets[t]);
+				out.writeInt(termDocs[t]);
+			}
+
+			docTablePos = checkedSize(out);
+			for (int k = 0; k < run.size(); k++) {
+				IndexSegment s = run.get(k);
+				for (int i = 0; i < s.docCount; i++) {
+					int e = s.docTable + i * DOC_ENTRY;
+					out.writeLong(s.buf.getLong(e));
+					out.writeLong(s.buf.getLong(e + 8));
+					out.writeInt(s.buf.getInt(e + 16) + dataShift[k]);
+					out.writeInt(s.buf.getInt(e + 20));
+				}
+			}
+			checkedSize(out);
+		}
+		return finish(tmp, file, level, docCount, mergedTerms.size(), run.get(0).minDocId,
+				run.get(run.size() - 1).maxDocId, docTablePos, dictPos, postingsPos);
+	}
+
+	// 지금까지 쓴 바이트 수 (위치를 int로 저장하므로 2GB를 넘으면 실패, DataOutputStream은 넘치면 MAX_VALUE에 멈춤)
+	private static int checkedSize(DataOutputStream out) throws IOException {
+		int n = out.size();
+		if (n == Integer.MAX_VALUE)
+			throw new IOException("색인 세그먼트가 2GB를 넘음");
+		return n;
+	}
+
+	// 헤더를 채우고 임시 파일을 제 이름으로 바꾼 뒤 엶 (중간에 멈춰도 반쯤 쓴 세그먼트가 남지 않게)
+	private static IndexSegment finish(File tmp, File file, int level, int docCount, int termCount, long minDocId,
+			long maxDocId, int docTablePos, int dictPos, int postingsPos) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(level);
+			raf.writeInt(docCount);
+			raf.writeInt(termCount);
+			raf.writeLong(minDocId);
+			raf.writeLong(maxDocId);
+			raf.writeInt(docTablePos);
+			raf.writeInt(dictPos);
+			raf.writeInt(postingsPos);
+			raf.writeInt(HEADER_SIZE);
+			raf.getFD().sync();
+		}
+		if (!tmp.renameTo(file))
+			throw new IOException("세그먼트 이름 변경 실패: " + file);
+		return open(file);
+	}
+
+	// 이 세그먼트를 지움 (더 이상 검색에 쓰이지 않을 때)
+	void delete() {
+		if (!file.delete())
+			ServerLog.warn("index.delete_failed", "file", file);
+	}
+}
@@ -12,7 +12,7 @@ import java.util.Scanner;
 
 /*
  * [로그인 창 GUI]
- * 설정 파일(serverinfo.dat)에서 서버 host/port를 읽어옴
+ * 설정 파일(serverinfo.dat)에서 서버 host/port와 TLS 사용 여부(tls, truststore)를 읽어옴
  * ID/PW를 입력받아 서버에 로그인 요청
  * 그인 성공 시 같은 소켓으로 메인 채팅창(WhisperChatClient)로 전환
  */
@@ -48,7 +48,7 @@ public class LoginGUI extends JFrame {
 		setVisible(true);
 	}
 
-	// [ConfigFile] serverinfo.dat에서 host/port 읽어오기
+	// [ConfigFile] serverinfo.dat에서 host/port/TLS 설정 읽어오기
 	private void loadServerInfo() {
 		Properties props = new Properties();
 		try (FileInputStream fis = new FileInputStream("serverinfo.dat")) {
@@ -61,6 +61,14 @@ public class LoginGUI extends JFrame {
 			// serverinfo.dat이 없거나 읽기 실패 시 기본값 사용
 			System.out.println("[LoginGUI] serverinfo.dat 없음 -> 기본값 사용 (" + serverAddress + ":" + serverPort + ")");
 		}
+
+		// TLS 설정 (tls=true인데 신뢰 저장소를 못 읽으면 평문으로 바꾸지 않고 알림만 띄움 -> 접속 시 실패)
+		try {
+			TlsConfig.configureClient(props);
+			System.out.println("[LoginGUI] TLS " + (TlsConfig.isClientTls() ? "사용" : "사용 안 함"));
+		} catch (Exception e) {
+			JOptionPane.showMessageDialog(this, "TLS 설정 오류: " + e.getMessage());
+		}
 	}
 
 	// [Login GUI] 로그인 폼과 버튼 배치
@@ -126,8 +134,8 @@ public class LoginGUI extends JFrame {
 		}
 
 		try {
-			// 서버와 연결 (소켓 생성)
-			Socket socket = new Socket(serverAddress, serverPort);
+			// 서버와 연결 (소켓 생성, TLS면 핸드셰이크까지 끝난 소켓)
+			Socket socket = TlsConfig.connect(serverAddress, serverPort);
 			Scanner in = new Scanner(socket.getInputStream());
 			PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
 
@@ -0,0 +1,226 @@
+package whisperchat;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * [회원 일괄 가져오기/내보내기 도구] (서버를 끈 상태에서 실행)
+ * MemberManager.register()는 한 명마다 users.dat 전체를 훑어 중복을 보고 파일을 다시 열어 이어 쓰므로
+ * 수십만 명을 옮기면 O(n²)이 됨 -> 이 도구는 한 번에 처리
+ *
+ * import
+ * 1. 기존 users.dat을 한 번 읽으면서 ID를 메모리 집합에 넣고 그대로 임시 파일에 옮겨 씀
+ * 2. 입력 파일을 읽으며 메모리 집합으로 중복 ID를 거르고, CHUNK_SIZE명씩 묶어 해시 스레드풀에 넘김 (코어 수만큼 병렬)
+ * 3. 해시가 끝난 묶음을 넘긴 순서대로 임시 파일에 이어 씀 (한 번 연 파일에 끝까지 스트리밍)
+ * 4. 다 쓰면 임시 파일을 users.dat으로 바꿔치기 (중간에 실패하면 기존 users.dat은 그대로), 블룸 필터도 새로 만듦
+ * 진행 상황(처리 수, 초당 처리 수)은 1초마다 출력
+ *
+ * 입력 형식 (탭으로 구분, 한 줄에 한 명)
+ * - id<TAB>password<TAB>name<TAB>email : 평문 비밀번호 -> 솔트 + 해시로 저장
+ * - id<TAB>hash<TAB>salt<TAB>name<TAB>email : 다른 서버에서 export한 해시 그대로 저장
+ *
+ * export: users.dat을 위의 두 번째 형식으로 내보냄 (비밀번호 평문은 저장돼 있지 않으므로 해시째 옮김)
+ *
+ * 실행: java whisperchat.MemberBulkTool import <입력.tsv> [해시 스레드 수(기본 코어 수)]
+ *       java whisperchat.MemberBulkTool export <출력.tsv>
+ */
+public class MemberBulkTool {
+
+	// 해시 스레드에 한 번에 넘기는 인원 수
+	private static final int CHUNK_SIZE = 2048;
+	// 진행 상황 출력 주기
+	private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+	// 처리 결과 집계
+	private long existing; // 원래 users.dat에 있던 회원 수
+	private long read; // 입력 줄 수
+	private long imported; // 새로 저장한 회원 수
+	private long duplicates; // 이미 있거나 입력 안에서 겹친 ID
+	private long invalid; // 형식이 틀린 줄
+	private long startNanos;
+	private long lastReportNanos;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length >= 2 && "import".equals(args[0])) {
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			new MemberBulkTool().importMembers(Paths.get(args[1]), Math.max(1, threads));
+		} else if (args.length >= 2 && "export".equals(args[0])) {
+			new MemberBulkTool().exportMembers(Paths.get(args[1]));
+		} else {
+			System.out.println("사용법: MemberBulkTool import <입력.tsv> [스레드 수] | export <출력.tsv>");
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
+	public void importMembers(Path input, int threads) throws Exception {
+		Path users = Paths.get(MemberManager.CLIENT_INFO_FILE);
+		Path tmp = Paths.get(MemberManager.CLIENT_INFO_FILE + ".tmp");
+		Set<String> ids = new HashSet<>();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// 해시 중인 묶음 (넘긴 순서대로 꺼내 씀, 메모리를 묶음 몇 개로 제한)
+		ArrayDeque<Future<List<String>>> inFlight = new ArrayDeque<>();
+		int maxInFlight = threads * 4;
+
+		startNanos = lastReportNanos = System.nanoTime();
+		System.out.println("가져오기 시작: " + input + ", 해시 스레드 " + threads + "개");
+
+		try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			// 1. 기존 회원 옮겨 쓰기 + ID 집합
+			if (Files.exists(users)) {
+				try (BufferedReader br = Files.newBufferedReader(users, StandardCharsets.UTF_8)) {
+					String line;
+					while ((line = br.readLine()) != null) {
+						int end = line.indexOf(MemberManager.DELIMITER);
+						if (end <= 0)
+							continue;
+						ids.add(line.substring(0, end));
+						out.write(line);
+						out.newLine();
+						existing++;
+					}
+				}
+			}
+
+			// 2. 입력 읽기 -> 중복 거르기 -> 묶음 단위 병렬 해시 -> 순서대로 쓰기
+			try (BufferedReader br = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+				List<String[]> chunk = new ArrayList<>(CHUNK_SIZE);
+				String line;
+				while ((line = br.readLine()) != null) {
+					read++;
+					String[] fields = parse(line);
+					if (fields == null) {
+						invalid++;
+						continue;
+					}
+					if (!ids.add(fields[0])) {
+						duplicates++;
+						continue;
+					}
+					chunk.add(fields);
+					if (chunk.size() == CHUNK_SIZE) {
+						List<String[]> batch = chunk;
+						inFlight.addLast(pool.submit(() -> hashChunk(batch)));
+						chunk = new ArrayList<>(CHUNK_SIZE);
+						while (inFlight.size() >= maxInFlight)
+							writeChunk(out, inFlight.pollFirst().get());
+					}
+				}
+				if (!chunk.isEmpty()) {
+					List<String[]> batch = chunk;
+					inFlight.addLast(pool.submit(() -> hashChunk(batch)));
+				}
+				while (!inFlight.isEmpty())
+					writeChunk(out, inFlight.pollFirst().get());
+			}
+		} catch (Exception e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		} finally {
+			pool.shutdownNow();
+		}
+
+		// 3. 한 번에 바꿔치기 + 블룸 필터 새로 만들기 (users.dat이 더 새로우므로 open()이 다시 만듦)
+		Files.move(tmp, users, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		IdBloomFilter.open(MemberManager.BLOOM_FILE, MemberManager.CLIENT_INFO_FILE);
+
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		System.out.printf("완료: 입력 %,d줄, 새 회원 %,d명, 중복 %,d, 형식 오류 %,d, 기존 회원 %,d명%n", read, imported,
+				duplicates, invalid, existing);
+		System.out.printf("걸린 시간 %.2f초, 초당 %,.0f명 (해시 스레드 %d개)%n", seconds, imported / seconds, threads);
+	}
+
+	/*
+	 * 입력 한 줄을 필드 배열로 (형식이 틀리면 null)
+	 * 4칸이면 평문 비밀번호, 5칸이면 해시 + 솔트
+	 * ID/비밀번호는 채팅 프로토콜이 공백으로 나누므로 공백 불가, 모든 칸에 users.dat 구분자(::) 불가
+	 */
+	private static String[] parse(String line) {
+		String[] f = line.split("\t", -1);
+		if (f.length != 4 && f.length != 5)
+			return null;
+		for (String v : f) {
+			if (v.isEmpty() || v.contains(MemberManager.DELIMITER))
+				return null;
+		}
+		if (f[0].indexOf(' ') >= 0 || f[1].indexOf(' ') >= 0)
+			return null;
+		return f;
+	}
+
+	// [해시 스레드] 묶음 하나를 users.dat 줄로 바꿈 (평문이면 솔트를 만들어 해시)
+	private static List<String> hashChunk(List<String[]> chunk) throws Exception {
+		SecureRandom sr = new SecureRandom();
+		Base64.Encoder b64 = Base64.getEncoder();
+		List<String> lines = new ArrayList<>(chunk.size());
+		for (String[] f : chunk) {
+			if (f.length == 5) {
+				lines.add(String.join(MemberManager.DELIMITER, f));
+			} else {
+				byte[] salt = MemberManager.generateSalt(sr);
+				String hash = MemberManager.hashPassword(f[1], salt);
+				lines.add(String.join(MemberManager.DELIMITER, f[0], hash, b64.encodeToString(salt), f[2], f[3]));
+			}
+		}
+		return lines;
+	}
+
+	private void writeChunk(BufferedWriter out, List<String> lines) throws IOException {
+		for (String line : lines) {
+			out.write(line);
+			out.newLine();
+		}
+		imported += lines.size();
+		reportProgress();
+	}
+
+	private void reportProgress() {
+		long now = System.nanoTime();
+		if (now - lastReportNanos < PROGRESS_INTERVAL_NANOS)
+			return;
+		lastReportNanos = now;
+		double seconds = (now - startNanos) / 1e9;
+		System.out.printf("  진행: 입력 %,d줄, 저장 %,d명, 중복 %,d, 초당 %,.0f명%n", read, imported, duplicates,
+				imported / seconds);
+	}
+
+	public void exportMembers(Path output) throws IOException {
+		Path users = Paths.get(MemberManager.CLIENT_INFO_FILE);
+		startNanos = lastReportNanos = System.nanoTime();
+		long written = 0;
+		try (BufferedReader br = Files.newBufferedReader(users, StandardCharsets.UTF_8);
+				BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				// 포맷: id::hash::salt::name::email -> id<TAB>hash<TAB>salt<TAB>name<TAB>email
+				String[] parts = line.split(MemberManager.DELIMITER);
+				if (parts.length < 5) {
+					invalid++;
+					continue;
+				}
+				out.write(String.join("\t", parts[0], parts[1], parts[2], parts[3], parts[4]));
+				out.newLine();
+				written++;
+			}
+		}
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		System.out.printf("내보내기 완료: %,d명 -> %s (형식 오류 %,d줄), %.2f초, 초당 %,.0f명%n", written, output, invalid,
+				seconds, written / seconds);
+	}
+}
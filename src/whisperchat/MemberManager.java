@@ -20,8 +20,16 @@ import java.util.Map;
 public class MemberManager {
 
 	// [회원 관리] 사용자들 정보 파일로 관리 (server측)
-	private static final String CLIENT_INFO_FILE = "users.dat"; // 회원 정보 파일명
-	private static final String DELIMITER = "::"; // 데이터를 구분할 구분자 (id::hashPw::salt::name::email)
+	static final String CLIENT_INFO_FILE = "users.dat"; // 회원 정보 파일명
+	static final String DELIMITER = "::"; // 데이터를 구분할 구분자 (id::hashPw::salt::name::email)
+	static final String BLOOM_FILE = "users.bloom"; // 가입 ID 블룸 필터 파일명 (users.dat 옆에 저장)
+
+	// [중복 체크 가속] 가입된 ID 집합을 요약한 블룸 필터 -> "없는 ID"는 파일을 읽지 않고 바로 판정
+	private final IdBloomFilter idFilter;
+
+	public MemberManager() {
+		this.idFilter = IdBloomFilter.open(BLOOM_FILE, CLIENT_INFO_FILE);
+	}
 
 	// [회원가입 처리]
 	// synchronized를 사용해서 여러 클라이언트가 동시에 회원가입해도
@@ -42,18 +50,20 @@ public class MemberManager {
 			// [회원 관리] 파일에 한 줄 저장 (이어 쓰기: 기존 데이터 뒤에 추가)
 			// [회원 가입 필드] userId, password, name, email
 			// 포맷: id::hashPw::salt::name::email
-			// FileWriter의 두 번째 인자 true -> 기존 내용 유지하고 뒤에 이어 쓰기
-			try (BufferedWriter bw = new BufferedWriter(new FileWriter(CLIENT_INFO_FILE, true))) {
+			// FileWriter의 마지막 인자 true -> 기존 내용 유지하고 뒤에 이어 쓰기 (일괄 가입 도구, 블룸 필터와 같은 UTF-8)
+			try (BufferedWriter bw = new BufferedWriter(new FileWriter(CLIENT_INFO_FILE, StandardCharsets.UTF_8, true))) {
 				String line = String.join(DELIMITER, id, hashPw, saltStr, name, email);
 				bw.write(line); // 회원 등록
 				bw.newLine();
 			}
+			// 파일에 기록한 뒤 블룸 필터에도 반영 (이후 CHECK_ID에서 바로 "사용 중"으로 걸러짐)
+			idFilter.add(id, CLIENT_INFO_FILE);
 
-			System.out.println("[MemberManager] 신규 회원 등록: " + id);
+			ServerLog.info("member.register", "user", id);
 			return true;
 
 		} catch (Exception e) {
-			e.printStackTrace();
+			ServerLog.error("member.error", "error", e);
 			return false;
 		}
 	}
@@ -82,7 +92,7 @@ public class MemberManager {
 			return storedHash.equals(inputHash);
 
 		} catch (Exception e) {
-			e.printStackTrace();
+			ServerLog.error("member.error", "error", e);
 			return false;
 		}
 	}
@@ -98,7 +108,10 @@ public class MemberManager {
 	}
 
 	// [중복 체크] 해당 ID가 이미 가입되어 있으면 true, 아니면 false
+	// 블룸 필터가 "없음"이라고 하면 users.dat을 훑지 않고 바로 false
 	public synchronized boolean isUserExists(String id) {
+		if (!idFilter.mightContain(id))
+			return false;
 		return findUser(id) != null;
 	}
 
@@ -108,7 +121,7 @@ public class MemberManager {
 		if (!file.exists())
 			return null;
 
-		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+		try (BufferedReader br = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
 			String line;
 			while ((line = br.readLine()) != null) {
 				String[] parts = line.split(DELIMITER);
@@ -123,13 +136,13 @@ public class MemberManager {
 				}
 			}
 		} catch (IOException e) {
-			e.printStackTrace();
+			ServerLog.error("member.error", "error", e);
 		}
 		return null; // 가입되지 않은 사용자인 경우: null 반환
 	}
 
-	// 해시(단방향) 생성 (SHA-256 알고리즘 사용)
-	private String hashPassword(String pw, byte[] salt) throws NoSuchAlgorithmException {
+	// 해시(단방향) 생성 (SHA-256 알고리즘 사용), 일괄 가입 도구(MemberBulkTool)도 같은 방식으로 사용
+	static String hashPassword(String pw, byte[] salt) throws NoSuchAlgorithmException {
 		MessageDigest md = MessageDigest.getInstance("SHA-256");
 		md.update(salt);
 		byte[] hash = md.digest(pw.getBytes(StandardCharsets.UTF_8));
@@ -138,7 +151,10 @@ public class MemberManager {
 
 	// 임의 솔트 생성 (보안을 위해 매번 랜덤하게 생성)
 	private byte[] generateSalt() throws NoSuchAlgorithmException {
-		SecureRandom sr = new SecureRandom();
+		return generateSalt(new SecureRandom());
+	}
+
+	static byte[] generateSalt(SecureRandom sr) {
 		byte[] salt = new byte[16];
 		sr.nextBytes(salt);
 		return salt;
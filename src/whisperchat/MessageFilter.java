@@ -0,0 +1,12 @@
+package whisperchat;
+
+/*
+ * [메시지 검사 단계] 채팅 / 귓속말 본문이 전달되기 전에 보낸 사람 쪽에서 한 번만 거치는 단계
+ * (수신자 수와 상관없이 메시지마다 한 번, 보낸 사람을 맡은 이벤트 루프 스레드에서 호출되므로 가볍게 끝낼 것)
+ * 기본은 ContentFilter(금지어 규칙), 다른 검사로 바꾸려면 WhisperChatServer.setMessageFilter()
+ */
+public interface MessageFilter {
+
+	// 전달할 본문을 돌려줌 (그대로 또는 일부를 가린 것), null이면 전달하지 않음
+	String filter(String from, String text);
+}
@@ -121,7 +121,7 @@ public class RegisterGUI extends JDialog {
 			return;
 		}
 
-		try (Socket socket = new Socket(serverHost, serverPort);
+		try (Socket socket = TlsConfig.connect(serverHost, serverPort);
 				Scanner in = new Scanner(socket.getInputStream());
 				PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
 
@@ -174,7 +174,7 @@ public class RegisterGUI extends JDialog {
 		}
 
 		// 회원 가입 -> 임시로 소켓 열었다 닫는 구조
-		try (Socket socket = new Socket(serverHost, serverPort);
+		try (Socket socket = TlsConfig.connect(serverHost, serverPort);
 				Scanner in = new Scanner(socket.getInputStream());
 				PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
 
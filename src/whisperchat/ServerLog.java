@@ -0,0 +1,337 @@
+package whisperchat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * [서버 비동기 로그]
+ * 서버 코드(접속/퇴장, 회원가입 등)는 System.out.println 대신 여기로 이벤트를 넘김
+ * 호출한 스레드는 미리 만들어 둔 링 버퍼 칸에 값만 채우고 바로 돌아감 (콘솔/파일 I/O를 기다리지 않음)
+ * 백그라운드 스레드 하나가 버퍼를 비우면서 한 줄로 만들어 logs/server.log에 쓰고, 콘솔에도 보여줌
+ * 버퍼가 가득 차면 기다리지 않고 그 로그를 버림 (버린 개수는 나중에 log.dropped로 기록)
+ *
+ * 출력 형식: 2026-10-18 20:34:14.123 INFO  client.join user=alice online=3
+ * 값이 예외(Throwable)이면 그 줄 다음에 탭으로 들여쓴 스택 프레임과 cause를 이어 씀
+ */
+public final class ServerLog {
+
+	public enum Level {
+		DEBUG, INFO, WARN, ERROR
+	}
+
+	// 링 버퍼 칸 수 (2의 거듭제곱)
+	private static final int CAPACITY = 8192;
+	private static final int MASK = CAPACITY - 1;
+	// 이벤트 하나에 붙일 수 있는 최대 필드 수 (key=value 쌍)
+	private static final int MAX_FIELDS = 3;
+	// 예외 값에 붙이는 스택: 예외 하나당 프레임 수, 따라갈 cause 단계 수
+	private static final int MAX_TRACE_FRAMES = 12;
+	private static final int MAX_CAUSE_DEPTH = 4;
+
+	// 파일 회전: 한 파일이 이 크기(문자 수 기준 대략치)를 넘으면 server.log -> server.log.1 -> ... 로 밀어냄
+	private static final String LOG_DIR = "logs";
+	private static final String LOG_NAME = "server.log";
+	private static final long MAX_FILE_BYTES = 10L * 1024 * 1024;
+	private static final int MAX_FILES = 5;
+
+	// 이 레벨보다 낮은 로그는 버퍼에 넣지도 않음 (-Dwhisperchat.log.level=DEBUG 등으로 변경)
+	private static final Level MIN_LEVEL = parseLevel(System.getProperty("whisperchat.log.level", "INFO"));
+	// 콘솔에도 출력할지 여부 (서버 창에서 접속 현황을 보던 기존 동작 유지)
+	private static final boolean CONSOLE = !"false".equals(System.getProperty("whisperchat.log.console"));
+
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+			.withZone(ZoneId.systemDefault());
+
+	// 링 버퍼의 한 칸 -> 미리 만들어 두고 계속 재사용
+	private static final class Entry {
+		// 이 칸에 마지막으로 채워진 순번 (소비 스레드는 이 값이 자기 차례일 때만 읽음)
+		volatile long published = -1;
+		long timeMillis;
+		Level level;
+		String event;
+		final String[] keys = new String[MAX_FIELDS];
+		final Object[] values = new Object[MAX_FIELDS];
+		int fieldCount;
+	}
+
+	private static final Entry[] slots = new Entry[CAPACITY];
+	// 다음에 쓸 순번 (여러 생산자가 CAS로 자리 확보)
+	private static final AtomicLong tail = new AtomicLong();
+	// 다음에 읽을 순번 (소비 스레드만 씀)
+	private static volatile long head;
+	private static final AtomicLong dropped = new AtomicLong();
+
+	private ServerLog() {
+	}
+
+	private static Level parseLevel(String name) {
+		try {
+			return Level.valueOf(name.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			return Level.INFO;
+		}
+	}
+
+	public static boolean isEnabled(Level level) {
+		return level.ordinal() >= MIN_LEVEL.ordinal();
+	}
+
+	// 호출 쪽에서 가변 인자 배열이 만들어지지 않도록 필드 수별로 오버로드를 둠
+	public static void info(String event) {
+		log(Level.INFO, event, null, null, null, null, null, null);
+	}
+
+	public static void info(String event, String k1, Object v1) {
+		log(Level.INFO, event, k1, v1, null, null, null, null);
+	}
+
+	public static void info(String event, String k1, Object v1, String k2, Object v2) {
+		log(Level.INFO, event, k1, v1, k2, v2, null, null);
+	}
+
+	public static void info(String event, String k1, Object v1, String k2, Object v2, String k3, Object v3) {
+		log(Level.INFO, event, k1, v1, k2, v2, k3, v3);
+	}
+
+	public static void debug(String event, String k1, Object v1) {
+		log(Level.DEBUG, event, k1, v1, null, null, null, null);
+	}
+
+	public static void debug(String event, String k1, Object v1, String k2, Object v2) {
+		log(Level.DEBUG, event, k1, v1, k2, v2, null, null);
+	}
+
+	public static void warn(String event, String k1, Object v1) {
+		log(Level.WARN, event, k1, v1, null, null, null, null);
+	}
+
+	public static void warn(String event, String k1, Object v1, String k2, Object v2) {
+		log(Level.WARN, event, k1, v1, k2, v2, null, null);
+	}
+
+	public static void error(String event, String k1, Object v1) {
+		log(Level.ERROR, event, k1, v1, null, null, null, null);
+	}
+
+	public static void error(String event, String k1, Object v1, String k2, Object v2) {
+		log(Level.ERROR, event, k1, v1, k2, v2, null, null);
+	}
+
+	/*
+	 * [생산자] 빈 칸 하나를 CAS로 확보해서 값을 채우고 published를 기록
+	 * 버퍼가 가득 차 있으면 기다리지 않고 버림 -> 호출한 스레드는 절대 막히지 않음
+	 */
+	private static void log(Level level, String event, String k1, Object v1, String k2, Object v2, String k3,
+			Object v3) {
+		if (!isEnabled(level))
+			return;
+
+		long seq;
+		do {
+			seq = tail.get();
+			if (seq - head >= CAPACITY) {
+				dropped.incrementAndGet();
+				return;
+			}
+		} while (!tail.compareAndSet(seq, seq + 1));
+
+		Entry e = slots[(int) (seq & MASK)];
+		e.timeMillis = System.currentTimeMillis();
+		e.level = level;
+		e.event = event;
+		int n = 0;
+		if (k1 != null) {
+			e.keys[n] = k1;
+			e.values[n++] = v1;
+		}
+		if (k2 != null) {
+			e.keys[n] = k2;
+			e.values[n++] = v2;
+		}
+		if (k3 != null) {
+			e.keys[n] = k3;
+			e.values[n++] = v3;
+		}
+		e.fieldCount = n;
+		e.published = seq;
+	}
+
+	// ---------------- 소비 스레드 ----------------
+
+	private static Writer fileOut;
+	private static long fileBytes;
+	private static final StringBuilder line = new StringBuilder(256);
+
+	// 칸을 미리 만들고 소비 스레드 시작 (모든 static 필드가 준비된 뒤에 실행되도록 맨 뒤에 둠)
+	static {
+		for (int i = 0; i < CAPACITY; i++)
+			slots[i] = new Entry();
+		Thread t = new Thread(ServerLog::drainLoop, "server-log");
+		t.setDaemon(true);
+		t.start();
+		// 종료 직전에 남은 로그를 마저 씀
+		Runtime.getRuntime().addShutdownHook(new Thread(ServerLog::flushOnExit, "server-log-flush"));
+	}
+
+	// 버퍼를 순서대로 비우면서 파일/콘솔에 씀, 비어 있으면 잠깐 쉼
+	private static void drainLoop() {
+		openFile();
+		long lastDropReport = 0;
+		while (true) {
+			int n = drainBatch();
+			if (n == 0) {
+				flushFile();
+				long d = dropped.get();
+				if (d != lastDropReport) {
+					warn("log.dropped", "total", d);
+					lastDropReport = d;
+				}
+				LockSupport.parkNanos(1_000_000);
+			}
+		}
+	}
+
+	// 지금 쌓여 있는 로그를 최대 한 버퍼 분량까지 처리하고 처리한 개수를 돌려줌
+	private static synchronized int drainBatch() {
+		int count = 0;
+		while (count < CAPACITY) {
+			long seq = head;
+			Entry e = slots[(int) (seq & MASK)];
+			if (e.published != seq)
+				break;
+
+			format(e);
+			write(e.level);
+
+			// 다 쓴 칸의 참조를 비워서 GC가 가져갈 수 있게 한 뒤 다음 순번으로
+			for (int i = 0; i < e.fieldCount; i++)
+				e.values[i] = null;
+			e.event = null;
+			head = seq + 1;
+			count++;
+		}
+		return count;
+	}
+
+	private static void format(Entry e) {
+		line.setLength(0);
+		TIME_FORMAT.formatTo(Instant.ofEpochMilli(e.timeMillis), line);
+		line.append(' ').append(e.level.name());
+		for (int i = e.level.name().length(); i < 5; i++)
+			line.append(' ');
+		line.append(' ').append(e.event);
+		Throwable thrown = null;
+		for (int i = 0; i < e.fieldCount; i++) {
+			line.append(' ').append(e.keys[i]).append('=');
+			Object v = e.values[i];
+			String s;
+			if (v instanceof Throwable) {
+				thrown = (Throwable) v;
+				s = v.getClass().getSimpleName() + ": " + thrown.getMessage();
+			} else {
+				s = String.valueOf(v);
+			}
+			// 공백이 들어간 값은 따옴표로 묶어서 필드 경계를 유지
+			if (s.indexOf(' ') >= 0)
+				line.append('"').append(s).append('"');
+			else
+				line.append(s);
+		}
+		line.append('\n');
+		if (thrown != null)
+			appendTrace(thrown);
+	}
+
+	/*
+	 * [예외 스택] 한 줄 요약만으로는 어디서 터졌는지 알 수 없으므로 다음 줄부터 스택을 붙임
+	 * 예외마다 위쪽 프레임 MAX_TRACE_FRAMES개까지만 쓰고, 원인(cause)도 같은 방식으로 이어서 씀
+	 */
+	private static void appendTrace(Throwable t) {
+		for (int depth = 0; t != null && depth < MAX_CAUSE_DEPTH; depth++) {
+			if (depth > 0)
+				line.append("\tCaused by: ").append(t.getClass().getName()).append(": ").append(t.getMessage())
+						.append('\n');
+			StackTraceElement[] frames = t.getStackTrace();
+			int n = Math.min(frames.length, MAX_TRACE_FRAMES);
+			for (int i = 0; i < n; i++)
+				line.append("\t\tat ").append(frames[i]).append('\n');
+			if (frames.length > n)
+				line.append("\t\t... ").append(frames.length - n).append(" more\n");
+			// cause가 서로를 가리키며 순환하더라도 깊이 제한에서 끊김
+			t = t.getCause();
+		}
+	}
+
+	private static void write(Level level) {
+		if (CONSOLE) {
+			if (level.ordinal() >= Level.WARN.ordinal())
+				System.err.print(line);
+			else
+				System.out.print(line);
+		}
+		if (fileOut == null)
+			return;
+		try {
+			fileOut.append(line);
+			fileBytes += line.length();
+			if (fileBytes >= MAX_FILE_BYTES)
+				rotate();
+		} catch (IOException e) {
+			System.err.println("[ServerLog] 로그 파일 쓰기 실패: " + e.getMessage());
+			fileOut = null;
+		}
+	}
+
+	private static void openFile() {
+		File dir = new File(LOG_DIR);
+		dir.mkdirs();
+		File file = new File(dir, LOG_NAME);
+		try {
+			fileBytes = file.length();
+			fileOut = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8), 64 * 1024);
+		} catch (IOException e) {
+			System.err.println("[ServerLog] 로그 파일 열기 실패: " + e.getMessage());
+			fileOut = null;
+		}
+	}
+
+	// server.log.(N-1) -> server.log.N ... server.log -> server.log.1 순서로 밀고 새 파일을 엶
+	private static void rotate() throws IOException {
+		fileOut.close();
+		File dir = new File(LOG_DIR);
+		new File(dir, LOG_NAME + "." + (MAX_FILES - 1)).delete();
+		for (int i = MAX_FILES - 2; i >= 1; i--) {
+			File from = new File(dir, LOG_NAME + "." + i);
+			if (from.exists())
+				from.renameTo(new File(dir, LOG_NAME + "." + (i + 1)));
+		}
+		new File(dir, LOG_NAME).renameTo(new File(dir, LOG_NAME + ".1"));
+		openFile();
+	}
+
+	private static synchronized void flushFile() {
+		if (fileOut == null)
+			return;
+		try {
+			fileOut.flush();
+		} catch (IOException e) {
+			fileOut = null;
+		}
+	}
+
+	private static void flushOnExit() {
+		drainBatch();
+		flushFile();
+	}
+}
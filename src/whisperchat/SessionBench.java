@@ -0,0 +1,136 @@
+package whisperchat;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * [접속 중인 사용자 표 측정 도구]
+ * 예전 방식(ConcurrentHashMap<ID, 접속>)과 SessionTable(정수 번호 + 배열 + int 찾기 표)을 같은 ID들로 비교
+ *
+ * 1. 메모리: ID 문자열은 미리 만들어 두고, 표만 채웠을 때 GC 후 힙 사용량 차이를 사용자 수로 나눔
+ * 2. 찾기: 접속 중인 ID와 없는 ID를 반반 섞어 ID -> 접속 찾기 한 번에 걸린 ns (귓속말 대상 / 중복 로그인 확인)
+ * 3. 프레임 만들기: 채팅 한 줄을 보낼 때 예전처럼 문자열을 이어 붙여 인코딩한 것과
+ *    로그인 때 만든 "<MYP2> MESSAGE 아이디: " 바이트 뒤에 본문만 붙인 것의 ns와 메시지당 할당 바이트
+ * 서버는 띄우지 않음 (접속 값은 비워 두고 표 자체만 잼)
+ *
+ * 실행: java whisperchat.SessionBench [사용자 수 목록(기본 1000,10000,100000)] [찾기 횟수(기본 5000000)]
+ */
+public class SessionBench {
+
+	private static final Object PRESENT = new Object();
+	private static final String TEXT = "오늘 점심 같이 드실 분 있나요? 12시에 로비에서 봐요";
+
+	public static void main(String[] args) {
+		String[] counts = (args.length > 0 ? args[0] : "1000,10000,100000").split(",");
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+
+		System.out.println("코어 수: " + Runtime.getRuntime().availableProcessors() + ", 찾기 " + lookups + "번");
+		for (String c : counts) {
+			int n = Integer.parseInt(c.trim());
+			String[] ids = new String[n];
+			for (int i = 0; i < n; i++)
+				ids[i] = "user" + i;
+			// 찾을 ID는 프로토콜에서 받은 것처럼 별도 문자열 (절반은 접속 중이 아닌 ID)
+			String[] queries = new String[Math.min(n * 2, 1 << 16)];
+			for (int i = 0; i < queries.length; i++)
+				queries[i] = i % 2 == 0 ? new String(ids[(i * 7919) % n].toCharArray()) : "nobody" + i;
+
+			long before = usedHeap();
+			Map<String, Object> map = new ConcurrentHashMap<>();
+			for (String id : ids)
+				map.put(id, PRESENT);
+			long mapBytes = usedHeap() - before;
+
+			before = usedHeap();
+			SessionTable table = new SessionTable();
+			for (String id : ids)
+				table.add(id, null, null);
+			long tableBytes = usedHeap() - before;
+
+			// 워밍업 후 측정
+			lookupMap(map, queries, lookups / 4);
+			long start = System.nanoTime();
+			int found = lookupMap(map, queries, lookups);
+			double mapNs = (double) (System.nanoTime() - start) / lookups;
+			lookupTable(table, queries, lookups / 4);
+			start = System.nanoTime();
+			int foundTable = lookupTable(table, queries, lookups);
+			double tableNs = (double) (System.nanoTime() - start) / lookups;
+			if (found != foundTable)
+				throw new IllegalStateException("찾은 수가 다름: " + found + " / " + foundTable);
+
+			System.out.printf("사용자 %,7d명: 메모리 map %,6.1f B/명, table %,6.1f B/명 | 찾기 map %5.1f ns, table %5.1f ns%n", n,
+					(double) mapBytes / n, (double) tableBytes / n, mapNs, tableNs);
+			map.clear();
+		}
+
+		String id = "user12345";
+		byte[] prefix = ("<MYP2> MESSAGE " + id + ": ").getBytes(java.nio.charset.StandardCharsets.UTF_8);
+		int frames = lookups / 2;
+		framesOld(id, frames / 4);
+		long[] old = measure(() -> framesOld(id, frames), frames);
+		framesNew(prefix, frames / 4);
+		long[] cur = measure(() -> framesNew(prefix, frames), frames);
+		System.out.printf("채팅 프레임 만들기: 이어 붙이기 %5.1f ns / %,d B, 앞부분 재사용 %5.1f ns / %,d B (메시지당)%n",
+				old[0] / 1000.0, old[1], cur[0] / 1000.0, cur[1]);
+	}
+
+	private static int lookupMap(Map<String, Object> map, String[] queries, int count) {
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			if (map.get(queries[i & (queries.length - 1)]) != null)
+				found++;
+		}
+		return found;
+	}
+
+	private static int lookupTable(SessionTable table, String[] queries, int count) {
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			if (table.find(queries[i & (queries.length - 1)]) != SessionTable.NONE)
+				found++;
+		}
+		return found;
+	}
+
+	private static int framesOld(String id, int count) {
+		int bytes = 0;
+		for (int i = 0; i < count; i++)
+			bytes += Connection.encode("<MYP2> " + "MESSAGE" + " " + (id + ": " + TEXT)).length;
+		return bytes;
+	}
+
+	private static int framesNew(byte[] prefix, int count) {
+		int bytes = 0;
+		for (int i = 0; i < count; i++)
+			bytes += Connection.encode(prefix, TEXT).length;
+		return bytes;
+	}
+
+	// {메시지당 ps(1/1000 ns), 메시지당 할당 바이트} (할당량은 HotSpot의 스레드별 할당 카운터)
+	private static long[] measure(Runnable work, int count) {
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().getId();
+		long alloc = mx.getThreadAllocatedBytes(tid);
+		long start = System.nanoTime();
+		work.run();
+		long elapsed = System.nanoTime() - start;
+		alloc = mx.getThreadAllocatedBytes(tid) - alloc;
+		return new long[] { elapsed * 1000 / count, alloc / count };
+	}
+
+	// GC를 몇 번 돌린 뒤의 힙 사용량
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
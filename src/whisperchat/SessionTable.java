@@ -0,0 +1,253 @@
+package whisperchat;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+ * [접속 중인 사용자 표] 로그인한 세션마다 작은 정수 번호(handle)를 주고, 번호를 칸 번호로 쓰는 배열에 ID / 접속 / 귓속말 확인 창을 보관
+ * 나간 사람의 번호는 다음 로그인에 다시 씀 -> 번호는 항상 1 ~ (동시 접속 최대치) 안에 촘촘하게 있음
+ *
+ * ID -> 번호 찾기(귓속말 대상, 중복 로그인 확인)는 프로토콜에서 ID 문자열을 받을 때 한 번만
+ * 찾기 표는 int 배열 하나(열린 주소법, 선형 탐사), 칸마다 int 하나에 번호(아래 22비트)와 ID 해시의 위 10비트를 함께 넣음
+ * 해시 조각이 같을 때만 ids[번호]와 비교 (없는 ID를 찾을 때 거의 문자열을 따라가지 않음)
+ * -> 항목마다 객체(ConcurrentHashMap의 Node)를 만들지 않아 사용자당 메모리가 적고, 찾을 때 새로 만드는 객체도 없음
+ *    표 크기도 ConcurrentHashMap의 칸 배열과 같은 정도라 캐시에 잘 들어감
+ *
+ * 동시성: 로그인 / 퇴장(쓰기)은 드물어서 StampedLock 쓰기 잠금 하나로 처리
+ * 여러 루프 스레드의 찾기(읽기)는 낙관적 읽기로 잠금 없이 하고, 그 사이 쓰기가 있었으면 읽기 잠금으로 다시 함
+ * 낙관적 읽기 도중에는 배열이 서로 안 맞을 수 있으므로 칸 범위와 null을 확인하고, 결과는 validate가 통과할 때만 씀
+ */
+final class SessionTable {
+
+	// 없는 번호 (0번 칸은 비워 둠)
+	static final int NONE = 0;
+	// 찾기 표 한 칸에서 번호가 차지하는 비트 (나머지 위 비트는 해시 조각) -> 동시 접속 최대 약 400만
+	private static final int HANDLE_BITS = 22;
+	private static final int HANDLE_MASK = (1 << HANDLE_BITS) - 1;
+
+	private final StampedLock lock = new StampedLock();
+	// 번호 -> ID / 접속 / 귓속말 확인 창 (빈 칸은 null)
+	private String[] ids = new String[64];
+	private Connection[] conns = new Connection[64];
+	private WhisperWindow[] windows = new WhisperWindow[64];
+	// 다시 쓸 번호 (나중에 반납된 번호부터)
+	private int[] freeHandles = new int[16];
+	private int freeCount;
+	private int nextHandle = 1;
+	// 찾기 표: 칸마다 (해시 위 비트 | 번호), 0이면 빈 칸, 크기는 2의 거듭제곱이고 3/4 넘게 차지 않게 유지
+	private int[] index = new int[128];
+	private int size;
+
+	/*
+	 * [등록] 같은 ID가 이미 있으면 NONE, 아니면 새 번호 (확인과 등록을 한 번에 해서 중복 로그인 방지)
+	 */
+	int add(String id, Connection conn, WhisperWindow window) {
+		long stamp = lock.writeLock();
+		try {
+			if (probe(id, index, ids) != NONE)
+				return NONE;
+			if (freeCount == 0 && nextHandle > HANDLE_MASK)
+				throw new IllegalStateException("too many sessions: " + size);
+			int h = freeCount > 0 ? freeHandles[--freeCount] : nextHandle++;
+			if (h >= ids.length) {
+				ids = Arrays.copyOf(ids, ids.length * 2);
+				conns = Arrays.copyOf(conns, conns.length * 2);
+				windows = Arrays.copyOf(windows, windows.length * 2);
+			}
+			ids[h] = id;
+			conns[h] = conn;
+			windows[h] = window;
+			if ((size + 1) * 4 > index.length * 3)
+				rehash(index.length * 2);
+			insert(index, h, hashOf(id));
+			size++;
+			return h;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	// [해제] 번호를 반납하고 그 번호의 ID를 돌려줌 (이미 없으면 null)
+	String remove(int handle) {
+		long stamp = lock.writeLock();
+		try {
+			if (handle <= NONE || handle >= ids.length || ids[handle] == null)
+				return null;
+			String id = ids[handle];
+			deleteFromIndex(handle, id);
+			ids[handle] = null;
+			conns[handle] = null;
+			windows[handle] = null;
+			if (freeCount == freeHandles.length)
+				freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+			freeHandles[freeCount++] = handle;
+			size--;
+			return id;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	// ID의 번호 (접속 중이 아니면 NONE), 아무 스레드에서나 호출 가능
+	int find(String id) {
+		long stamp = lock.tryOptimisticRead();
+		int h = probe(id, index, ids);
+		if (lock.validate(stamp))
+			return h;
+		stamp = lock.readLock();
+		try {
+			return probe(id, index, ids);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/*
+	 * ID의 접속 (접속 중이 아니면 null)
+	 * 번호를 찾은 뒤 따로 접속을 꺼내면 그 사이에 번호가 다른 사람에게 넘어갈 수 있으므로 한 번의 읽기 안에서 둘 다 함
+	 */
+	Connection lookup(String id) {
+		long stamp = lock.tryOptimisticRead();
+		Connection c = connectionOf(probe(id, index, ids), conns);
+		if (lock.validate(stamp))
+			return c;
+		stamp = lock.readLock();
+		try {
+			return connectionOf(probe(id, index, ids), conns);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	// ID의 귓속말 확인 창 (접속 중이 아니면 null), lookup과 같은 이유로 한 번의 읽기 안에서
+	WhisperWindow lookupWindow(String id) {
+		long stamp = lock.tryOptimisticRead();
+		WhisperWindow w = windowOf(probe(id, index, ids), windows);
+		if (lock.validate(stamp))
+			return w;
+		stamp = lock.readLock();
+		try {
+			return windowOf(probe(id, index, ids), windows);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	// 번호의 귓속말 확인 창 (빈 칸이면 null)
+	WhisperWindow window(int handle) {
+		long stamp = lock.tryOptimisticRead();
+		WhisperWindow w = windowOf(handle, windows);
+		if (lock.validate(stamp))
+			return w;
+		stamp = lock.readLock();
+		try {
+			return windowOf(handle, windows);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	// 번호의 ID (로그 / 응답 문구용, 빈 칸이면 null)
+	String id(int handle) {
+		long stamp = lock.tryOptimisticRead();
+		String[] a = ids;
+		String id = handle > NONE && handle < a.length ? a[handle] : null;
+		if (lock.validate(stamp))
+			return id;
+		stamp = lock.readLock();
+		try {
+			return handle > NONE && handle < ids.length ? ids[handle] : null;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	// 대략적인 메모리 사용량 (배열 크기 합, ID 문자열과 접속 객체 제외)
+	long getApproxBytes() {
+		long stamp = lock.readLock();
+		try {
+			return 4L * (ids.length + conns.length + windows.length + freeHandles.length + index.length);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private static Connection connectionOf(int handle, Connection[] conns) {
+		return handle > NONE && handle < conns.length ? conns[handle] : null;
+	}
+
+	private static WhisperWindow windowOf(int handle, WhisperWindow[] windows) {
+		return handle > NONE && handle < windows.length ? windows[handle] : null;
+	}
+
+	private static int hashOf(String id) {
+		// String.hashCode의 아래 비트가 고르지 않을 수 있어 위 비트를 섞음
+		int h = id.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	// 찾기 표에서 id의 번호 (낙관적 읽기 중에도 불리므로 배열이 서로 안 맞아도 예외 없이 끝나야 함)
+	// 어느 시점의 표든 1/4 이상은 빈 칸이므로 탐사는 항상 빈 칸에서 멈춤
+	private static int probe(String id, int[] index, String[] ids) {
+		int mask = index.length - 1;
+		int hash = hashOf(id);
+		int tag = hash & ~HANDLE_MASK;
+		for (int i = hash & mask;; i = (i + 1) & mask) {
+			int e = index[i];
+			if (e == 0)
+				return NONE;
+			if ((e & ~HANDLE_MASK) != tag)
+				continue;
+			int h = e & HANDLE_MASK;
+			String s = h < ids.length ? ids[h] : null;
+			if (s != null && s.equals(id))
+				return h;
+		}
+	}
+
+	private static void insert(int[] index, int handle, int hash) {
+		int mask = index.length - 1;
+		int i = hash & mask;
+		while (index[i] != 0)
+			i = (i + 1) & mask;
+		index[i] = (hash & ~HANDLE_MASK) | handle;
+	}
+
+	// 칸 수를 slots로 늘려 다시 넣음 (칸에는 해시 조각만 있으므로 위치는 ID 해시로 다시 계산)
+	private void rehash(int slots) {
+		int[] grown = new int[slots];
+		for (int e : index) {
+			if (e != 0)
+				insert(grown, e & HANDLE_MASK, hashOf(ids[e & HANDLE_MASK]));
+		}
+		index = grown;
+	}
+
+	// 선형 탐사 표에서 지우기: 빈 칸을 만든 뒤, 뒤따르던 항목 중 그 칸으로 당겨야 찾을 수 있는 것을 당김 (묘비 없음)
+	private void deleteFromIndex(int handle, String id) {
+		int mask = index.length - 1;
+		int i = hashOf(id) & mask;
+		while ((index[i] & HANDLE_MASK) != handle)
+			i = (i + 1) & mask;
+		index[i] = 0;
+		for (int j = (i + 1) & mask; index[j] != 0; j = (j + 1) & mask) {
+			int home = hashOf(ids[index[j] & HANDLE_MASK]) & mask;
+			// home이 (i, j] 구간 밖이면 i로 당겨야 함 (순환 구간)
+			boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+			if (!between) {
+				index[i] = index[j];
+				index[j] = 0;
+				i = j;
+			}
+		}
+	}
+}
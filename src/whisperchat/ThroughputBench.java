@@ -0,0 +1,223 @@
+package whisperchat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * [처리량 측정 도구]
+ * 이벤트 루프 수를 바꿔 가며 서버를 띄우고, 로그인한 클라이언트 N명이 각자 M개씩 채팅을 보냈을 때
+ * 모든 클라이언트가 받은 메시지 수(전달 수 = N * M * N)를 다 받을 때까지 걸린 시간으로 초당 전달 수를 계산
+ * broadcast 한 건이 모든 수신자의 전송 큐에 들어가기까지 걸린 시간(FanOutStats)도 함께 출력
+ *
+ * 클라이언트 수신은 Selector 스레드 하나가 '\n' 개수만 세므로 측정 쪽 부담이 작음
+ * 코어가 여러 개인 장비에서 루프 수를 1, 2, 4 ...로 늘리며 비교 (코어 수보다 많이 늘리면 오히려 느려짐)
+ * 벤치 사용자(bench0 ~)를 회원가입하므로 users.dat이 생기는 빈 작업 디렉터리에서 실행할 것
+ *
+ * 실행: java whisperchat.ThroughputBench [루프 수 목록(기본 1,2,4)] [클라이언트 수(기본 100)] [1인당 메시지 수(기본 100)] [포트(기본 59201)]
+ */
+public class ThroughputBench {
+
+	private static final String PASSWORD = "benchpw";
+
+	public static void main(String[] args) throws Exception {
+		String[] loopList = (args.length > 0 ? args[0] : "1,2,4").split(",");
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int messages = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int port = args.length > 3 ? Integer.parseInt(args[3]) : 59201;
+
+		System.out.println("코어 수: " + Runtime.getRuntime().availableProcessors() + ", 클라이언트 " + clients
+				+ "명 x " + messages + "개");
+		// 처음 한 번은 JIT 컴파일이 끝나지 않아 느리게 나오므로 워밍업으로 돌리고 결과는 참고만
+		System.out.print("(워밍업) ");
+		run(Integer.parseInt(loopList[0].trim()), clients, messages, port);
+		for (int i = 0; i < loopList.length; i++) {
+			int loops = Integer.parseInt(loopList[i].trim());
+			run(loops, clients, messages, port + (i + 1) * 10);
+		}
+		System.exit(0);
+	}
+
+	private static void run(int loops, int clients, int messages, int port) throws Exception {
+		WhisperChatServer server = new WhisperChatServer(port, loops);
+		Thread serverThread = new Thread(server::start, "bench-server-" + loops);
+		serverThread.setDaemon(true);
+		serverThread.start();
+		Thread.sleep(500);
+
+		// 1. 접속 + (처음이면) 회원가입 + 로그인
+		List<SocketChannel> channels = new ArrayList<>();
+		for (int i = 0; i < clients; i++)
+			channels.add(login(port, "bench" + i));
+		while (server.onlineCount() < clients)
+			Thread.sleep(10);
+
+		// 2. 수신 스레드 시작 (입장 알림 등은 세지 않도록 더 들어오지 않을 때까지 기다린 뒤 카운터를 0으로)
+		AtomicLong received = new AtomicLong();
+		Receiver receiver = new Receiver(channels, received);
+		Thread receiverThread = new Thread(receiver, "bench-receiver");
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+		long settled;
+		do {
+			settled = received.get();
+			Thread.sleep(300);
+		} while (received.get() != settled);
+		received.set(0);
+		server.getFanOutStats().reset();
+
+		// 3. 클라이언트마다 M개씩 전송 (전송 스레드 몇 개가 나눠 맡음)
+		long expected = (long) clients * messages * clients;
+		byte[] line = "hello throughput\n".getBytes(StandardCharsets.UTF_8);
+		int senderCount = Math.min(4, clients);
+		List<Thread> senders = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int s = 0; s < senderCount; s++) {
+			int first = s;
+			Thread t = new Thread(() -> {
+				try {
+					for (int m = 0; m < messages; m++) {
+						for (int c = first; c < clients; c += senderCount)
+							writeFully(channels.get(c), line);
+					}
+				} catch (IOException e) {
+					ServerLog.warn("bench.send_failed", "error", e);
+				}
+			}, "bench-sender-" + s);
+			t.start();
+			senders.add(t);
+		}
+
+		// 4. 전부 받을 때까지 대기 (60초 넘으면 받은 만큼만 계산)
+		long deadline = start + 60_000_000_000L;
+		while (received.get() < expected && System.nanoTime() < deadline)
+			Thread.sleep(1);
+		long elapsed = System.nanoTime() - start;
+		long got = received.get();
+
+		FanOutStats fanOut = server.getFanOutStats();
+		System.out.printf("루프 %d개: 전달 %,d / %,d건, %,d ms, 초당 %,.0f건, broadcast 완료 평균 %.2f ms / 최대 %.2f ms%n",
+				loops, got, expected, elapsed / 1_000_000, got * 1e9 / elapsed, fanOut.getAvgMillis(),
+				fanOut.getMaxMillis());
+
+		for (Thread t : senders)
+			t.join();
+		receiver.stop();
+		for (SocketChannel ch : channels)
+			ch.close();
+		for (EventLoop loop : server.getLoops())
+			loop.shutdown();
+		// 다음 차례 서버가 같은 history 폴더를 열기 전에 색인을 다 쓰고 닫음
+		server.getChatIndex().close();
+	}
+
+	/*
+	 * 블로킹 채널로 회원가입(이미 있으면 실패해도 무시) 후 로그인, LOGIN_SUCCESS까지 읽고
+	 * 논블로킹으로 바꿔서 반환 (이후 읽기는 Receiver의 Selector가 맡음)
+	 */
+	private static SocketChannel login(int port, String id) throws IOException {
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+		channel.socket().setTcpNoDelay(true);
+		ByteBuffer in = ByteBuffer.allocate(4096);
+
+		writeFully(channel, ("<MYP2> REGISTER " + id + " " + PASSWORD + " " + id + " " + id + "@bench\n")
+				.getBytes(StandardCharsets.UTF_8));
+		readUntil(channel, in, "REGISTER_");
+		writeFully(channel, ("<MYP2> LOGIN " + id + " " + PASSWORD + "\n").getBytes(StandardCharsets.UTF_8));
+		String reply = readUntil(channel, in, "LOGIN_");
+		if (!reply.startsWith("<MYP2> LOGIN_SUCCESS"))
+			throw new IOException(id + " 로그인 실패: " + reply);
+		channel.configureBlocking(false);
+		return channel;
+	}
+
+	// 논블로킹 채널에도 쓸 수 있도록 다 넘어갈 때까지 반복
+	private static void writeFully(SocketChannel channel, byte[] data) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		while (buf.hasRemaining()) {
+			if (channel.write(buf) == 0)
+				Thread.onSpinWait();
+		}
+	}
+
+	// prefix로 시작하는 줄이 올 때까지 읽음 (그 앞의 입장 알림 등은 버림)
+	private static String readUntil(SocketChannel channel, ByteBuffer in, String prefix) throws IOException {
+		while (true) {
+			in.flip();
+			int start = in.position();
+			for (int i = start; i < in.limit(); i++) {
+				if (in.get(i) != '\n')
+					continue;
+				byte[] bytes = new byte[i - start];
+				in.get(start, bytes);
+				start = i + 1;
+				String line = new String(bytes, StandardCharsets.UTF_8);
+				if (line.startsWith("<MYP2> " + prefix)) {
+					in.position(start);
+					in.compact();
+					return line;
+				}
+			}
+			in.position(start);
+			in.compact();
+			if (channel.read(in) < 0)
+				throw new IOException("서버 연결 끊김");
+		}
+	}
+
+	// [수신 카운터] 모든 클라이언트 채널을 Selector 하나로 읽으며 '\n' 개수만 셈
+	private static final class Receiver implements Runnable {
+		private final Selector selector;
+		private final AtomicLong received;
+		private volatile boolean running = true;
+
+		Receiver(List<SocketChannel> channels, AtomicLong received) throws IOException {
+			this.selector = Selector.open();
+			this.received = received;
+			for (SocketChannel ch : channels)
+				ch.register(selector, SelectionKey.OP_READ);
+		}
+
+		void stop() {
+			running = false;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			ByteBuffer buf = ByteBuffer.allocateDirect(64 * 1024);
+			try {
+				while (running) {
+					selector.select(100);
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						buf.clear();
+						if (((SocketChannel) key.channel()).read(buf) < 0) {
+							key.cancel();
+							continue;
+						}
+						int lines = 0;
+						for (int i = 0, n = buf.position(); i < n; i++) {
+							if (buf.get(i) == '\n')
+								lines++;
+						}
+						received.addAndGet(lines);
+					}
+				}
+				selector.close();
+			} catch (IOException e) {
+				ServerLog.warn("bench.receive_failed", "error", e);
+			}
+		}
+	}
+}
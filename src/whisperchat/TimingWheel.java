@@ -0,0 +1,168 @@
+package whisperchat;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * [해시 타이밍 휠]
+ * 접속마다 걸어 두는 유휴 타이머(하트비트/읽기 타임아웃)를 관리하는 타이머
+ * 원형 배열(휠)의 칸마다 타이머 목록을 두고, tick마다 한 칸씩 돌면서 그 칸의 타이머만 확인
+ * -> 등록/취소는 O(1), 한 번의 tick은 그 칸에 있는 타이머 수만큼만 일함 (접속자가 10만 명이어도 전체를 훑지 않음)
+ *
+ * 타이머 등록은 아무 스레드에서나 가능 (대기 큐에 넣어두고 휠 스레드가 다음 tick에 칸에 꽂음)
+ * 만료된 작업은 휠 스레드에서 직접 돌리지 않고 executor에 넘김 (작업이 소켓 쓰기에서 막혀도 휠은 계속 돎)
+ */
+public class TimingWheel {
+
+	private final long tickNanos;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final Executor executor;
+
+	// 다른 스레드에서 등록한 타이머 -> 휠 스레드가 tick마다 칸에 옮김
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+	private final Thread worker;
+	private final long startNanos;
+	private volatile boolean running = true;
+	private long tick;
+
+	/*
+	 * [타이머 하나] cancel()은 표시만 해 두고, 휠 스레드가 칸을 돌 때 목록에서 뺌
+	 */
+	public static final class Timeout {
+		private final Runnable task;
+		private final long deadline; // startNanos 기준 상대 시각
+		private long remainingRounds;
+		private volatile boolean cancelled;
+
+		// 칸 안의 이중 연결 리스트
+		private Timeout prev, next;
+		private Bucket bucket;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	// 휠의 한 칸 (휠 스레드만 만지므로 동기화 필요 없음)
+	private static final class Bucket {
+		private Timeout head, tail;
+
+		void add(Timeout t) {
+			t.bucket = this;
+			if (head == null) {
+				head = tail = t;
+			} else {
+				tail.next = t;
+				t.prev = tail;
+				tail = t;
+			}
+		}
+
+		void remove(Timeout t) {
+			if (t.prev != null)
+				t.prev.next = t.next;
+			else
+				head = t.next;
+			if (t.next != null)
+				t.next.prev = t.prev;
+			else
+				tail = t.prev;
+			t.prev = t.next = null;
+			t.bucket = null;
+		}
+	}
+
+	/*
+	 * tickMillis: 한 칸이 나타내는 시간 (타임아웃 정밀도)
+	 * wheelSize: 칸 수 (2의 거듭제곱으로 올림) -> tickMillis * wheelSize보다 긴 타이머는 바퀴 수(rounds)로 셈
+	 */
+	public TimingWheel(String name, long tickMillis, int wheelSize, Executor executor) {
+		int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++)
+			wheel[i] = new Bucket();
+		this.mask = size - 1;
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.executor = executor;
+		this.startNanos = System.nanoTime();
+
+		this.worker = new Thread(this::runWheel, name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	// [타이머 등록] delayMillis 뒤에 task를 executor에서 실행
+	public Timeout schedule(Runnable task, long delayMillis) {
+		long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		Timeout t = new Timeout(task, deadline);
+		pending.add(t);
+		return t;
+	}
+
+	public void stop() {
+		running = false;
+		worker.interrupt();
+	}
+
+	// 휠 스레드: tick마다 대기 큐를 칸에 옮기고, 현재 칸의 만료 타이머를 실행
+	private void runWheel() {
+		while (running) {
+			long tickDeadline = tickNanos * (tick + 1);
+			long sleepNanos = tickDeadline - (System.nanoTime() - startNanos);
+			if (sleepNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException e) {
+					if (!running)
+						return;
+				}
+				continue;
+			}
+
+			transferPending();
+			expire(wheel[(int) (tick & mask)], tickDeadline);
+			tick++;
+		}
+	}
+
+	// 등록된 타이머를 마감 시각에 맞는 칸에 꽂음 (몇 바퀴 뒤인지 remainingRounds로 기록)
+	private void transferPending() {
+		Timeout t;
+		while ((t = pending.poll()) != null) {
+			if (t.cancelled)
+				continue;
+			long targetTick = Math.max(t.deadline / tickNanos, tick);
+			t.remainingRounds = (targetTick - tick) / wheel.length;
+			wheel[(int) (targetTick & mask)].add(t);
+		}
+	}
+
+	private void expire(Bucket bucket, long tickDeadline) {
+		Timeout t = bucket.head;
+		while (t != null) {
+			Timeout next = t.next;
+			if (t.cancelled) {
+				bucket.remove(t);
+			} else if (t.remainingRounds <= 0 && t.deadline <= tickDeadline) {
+				bucket.remove(t);
+				Runnable task = t.task;
+				executor.execute(task);
+			} else {
+				t.remainingRounds--;
+			}
+			t = next;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package whisperchat;
+
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+
+/*
+ * [TLS 서버 쪽 공용 상태] 서버 SSLContext + 핸드셰이크 계산 전용 스레드풀 + 통계
+ * 접속마다 SSLEngine을 하나씩 만들어 TlsSession에 붙여 줌
+ *
+ * 핸드셰이크 중 인증서 서명 / 키 교환 같은 무거운 계산(SSLEngine의 delegated task)은 이벤트 루프가 아니라
+ * 이 풀에서 돌림 -> 접속이 몰려 핸드셰이크가 쌓여도 이미 로그인한 사용자들의 채팅 입출력은 밀리지 않음
+ */
+final class TlsAcceptor {
+
+	// 핸드셰이크 계산 스레드 수 (기본: 코어 수의 절반, 최소 2, -Dwhisperchat.tls.handshakeThreads=N 으로 변경)
+	private static final int HANDSHAKE_THREADS = Integer.getInteger("whisperchat.tls.handshakeThreads",
+			Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+
+	private final SSLContext context;
+	private final ExecutorService handshakePool = Executors.newFixedThreadPool(HANDSHAKE_THREADS);
+	private final TlsStats stats = new TlsStats();
+
+	TlsAcceptor(SSLContext context) {
+		this.context = context;
+	}
+
+	// 새 접속용 TLS 세션 (루프 스레드에서 접속을 등록할 때 호출)
+	TlsSession open(Connection conn, SocketChannel channel) throws SSLException {
+		SSLEngine engine = context.createSSLEngine();
+		engine.setUseClientMode(false);
+		engine.setEnabledProtocols(TlsConfig.PROTOCOLS);
+		engine.beginHandshake();
+		return new TlsSession(conn, channel, engine, this);
+	}
+
+	ExecutorService getHandshakePool() {
+		return handshakePool;
+	}
+
+	TlsStats getStats() {
+		return stats;
+	}
+
+	int getHandshakeThreads() {
+		return HANDSHAKE_THREADS;
+	}
+
+	void shutdown() {
+		handshakePool.shutdown();
+	}
+}
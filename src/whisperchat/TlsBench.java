@@ -0,0 +1,218 @@
+package whisperchat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+/*
+ * [TLS 비용 측정 도구]
+ * 같은 조건으로 평문 서버와 TLS 서버를 차례로 띄워서 비교
+ *
+ * 1. 접속 비용: 여러 스레드가 "접속 -> PING -> PONG -> 끊기"를 반복했을 때 초당 접속 수
+ *    - 평문 / TLS 전체 핸드셰이크(매번 세션을 버림) / TLS 세션 재개(같은 SSLContext로 재접속)
+ *    - TLS는 서버 쪽 평균 핸드셰이크 시간과 그중 핸드셰이크 스레드에서 쓴 계산 시간도 출력
+ * 2. 메시지 비용: 로그인한 사용자 하나가
+ *    - PING/PONG을 하나씩 주고받은 평균 왕복 시간
+ *    - 채팅을 한 줄씩 보내고(한 줄마다 flush) 자기에게 돌아온 broadcast까지 다 받은 처리량
+ *    - TLS는 서버가 보낸 평문 바이트 대비 실제로 나간 암호문 바이트 (레코드 헤더 + 인증 태그)
+ *
+ * 클라이언트도 같은 장비에서 핸드셰이크를 하므로 접속 수는 서버 한계보다 낮게 나옴 (평문 대비 비율로 볼 것)
+ * 키 저장소(-Dwhisperchat.tls.keystore, 기본 server.p12)와 그 인증서를 넣은 신뢰 저장소(-Dwhisperchat.tls.truststore,
+ * 기본 truststore.p12)가 필요하고, 벤치 사용자를 회원가입하므로 빈 작업 디렉터리에서 실행할 것
+ *
+ * 실행: java whisperchat.TlsBench [모드마다 접속 수(기본 2000)] [접속 스레드 수(기본 8)] [채팅 수(기본 20000)] [포트(기본 59301)]
+ */
+public class TlsBench {
+
+	private static final String USER = "tlsbench";
+	private static final String PASSWORD = "benchpw";
+	private static final int PING_ROUNDS = 2000;
+
+	/*
+	 * 접속 스레드마다 따로 쓰는 클라이언트 SSLContext
+	 * JDK 클라이언트는 TLS 1.3 세션 티켓을 한 번만 쓰고 재개한 접속에서 새 티켓을 받으므로,
+	 * 여러 스레드가 하나를 나눠 쓰면 서로 티켓을 가져가서 재개가 절반쯤 실패함 (GUI 클라이언트처럼 순서대로 재접속하면 매번 재개)
+	 */
+	private static SSLContext[] clientContexts;
+
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int messages = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		int port = args.length > 3 ? Integer.parseInt(args[3]) : 59301;
+
+		char[] password = System.getProperty("whisperchat.tls.password", "changeit").toCharArray();
+		SSLContext serverCtx = TlsConfig.serverContext(
+				new File(System.getProperty("whisperchat.tls.keystore", "server.p12")), password);
+		File truststore = new File(System.getProperty("whisperchat.tls.truststore", "truststore.p12"));
+		clientContexts = new SSLContext[threads];
+		for (int t = 0; t < threads; t++)
+			clientContexts[t] = TlsConfig.clientContext(truststore, password);
+
+		System.out.println("코어 수: " + Runtime.getRuntime().availableProcessors() + ", 모드마다 접속 " + connections
+				+ "회 (스레드 " + threads + "개), 채팅 " + messages + "건");
+		run(null, connections, threads, messages, port);
+		run(serverCtx, connections, threads, messages, port + 10);
+		System.exit(0);
+	}
+
+	private static void run(SSLContext serverCtx, int connections, int threads, int messages, int port)
+			throws Exception {
+		boolean tls = serverCtx != null;
+		String label = tls ? "TLS" : "평문";
+		WhisperChatServer server = new WhisperChatServer(port, 1, serverCtx);
+		Thread serverThread = new Thread(server::start, "bench-server-" + label);
+		serverThread.setDaemon(true);
+		serverThread.start();
+		Thread.sleep(500);
+
+		// 1. 접속 비용 (처음 한 번은 JIT 워밍업으로 버림)
+		connectRate(tls, port, connections / 4, threads, false);
+		if (!tls) {
+			report(label, connectRate(false, port, connections, threads, false), connections, null);
+		} else {
+			TlsStats stats = server.getTlsStats();
+			stats.reset();
+			report("TLS 전체 핸드셰이크", connectRate(true, port, connections, threads, true), connections, stats);
+			stats.reset();
+			report("TLS 세션 재개", connectRate(true, port, connections, threads, false), connections, stats);
+		}
+
+		// 2. 메시지 비용
+		try (Socket socket = open(tls ? clientContexts[0] : null, port)) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			OutputStream out = socket.getOutputStream();
+			login(in, out);
+
+			writeLine(out, "PING");
+			readUntil(in, "<MYP2> PONG");
+			long start = System.nanoTime();
+			for (int i = 0; i < PING_ROUNDS; i++) {
+				writeLine(out, "PING");
+				readUntil(in, "<MYP2> PONG");
+			}
+			double rttMicros = (System.nanoTime() - start) / 1e3 / PING_ROUNDS;
+
+			TlsStats stats = server.getTlsStats();
+			long app0 = stats == null ? 0 : stats.getAppBytesOut();
+			long net0 = stats == null ? 0 : stats.getNetBytesOut();
+			Thread writer = new Thread(() -> {
+				try {
+					for (int i = 0; i < messages; i++)
+						writeLine(out, "tls bench message " + i);
+				} catch (IOException e) {
+					ServerLog.warn("bench.send_failed", "error", e);
+				}
+			}, "bench-writer");
+			start = System.nanoTime();
+			writer.start();
+			for (int got = 0; got < messages;) {
+				String line = in.readLine();
+				if (line == null)
+					throw new IOException("서버 연결 끊김");
+				if (line.startsWith("<MYP2> MESSAGE"))
+					got++;
+			}
+			long elapsed = System.nanoTime() - start;
+			writer.join();
+
+			System.out.printf("[%s] PING 왕복 평균 %.1f us, 채팅 %,d건 처리 초당 %,.0f건%n", label, rttMicros, messages,
+					messages * 1e9 / elapsed);
+			if (stats != null) {
+				long app = stats.getAppBytesOut() - app0;
+				long net = stats.getNetBytesOut() - net0;
+				System.out.printf("[%s] 서버가 보낸 평문 %,d B -> 암호문 %,d B (+%.1f%%, 채팅 한 건당 +%.1f B)%n", label, app,
+						net, (net - app) * 100.0 / app, (net - app) / (double) messages);
+			}
+		}
+
+		for (EventLoop loop : server.getLoops())
+			loop.shutdown();
+		server.getChatIndex().close();
+	}
+
+	/*
+	 * threads개 스레드가 나눠서 count번 "접속 -> PING -> PONG -> 끊기" 반복, 걸린 시간(ns) 반환
+	 * PONG까지 받는 이유: TLS 1.3은 핸드셰이크 뒤에 세션 티켓이 오므로 한 번은 읽어야 다음 접속에서 재개할 수 있음
+	 * fresh면 끊기 전에 세션을 버려서 다음 접속이 전체 핸드셰이크를 하게 함
+	 */
+	private static long connectRate(boolean tls, int port, int count, int threads, boolean fresh)
+			throws InterruptedException {
+		List<Thread> workers = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			int share = count / threads + (t < count % threads ? 1 : 0);
+			SSLContext clientCtx = tls ? clientContexts[t] : null;
+			Thread w = new Thread(() -> {
+				try {
+					for (int i = 0; i < share; i++) {
+						try (Socket socket = open(clientCtx, port)) {
+							BufferedReader in = new BufferedReader(
+									new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+							writeLine(socket.getOutputStream(), "PING");
+							readUntil(in, "<MYP2> PONG");
+							if (fresh)
+								((SSLSocket) socket).getSession().invalidate();
+						}
+					}
+				} catch (IOException e) {
+					ServerLog.warn("bench.connect_failed", "error", e);
+				}
+			}, "bench-connect-" + t);
+			w.start();
+			workers.add(w);
+		}
+		for (Thread w : workers)
+			w.join();
+		return System.nanoTime() - start;
+	}
+
+	private static void report(String label, long nanos, int count, TlsStats stats) {
+		System.out.printf("[%s] 접속 %,d회: 초당 %,.0f회", label, count, count * 1e9 / nanos);
+		if (stats != null)
+			System.out.printf(", 서버 핸드셰이크 평균 %.2f ms (계산 %.2f ms), 재개 %,d회", stats.getAvgMillis(),
+					stats.getAvgTaskMillis(), stats.getResumed());
+		System.out.println();
+	}
+
+	private static Socket open(SSLContext clientCtx, int port) throws IOException {
+		Socket socket = clientCtx == null ? new Socket("127.0.0.1", port)
+				: TlsConfig.connect(clientCtx, "127.0.0.1", port);
+		socket.setTcpNoDelay(true);
+		return socket;
+	}
+
+	// 회원가입(이미 있으면 실패해도 무시) 후 로그인
+	private static void login(BufferedReader in, OutputStream out) throws IOException {
+		writeLine(out, "REGISTER " + USER + " " + PASSWORD + " " + USER + " " + USER + "@bench");
+		readUntil(in, "<MYP2> REGISTER_");
+		writeLine(out, "LOGIN " + USER + " " + PASSWORD);
+		String reply = readUntil(in, "<MYP2> LOGIN_");
+		if (!reply.startsWith("<MYP2> LOGIN_SUCCESS"))
+			throw new IOException("로그인 실패: " + reply);
+	}
+
+	private static void writeLine(OutputStream out, String line) throws IOException {
+		out.write(("<MYP2> " + line + "\n").getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	// prefix로 시작하는 줄이 올 때까지 읽음 (그 앞의 입장 알림 등은 버림)
+	private static String readUntil(BufferedReader in, String prefix) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.startsWith(prefix))
+				return line;
+		}
+		throw new IOException("서버 연결 끊김");
+	}
+}
@@ -0,0 +1,145 @@
+package whisperchat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Properties;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+/*
+ * [TLS 설정] 서버 인증서 / 클라이언트 신뢰 저장소를 읽어 SSLContext를 만듦
+ *
+ * 서버: 키 저장소(-Dwhisperchat.tls.keystore, 기본 server.p12)가 있으면 TLS로, 없으면 예전처럼 평문으로 받음
+ *       비밀번호는 -Dwhisperchat.tls.password (기본 changeit)
+ * 클라이언트(LoginGUI / RegisterGUI): serverinfo.dat에 tls=true면 TLS로 접속
+ *       truststore=<파일>이 있으면 그 인증서만 믿고 (자체 서명 인증서용), 없으면 JVM 기본 CA 목록을 씀
+ *       접속할 host와 인증서의 이름(SAN)이 맞는지도 확인
+ *
+ * 세션 재개: 서버는 세션 캐시/티켓을 SESSION_TIMEOUT 동안 받아 주고, 클라이언트는 SSLContext 하나를 계속 쓰므로
+ * 로그아웃 후 재접속, ID 확인 -> 회원가입 -> 로그인처럼 다시 붙을 때 인증서 서명 없이 짧은 핸드셰이크로 끝남
+ */
+public final class TlsConfig {
+
+	static final String[] PROTOCOLS = { "TLSv1.3", "TLSv1.2" };
+	// 세션 재개를 받아 주는 시간 (초)
+	private static final int SESSION_TIMEOUT_SECONDS = 12 * 60 * 60;
+	// 서버가 기억하는 세션 수 (TLS 1.3은 세션 티켓을 써서 서버에 거의 남지 않음, 1.2 클라이언트용)
+	private static final int SESSION_CACHE_SIZE = 20_000;
+
+	// 클라이언트가 쓰는 SSLContext (null이면 평문), 재접속 때 세션을 재개하려면 같은 것을 계속 써야 함
+	private static volatile SSLContext clientContext;
+	// serverinfo.dat에 tls=true가 있었는지 (신뢰 저장소를 못 읽었어도 평문으로 붙지 않도록)
+	private static volatile boolean clientTlsRequired;
+
+	private TlsConfig() {
+	}
+
+	/*
+	 * [서버] 시스템 속성에 지정된 키 저장소로 SSLContext를 만듦
+	 * 파일이 없으면 null (평문 서버), 파일은 있는데 읽을 수 없으면 예외 (잘못 설정한 채 평문으로 뜨지 않게)
+	 */
+	public static SSLContext loadServerContext() throws IOException {
+		File keystore = new File(System.getProperty("whisperchat.tls.keystore", "server.p12"));
+		if (!keystore.isFile()) {
+			ServerLog.warn("tls.disabled", "reason", "키 저장소 없음", "keystore", keystore);
+			return null;
+		}
+		char[] password = System.getProperty("whisperchat.tls.password", "changeit").toCharArray();
+		return serverContext(keystore, password);
+	}
+
+	public static SSLContext serverContext(File keystore, char[] password) throws IOException {
+		try {
+			KeyStore ks = loadKeyStore(keystore, password);
+			KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			kmf.init(ks, password);
+			SSLContext ctx = SSLContext.getInstance("TLS");
+			ctx.init(kmf.getKeyManagers(), null, null);
+			SSLSessionContext sessions = ctx.getServerSessionContext();
+			sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+			sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+			return ctx;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("TLS 키 저장소를 읽을 수 없음: " + keystore, e);
+		}
+	}
+
+	// [클라이언트] truststore가 null이면 JVM 기본 CA 목록으로 확인
+	public static SSLContext clientContext(File truststore, char[] password) throws IOException {
+		try {
+			TrustManagerFactory tmf = null;
+			if (truststore != null) {
+				tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+				tmf.init(loadKeyStore(truststore, password));
+			}
+			SSLContext ctx = SSLContext.getInstance("TLS");
+			ctx.init(null, tmf == null ? null : tmf.getTrustManagers(), null);
+			ctx.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+			return ctx;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("TLS 신뢰 저장소를 읽을 수 없음: " + truststore, e);
+		}
+	}
+
+	private static KeyStore loadKeyStore(File file, char[] password) throws IOException, GeneralSecurityException {
+		KeyStore ks = KeyStore.getInstance("PKCS12");
+		try (InputStream in = new FileInputStream(file)) {
+			ks.load(in, password);
+		}
+		return ks;
+	}
+
+	/*
+	 * [클라이언트] serverinfo.dat 설정(tls, truststore, truststorePassword)을 읽어 둠
+	 * 이후 connect()가 이 설정대로 평문 / TLS 소켓을 엶
+	 */
+	public static void configureClient(Properties serverInfo) throws IOException {
+		clientContext = null;
+		clientTlsRequired = "true".equalsIgnoreCase(serverInfo.getProperty("tls", "false").trim());
+		if (!clientTlsRequired)
+			return;
+		String path = serverInfo.getProperty("truststore");
+		File truststore = path == null ? null : new File(path.trim());
+		char[] password = serverInfo.getProperty("truststorePassword", "changeit").trim().toCharArray();
+		clientContext = clientContext(truststore, password);
+	}
+
+	public static boolean isClientTls() {
+		return clientContext != null;
+	}
+
+	// [클라이언트] 채팅 서버에 접속 (TLS면 핸드셰이크와 서버 이름 확인까지 끝낸 소켓을 돌려줌)
+	public static Socket connect(String host, int port) throws IOException {
+		SSLContext ctx = clientContext;
+		if (ctx == null && clientTlsRequired)
+			throw new IOException("TLS 설정을 읽지 못해 접속하지 않음");
+		if (ctx == null)
+			return new Socket(host, port);
+		return connect(ctx, host, port);
+	}
+
+	public static SSLSocket connect(SSLContext ctx, String host, int port) throws IOException {
+		SSLSocket socket = (SSLSocket) ctx.getSocketFactory().createSocket(host, port);
+		SSLParameters params = socket.getSSLParameters();
+		params.setProtocols(PROTOCOLS);
+		params.setEndpointIdentificationAlgorithm("HTTPS");
+		socket.setSSLParameters(params);
+		try {
+			socket.startHandshake();
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		return socket;
+	}
+}
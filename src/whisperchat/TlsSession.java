@@ -0,0 +1,285 @@
+package whisperchat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+/*
+ * [접속 하나의 TLS 처리] SSLEngine으로 소켓 바이트 <-> 평문 바이트를 바꿈 (루프 스레드 전용)
+ *
+ * 읽기: 소켓 -> netIn(암호문) -> unwrap -> 루프 공용 평문 버퍼 -> Connection.onPlainBytes() (줄 자르기는 평문일 때와 같음)
+ * 쓰기: Connection이 모은 평문 버퍼 -> wrap -> netOut(암호문) -> 소켓
+ * netIn / netOut도 평문 버퍼처럼 루프의 BufferPool에서 빌리고, 덜 받은 레코드나 덜 보낸 암호문이 있을 때만 들고 있음
+ *
+ * 핸드셰이크
+ * - 엔진이 NEED_WRAP / NEED_UNWRAP을 요구하면 루프에서 바로 주고받음 (가벼운 작업)
+ * - NEED_TASK(서명, 키 교환 계산)는 TlsAcceptor의 핸드셰이크 풀로 넘기고, 끝날 때까지 이 접속만 읽기를 멈춤
+ *   계산이 끝나면 루프 우편함으로 돌아와 이어서 진행 -> 루프는 그동안 다른 접속을 계속 돌봄
+ * - 핸드셰이크가 끝나기 전에 쌓인 응답은 전송 큐에서 기다렸다가 끝나는 즉시 나감
+ */
+final class TlsSession {
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final Connection conn;
+	private final SocketChannel channel;
+	private final SSLEngine engine;
+	private final TlsAcceptor acceptor;
+	private final BufferPool pool;
+
+	// 덜 받은 TLS 레코드가 있을 때만 들고 있는 수신 버퍼 (쓰기 모드로 보관)
+	private ByteBuffer netIn;
+	// 소켓에 다 못 넘긴 암호문이 있을 때만 들고 있는 송신 버퍼 (읽기 모드로 보관)
+	private ByteBuffer netOut;
+	private boolean handshakeDone;
+	// 핸드셰이크 풀에서 계산 중인지 (그동안 엔진을 만지지 않음)
+	private boolean taskRunning;
+	// 핸드셰이크 뒤에 엔진이 다시 주고받기를 요구해서 평문 암호화가 멈췄는지 (끝나면 drive()가 다시 씀)
+	private boolean wrapStalled;
+	private final long startNanos = System.nanoTime();
+	private long taskNanos;
+
+	TlsSession(Connection conn, SocketChannel channel, SSLEngine engine, TlsAcceptor acceptor) {
+		this.conn = conn;
+		this.channel = channel;
+		this.engine = engine;
+		this.acceptor = acceptor;
+		this.pool = conn.loop().getBufferPool();
+	}
+
+	// 핸드셰이크가 끝나 평문을 보낼 수 있는지
+	boolean isReady() {
+		return handshakeDone && !taskRunning;
+	}
+
+	// 소켓에 다 못 넘긴 암호문이 남아 있는지
+	boolean hasPendingNet() {
+		return netOut != null;
+	}
+
+	// [읽기] 소켓에서 받은 만큼 netIn에 모으고 풀 수 있는 레코드를 모두 처리
+	void onReadable() throws IOException {
+		if (netIn == null)
+			netIn = pool.acquire(engine.getSession().getPacketBufferSize());
+		int n = channel.read(netIn);
+		if (n < 0) {
+			conn.close();
+			return;
+		}
+		drive();
+	}
+
+	// [쓰기 가능] 남은 암호문을 먼저 보내고, 다 보냈으면 멈춰 있던 핸드셰이크를 이어 감
+	void onWritable() throws IOException {
+		if (!flushNet())
+			return;
+		conn.setWriteInterest(false);
+		drive();
+	}
+
+	/*
+	 * [진행] 엔진이 요구하는 대로 주고받기를 더 할 수 없을 때까지 반복
+	 * - NEED_TASK: 핸드셰이크 풀로 넘기고 돌아옴
+	 * - NEED_WRAP: 핸드셰이크 메시지를 만들어 보냄 (소켓이 가득 차면 OP_WRITE를 걸고 돌아옴)
+	 * - 그 밖: netIn에 쌓인 레코드를 풀어서 평문은 Connection에 넘김 (모자라면 다음 읽기를 기다림)
+	 */
+	void drive() throws IOException {
+		try {
+			while (!taskRunning && !conn.isClosed()) {
+				HandshakeStatus hs = engine.getHandshakeStatus();
+				if (hs == HandshakeStatus.NEED_TASK) {
+					runTasks();
+					return;
+				}
+				if (hs == HandshakeStatus.NEED_WRAP) {
+					if (wrapAndSend(EMPTY) == null) {
+						conn.setWriteInterest(true);
+						return;
+					}
+					continue;
+				}
+				if (!handshakeDone && hs == HandshakeStatus.NOT_HANDSHAKING)
+					finishHandshake();
+				else if (wrapStalled && hs == HandshakeStatus.NOT_HANDSHAKING)
+					resumeWrap();
+				if (!unwrap(hs == HandshakeStatus.NEED_UNWRAP_AGAIN))
+					return;
+			}
+		} catch (SSLException e) {
+			if (!handshakeDone)
+				ServerLog.info("tls.handshake_failed", "addr", conn.remoteAddress(), "error", e.getMessage());
+			throw e;
+		}
+	}
+
+	// netIn의 레코드 하나를 풂 (더 진행할 수 없으면 false)
+	private boolean unwrap(boolean again) throws IOException {
+		if ((netIn == null || netIn.position() == 0) && !again)
+			return false;
+
+		ByteBuffer app = conn.loop().tlsScratch(engine.getSession().getApplicationBufferSize());
+		SSLEngineResult r;
+		if (netIn == null) {
+			r = engine.unwrap(EMPTY, app);
+		} else {
+			netIn.flip();
+			r = engine.unwrap(netIn, app);
+			netIn.compact();
+			if (netIn.position() == 0) {
+				pool.release(netIn);
+				netIn = null;
+			}
+		}
+
+		switch (r.getStatus()) {
+		case BUFFER_UNDERFLOW:
+			// 레코드가 덜 옴 -> 버퍼가 레코드보다 작으면 키워 두고 다음 읽기를 기다림
+			int packetSize = engine.getSession().getPacketBufferSize();
+			if (netIn != null && netIn.capacity() < packetSize) {
+				ByteBuffer grown = pool.acquire(packetSize);
+				netIn.flip();
+				grown.put(netIn);
+				pool.release(netIn);
+				netIn = grown;
+			}
+			return false;
+		case BUFFER_OVERFLOW:
+			// 평문 버퍼가 작음 -> 두 배로 키워서 다시 풂
+			conn.loop().tlsScratch(app.capacity() * 2);
+			return true;
+		case CLOSED:
+			// 상대가 close_notify를 보냄
+			conn.close();
+			return false;
+		default:
+			break;
+		}
+		if (app.position() > 0) {
+			app.flip();
+			conn.onPlainBytes(app);
+		}
+		// 아무것도 못 풀었어도 엔진이 보내기/계산을 요구하면 계속 진행
+		HandshakeStatus hs = engine.getHandshakeStatus();
+		return r.bytesConsumed() > 0 || r.bytesProduced() > 0 || hs == HandshakeStatus.NEED_WRAP
+				|| hs == HandshakeStatus.NEED_TASK;
+	}
+
+	/*
+	 * [보내기] src의 평문을 다 암호화해서 소켓에 넘기거나, 소켓이 가득 찰 때까지 진행
+	 * 남은 평문은 src에, 남은 암호문은 netOut에 남음 (Connection이 OP_WRITE를 걸고 다음에 이어 감)
+	 * 엔진이 평문을 받지 않고 핸드셰이크 진행(NEED_UNWRAP / NEED_TASK)을 요구하면 (클라이언트가 시작한 재협상,
+	 * 핸드셰이크 뒤 메시지 등) 돌지 않고 멈춘 뒤 drive()에 넘김 -> 끝나면 drive()가 남은 평문을 다시 씀
+	 */
+	void wrap(ByteBuffer src) throws IOException {
+		while (src.hasRemaining()) {
+			SSLEngineResult r = wrapAndSend(src);
+			if (r == null)
+				return;
+			if (r.bytesConsumed() == 0 && r.bytesProduced() == 0) {
+				wrapStalled = true;
+				// 지금은 Connection.writeOut() 안이므로 바로 부르지 않고 루프 우편함으로 넘김
+				conn.loop().execute(conn::continueTls);
+				return;
+			}
+		}
+	}
+
+	// 멈췄던 평문 암호화를 이어 감 (핸드셰이크가 다시 끝난 뒤 drive()에서)
+	private void resumeWrap() {
+		wrapStalled = false;
+		conn.flush();
+	}
+
+	// 레코드 하나를 만들어 보냄, 소켓이 가득 차서 암호문이 남으면 null
+	private SSLEngineResult wrapAndSend(ByteBuffer src) throws IOException {
+		if (!flushNet())
+			return null;
+		netOut = pool.acquire(engine.getSession().getPacketBufferSize());
+		SSLEngineResult r = engine.wrap(src, netOut);
+		if (r.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+			// 세션이 정해지기 전에는 레코드 크기를 작게 알려 줄 수 있음 -> 가장 큰 버퍼로 다시
+			pool.release(netOut);
+			netOut = pool.acquire(BufferPool.MAX_BUFFER);
+			r = engine.wrap(src, netOut);
+		}
+		netOut.flip();
+		if (r.getStatus() == SSLEngineResult.Status.CLOSED && r.bytesProduced() == 0)
+			throw new SSLException("TLS 연결이 이미 닫힘");
+		if (r.bytesConsumed() > 0)
+			acceptor.getStats().addBytesOut(r.bytesConsumed(), r.bytesProduced());
+		return flushNet() ? r : null;
+	}
+
+	// netOut에 남은 암호문을 소켓에 넘김 (다 넘어가면 버퍼를 돌려주고 true)
+	boolean flushNet() throws IOException {
+		if (netOut == null)
+			return true;
+		channel.write(netOut);
+		if (netOut.hasRemaining())
+			return false;
+		pool.release(netOut);
+		netOut = null;
+		return true;
+	}
+
+	/*
+	 * [핸드셰이크 계산 넘기기] 엔진이 준 작업을 핸드셰이크 풀에서 모두 돌리고 루프로 돌아와 이어서 진행
+	 * 그동안 이 접속은 읽기를 멈춤 (엔진은 작업이 끝나기 전에는 다른 호출을 받을 수 없음)
+	 */
+	private void runTasks() {
+		taskRunning = true;
+		conn.pauseReadForTls(true);
+		long queued = System.nanoTime();
+		acceptor.getHandshakePool().execute(() -> {
+			Runnable task;
+			while ((task = engine.getDelegatedTask()) != null)
+				task.run();
+			long spent = System.nanoTime() - queued;
+			conn.loop().execute(() -> {
+				taskRunning = false;
+				taskNanos += spent;
+				if (conn.isClosed())
+					return;
+				conn.pauseReadForTls(false);
+				conn.continueTls();
+			});
+		});
+	}
+
+	// 핸드셰이크 완료: 통계 기록 후 기다리던 응답을 내보냄
+	private void finishHandshake() {
+		handshakeDone = true;
+		// 세션 재개면 엔진이 예전 세션을 그대로 이어 씀 -> 세션이 이번 접속보다 먼저 만들어져 있음
+		boolean resumed = engine.getSession().getCreationTime() < System.currentTimeMillis()
+				- (System.nanoTime() - startNanos) / 1_000_000;
+		acceptor.getStats().recordHandshake(System.nanoTime() - startNanos, taskNanos, resumed);
+		ServerLog.debug("tls.handshake", "addr", conn.remoteAddress(), "resumed", resumed);
+		conn.flush();
+	}
+
+	/*
+	 * [종료] 핸드셰이크가 끝난 연결이면 close_notify를 한 번 보내 보고(실패해도 무시), 빌린 버퍼를 돌려줌
+	 * 핸드셰이크 중에 끊긴 연결은 실패로 셈
+	 */
+	void close() {
+		if (handshakeDone && !taskRunning) {
+			engine.closeOutbound();
+			try {
+				if (flushNet())
+					wrapAndSend(EMPTY);
+			} catch (IOException e) {
+			}
+		}
+		if (!handshakeDone)
+			acceptor.getStats().recordFailure();
+		pool.release(netIn);
+		pool.release(netOut);
+		netIn = null;
+		netOut = null;
+	}
+}
@@ -0,0 +1,84 @@
+package whisperchat;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * [TLS 통계]
+ * 핸드셰이크 수(그중 세션 재개 수), 핸드셰이크에 걸린 시간(접속부터 완료까지 / 그중 핸드셰이크 스레드에서 쓴 계산 시간), 실패 수
+ * 서버 통계 로그(server.tls)에서 주기마다 읽고 초기화
+ * 평문 바이트 / 암호문 바이트는 여러 루프가 매 쓰기마다 더하므로 LongAdder로 따로 셈 (초기화하지 않음, 측정 도구용)
+ */
+public final class TlsStats {
+
+	private long handshakes;
+	private long resumed;
+	private long failed;
+	private long totalNanos;
+	private long maxNanos;
+	private long taskNanos;
+
+	// 보낸 평문(프레임) 바이트, 그걸 암호화해 실제로 만든 바이트 (레코드 헤더 + 인증 태그만큼 늘어남)
+	private final LongAdder appBytesOut = new LongAdder();
+	private final LongAdder netBytesOut = new LongAdder();
+
+	synchronized void recordHandshake(long nanos, long taskNanos, boolean resumed) {
+		handshakes++;
+		if (resumed)
+			this.resumed++;
+		totalNanos += nanos;
+		this.taskNanos += taskNanos;
+		if (nanos > maxNanos)
+			maxNanos = nanos;
+	}
+
+	synchronized void recordFailure() {
+		failed++;
+	}
+
+	void addBytesOut(int app, int net) {
+		appBytesOut.add(app);
+		netBytesOut.add(net);
+	}
+
+	public synchronized long getHandshakes() {
+		return handshakes;
+	}
+
+	public synchronized long getResumed() {
+		return resumed;
+	}
+
+	public synchronized long getFailed() {
+		return failed;
+	}
+
+	public synchronized double getAvgMillis() {
+		return handshakes == 0 ? 0 : totalNanos / 1e6 / handshakes;
+	}
+
+	public synchronized double getMaxMillis() {
+		return maxNanos / 1e6;
+	}
+
+	// 핸드셰이크 하나당 핸드셰이크 스레드에서 쓴 평균 시간 (서명/키 교환 계산, 대기 포함)
+	public synchronized double getAvgTaskMillis() {
+		return handshakes == 0 ? 0 : taskNanos / 1e6 / handshakes;
+	}
+
+	public long getAppBytesOut() {
+		return appBytesOut.sum();
+	}
+
+	public long getNetBytesOut() {
+		return netBytesOut.sum();
+	}
+
+	public synchronized void reset() {
+		handshakes = 0;
+		resumed = 0;
+		failed = 0;
+		totalNanos = 0;
+		maxNanos = 0;
+		taskNanos = 0;
+	}
+}
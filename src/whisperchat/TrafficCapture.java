@@ -0,0 +1,272 @@
+package whisperchat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * [트래픽 녹화] 클라이언트가 보낸 MYP2 줄을 받은 시각, 접속 번호와 함께 이진 파일로 기록 (TrafficReplay로 다시 재생)
+ * -Dwhisperchat.capture=<파일> 로 켬 (없으면 녹화하지 않음)
+ *
+ * 이벤트 루프는 큐에 넣기만 하고 바로 돌아옴 -> 디스크 쓰기는 녹화 스레드 하나가 맡음
+ * 큐가 가득 차면 그 이벤트는 버리고 버린 수만 셈 (채팅 처리가 우선)
+ * 비밀번호는 기록하지 않음: LOGIN / REGISTER의 비밀번호 칸을 REDACTED로 바꿔서 저장 (재생할 때 재생용 비밀번호로 채움)
+ * 채팅 / 귓속말 본문은 그대로 남으므로 녹화 파일은 users.dat처럼 다룰 것
+ *
+ * 파일 구조 (숫자는 big-endian, v는 7비트씩 나눈 가변 길이 정수)
+ * [헤더 16B] MAGIC, VERSION, 녹화 시작 시각(epoch ms)
+ * [이벤트]   종류(1B, 0x80 비트는 <MYP2> 헤더가 붙어 있었음), 앞 이벤트와의 시간 차(us, v), 접속 번호(v)
+ *            LINE이면 이어서 길이(v) + 줄 내용(UTF-8, 헤더 뺀 것)
+ * 줄 하나에 평균 몇 바이트만 더 붙으므로 평문 로그보다 작음
+ */
+public final class TrafficCapture {
+
+	static final int MAGIC = 0x57434350; // "WCCP"
+	static final int VERSION = 1;
+	// 이벤트 종류
+	static final int OPEN = 1;
+	static final int LINE = 2;
+	static final int CLOSE = 3;
+	private static final int FLAG_HEADER = 0x80;
+	static final String HEADER = "<MYP2> ";
+	// 비밀번호 자리에 넣는 표시
+	static final String REDACTED = "*";
+
+	private static final int QUEUE_CAPACITY = 65_536;
+	// 녹화 스레드가 파일에 밀어 넣는 주기 (서버가 갑자기 죽으면 이만큼 잃을 수 있음)
+	private static final long FLUSH_INTERVAL_MILLIS = 1_000;
+
+	// 녹화 이벤트 하나 (nanos는 녹화 시작 기준)
+	static final class Event {
+		final int type;
+		final int connId;
+		final long nanos;
+		final String line;
+		final boolean header;
+
+		Event(int type, int connId, long nanos, String line, boolean header) {
+			this.type = type;
+			this.connId = connId;
+			this.nanos = nanos;
+			this.line = line;
+			this.header = header;
+		}
+	}
+
+	private final File file;
+	private final long startNanos = System.nanoTime();
+	private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final AtomicInteger nextConnId = new AtomicInteger();
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final DataOutputStream out;
+	private final Thread writer;
+	private volatile boolean running = true;
+
+	private TrafficCapture(File file) throws IOException {
+		this.file = file;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(System.currentTimeMillis());
+		writer = new Thread(this::runWriter, "traffic-capture");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "traffic-capture-flush"));
+	}
+
+	// -Dwhisperchat.capture가 있으면 녹화를 시작 (없거나 파일을 못 열면 null)
+	static TrafficCapture fromSystemProperty() {
+		String path = System.getProperty("whisperchat.capture");
+		if (path == null || path.isEmpty())
+			return null;
+		try {
+			TrafficCapture capture = new TrafficCapture(new File(path));
+			ServerLog.info("capture.start", "file", path);
+			return capture;
+		} catch (IOException e) {
+			ServerLog.warn("capture.open_failed", "file", path, "error", e);
+			return null;
+		}
+	}
+
+	// [접속] 새 접속 번호를 받아 기록 (이벤트 루프에서 호출)
+	int opened() {
+		int id = nextConnId.incrementAndGet();
+		submit(new Event(OPEN, id, System.nanoTime() - startNanos, null, false));
+		return id;
+	}
+
+	// [받은 줄] 헤더는 떼고, 비밀번호는 가려서 기록
+	void line(int connId, String line) {
+		boolean header = line.startsWith(HEADER);
+		String body = header ? line.substring(HEADER.length()) : line;
+		submit(new Event(LINE, connId, System.nanoTime() - startNanos, redact(body), header));
+	}
+
+	void closed(int connId) {
+		submit(new Event(CLOSE, connId, System.nanoTime() - startNanos, null, false));
+	}
+
+	private void submit(Event e) {
+		if (!running || !queue.offer(e))
+			dropped.incrementAndGet();
+	}
+
+	/*
+	 * LOGIN <id> <pw> / REGISTER <id> <pw> <name> <email> 의 비밀번호 칸을 가림
+	 * ClientHandler와 같은 방식(공백 기준)으로 나눠서, 형식이 틀린 줄도 두 번째 칸은 가림
+	 */
+	static String redact(String body) {
+		if (!body.startsWith("LOGIN ") && !body.startsWith("REGISTER "))
+			return body;
+		String[] parts = body.split(" ", 4);
+		if (parts.length < 3)
+			return body;
+		parts[2] = REDACTED;
+		return String.join(" ", parts);
+	}
+
+	// [녹화 스레드] 큐를 꺼내 파일에 씀, 주기마다 flush
+	private void runWriter() {
+		long lastNanos = 0;
+		long lastFlush = System.currentTimeMillis();
+		try {
+			while (running || !queue.isEmpty()) {
+				Event e = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (e != null) {
+					// 여러 루프가 넣으므로 시각이 아주 조금 뒤바뀔 수 있음 -> 앞 이벤트보다 이르면 같은 시각으로
+					long micros = Math.max(0, (e.nanos - lastNanos) / 1_000);
+					lastNanos = Math.max(lastNanos, e.nanos);
+					write(e, micros);
+					recorded.incrementAndGet();
+				}
+				long now = System.currentTimeMillis();
+				if (now - lastFlush >= FLUSH_INTERVAL_MILLIS) {
+					out.flush();
+					lastFlush = now;
+				}
+			}
+			out.close();
+		} catch (IOException e) {
+			running = false;
+			ServerLog.error("capture.write_failed", "file", file, "error", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void write(Event e, long deltaMicros) throws IOException {
+		out.writeByte(e.type | (e.header ? FLAG_HEADER : 0));
+		writeVarLong(out, deltaMicros);
+		writeVarLong(out, e.connId);
+		if (e.type == LINE) {
+			byte[] b = e.line.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(out, b.length);
+			out.write(b);
+		}
+	}
+
+	static void writeVarLong(DataOutputStream out, long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	static long readVarLong(DataInputStream in) throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("가변 길이 정수 형식 오류");
+	}
+
+	public long getRecordedCount() {
+		return recorded.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	// 남은 이벤트를 다 쓰고 파일을 닫음 (종료 훅에서도 호출)
+	public void close() {
+		if (!running)
+			return;
+		running = false;
+		try {
+			writer.join(5_000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * [녹화 파일 읽기] 이벤트를 앞에서부터 하나씩 (nanos는 녹화 시작 기준으로 다시 더해서 돌려줌)
+	 */
+	static final class Reader implements Closeable {
+		private final DataInputStream in;
+		private final long startEpochMillis;
+		private long nanos;
+
+		Reader(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				in.close();
+				throw new IOException("녹화 파일 형식이 아님: " + file);
+			}
+			startEpochMillis = in.readLong();
+		}
+
+		long getStartEpochMillis() {
+			return startEpochMillis;
+		}
+
+		// 다음 이벤트 (파일 끝이면 null, 녹화 중 서버가 죽어 마지막 이벤트가 잘렸으면 거기까지)
+		Event next() throws IOException {
+			int kind;
+			try {
+				kind = in.readUnsignedByte();
+			} catch (EOFException e) {
+				return null;
+			}
+			try {
+				nanos += readVarLong(in) * 1_000;
+				int connId = (int) readVarLong(in);
+				int type = kind & ~FLAG_HEADER;
+				String line = null;
+				if (type == LINE) {
+					byte[] b = new byte[(int) readVarLong(in)];
+					in.readFully(b);
+					line = new String(b, StandardCharsets.UTF_8);
+				}
+				return new Event(type, connId, nanos, line, (kind & FLAG_HEADER) != 0);
+			} catch (EOFException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,517 @@
+package whisperchat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * [녹화 재생 도구] TrafficCapture로 녹화한 파일을 실행 중인 서버에 그대로 다시 보내고 응답 지연을 잼
+ * 빌드 두 개를 같은 녹화로 돌려서 (기준 결과 파일에 저장 -> 다음 빌드에서 비교) 지연 / 처리량 차이를 봄
+ *
+ * 1. 녹화를 한 번 훑어 LOGIN한 ID를 모으고, 녹화 안에서 회원가입하지 않는 ID는 재생용 비밀번호로 미리 가입시킴
+ *    (녹화에는 비밀번호가 없으므로 LOGIN / REGISTER의 가려진 비밀번호 자리는 모두 재생용 비밀번호로 채움)
+ * 2. 녹화 속 접속마다 소켓을 하나씩 열고, 받은 시각 간격을 속도 배율로 줄여 같은 줄을 같은 순서로 보냄
+ *    - 1x: 녹화 그대로, 10x: 간격을 1/10로, max: 기다리지 않고 최대한 빨리
+ * 3. 보낸 줄마다 서버가 돌려줄 응답(PONG, 자기 채팅의 broadcast, PRIVATE_SENT, LOGIN_ ...)을 기다리는 목록에 넣고,
+ *    수신 스레드(Selector 하나)가 그 응답을 받은 시각까지를 종류별 지연으로 기록
+ *    다른 사람이 보낸 broadcast 등 기다리지 않은 줄은 전달 수로만 셈
+ *
+ * 결과: 걸린 시간, 초당 보낸 줄 / 받은 줄, 종류별 지연(p50 / p95 / p99 / 최대), 응답을 못 받은 수,
+ *       예정 시각보다 늦게 보낸 최대 시간(재생 쪽이 못 따라간 정도, 1x / 10x에서만 의미 있음)
+ * 같은 장비에서 재생하므로 절대값보다 빌드 간 비교로 볼 것 (TLS 서버는 지원하지 않음, 키 저장소 없이 띄울 것)
+ *
+ * 실행: java whisperchat.TrafficReplay <녹화 파일> [1x|10x|max (기본 max)] [포트(기본 59001)] [기준 결과 파일]
+ *       기준 결과 파일이 있으면 그 결과와 비교해서 출력, 없으면 이번 결과를 그 파일에 저장
+ */
+public class TrafficReplay {
+
+	private static final String HOST = "127.0.0.1";
+	private static final String PASSWORD = "replaypw";
+	// 연결을 닫기 전에 남은 응답을 기다리는 시간, 재생이 끝난 뒤 전체를 기다리는 시간
+	private static final long CLOSE_GRACE_NANOS = 2_000_000_000L;
+	private static final long DRAIN_NANOS = 10_000_000_000L;
+	// 응답을 맞춰 볼 때 기다리는 목록 앞에서부터 몇 개까지 볼지 (순서가 조금 바뀌는 응답용)
+	private static final int MATCH_WINDOW = 256;
+	// 로그인 전에 채팅 명령을 보냈을 때의 응답 (녹화 때와 달리 LOGIN이 실패한 경우)
+	private static final String NOT_LOGGED_IN = "<MYP2> ERROR 먼저 로그인을";
+	// 금지어 규칙에 막혔을 때의 응답
+	private static final String FILTERED = "<MYP2> ERROR 금지된";
+	private static final String[] KINDS = { "chat", "whisper", "ping", "member", "search", "other" };
+
+	// 응답 하나를 기다리는 중 (prefixes 중 하나로 시작하는 줄이 오면 도착)
+	private static final class Expect {
+		final int kind;
+		final String[] prefixes;
+		final long sentNanos;
+
+		Expect(int kind, long sentNanos, String... prefixes) {
+			this.kind = kind;
+			this.prefixes = prefixes;
+			this.sentNanos = sentNanos;
+		}
+	}
+
+	// 재생하는 접속 하나 (expects는 재생 스레드와 수신 스레드가 같이 만지므로 this로 잠금)
+	private static final class ReplayConn {
+		final SocketChannel channel;
+		final ArrayDeque<Expect> expects = new ArrayDeque<>();
+		final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+		String userId;
+		// 보내지 않고 미뤄 둔 /quit (앞선 응답을 다 받은 뒤에 보냄)
+		ByteBuffer deferredQuit;
+		long closeAtNanos;
+		boolean closed;
+
+		ReplayConn(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	// 종류별 지연 기록 (수신 스레드 전용)
+	private static final class Latencies {
+		long[] values = new long[1024];
+		int count;
+
+		void add(long nanos) {
+			if (count == values.length)
+				values = Arrays.copyOf(values, count * 2);
+			values[count++] = nanos;
+		}
+
+		double percentileMillis(double p) {
+			if (count == 0)
+				return 0;
+			int i = (int) Math.min(count - 1, Math.ceil(p * count) - 1);
+			return values[Math.max(0, i)] / 1e6;
+		}
+	}
+
+	private final int port;
+	private final Map<Integer, ReplayConn> conns = new HashMap<>();
+	private final ConcurrentLinkedQueue<ReplayConn> pendingRegister = new ConcurrentLinkedQueue<>();
+	private final Selector selector;
+	private final Latencies[] latencies = new Latencies[KINDS.length];
+	private volatile boolean sending = true;
+	private long sent;
+	private long received;
+	private long lost;
+	private long maxLagNanos;
+	// 재생 시작, 마지막 줄을 보낸 시각, 마지막으로 받은 시각 (닫기 유예 / 남은 응답 대기 시간은 빼고 계산)
+	private long startNanos;
+	private long sendEndNanos;
+	private long lastReceiveNanos;
+
+	private TrafficReplay(int port) throws IOException {
+		this.port = port;
+		this.selector = Selector.open();
+		for (int i = 0; i < latencies.length; i++)
+			latencies[i] = new Latencies();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("사용법: java whisperchat.TrafficReplay <녹화 파일> [1x|10x|max] [포트] [기준 결과 파일]");
+			return;
+		}
+		File captureFile = new File(args[0]);
+		String mode = args.length > 1 ? args[1] : "max";
+		double speed = "max".equals(mode) ? 0 : Double.parseDouble(mode.replace("x", ""));
+		int port = args.length > 2 ? Integer.parseInt(args[2]) : 59001;
+		File baseline = args.length > 3 ? new File(args[3]) : null;
+
+		// 1. 녹화를 읽어 두고 LOGIN / REGISTER하는 ID를 모음
+		List<TrafficCapture.Event> events = new ArrayList<>();
+		Set<String> loginIds = new LinkedHashSet<>();
+		Set<String> registerIds = new LinkedHashSet<>();
+		try (TrafficCapture.Reader reader = new TrafficCapture.Reader(captureFile)) {
+			TrafficCapture.Event e;
+			while ((e = reader.next()) != null) {
+				events.add(e);
+				if (e.type != TrafficCapture.LINE)
+					continue;
+				String[] parts = e.line.split(" ");
+				if (parts.length >= 3 && "LOGIN".equals(parts[0]))
+					loginIds.add(parts[1]);
+				else if (parts.length >= 3 && "REGISTER".equals(parts[0]))
+					registerIds.add(parts[1]);
+			}
+		}
+		loginIds.removeAll(registerIds);
+		long spanNanos = events.isEmpty() ? 0 : events.get(events.size() - 1).nanos;
+		System.out.printf("녹화: 이벤트 %,d개, 녹화 길이 %.1f초, 미리 가입할 사용자 %,d명, 재생 속도 %s%n", events.size(),
+				spanNanos / 1e9, loginIds.size(), mode);
+		preRegister(port, loginIds);
+
+		TrafficReplay replay = new TrafficReplay(port);
+		Thread receiver = new Thread(replay::receive, "replay-receiver");
+		receiver.start();
+		try {
+			replay.send(events, speed);
+		} finally {
+			replay.finishSending();
+		}
+		receiver.join();
+
+		Properties result = replay.report(speed > 0);
+		if (baseline != null) {
+			if (baseline.isFile()) {
+				Properties base = new Properties();
+				try (InputStream in = new FileInputStream(baseline)) {
+					base.load(in);
+				}
+				compare(base, result);
+			} else {
+				try (OutputStream out = new FileOutputStream(baseline)) {
+					result.store(out, "TrafficReplay " + captureFile.getName() + " " + mode);
+				}
+				System.out.println("기준 결과 저장: " + baseline);
+			}
+		}
+		System.exit(0);
+	}
+
+	// 녹화 밖에서 이미 가입돼 있던 사용자를 재생용 비밀번호로 가입 (이미 있으면 실패해도 무시)
+	private static void preRegister(int port, Set<String> ids) throws IOException {
+		if (ids.isEmpty())
+			return;
+		try (Socket socket = new Socket(HOST, port)) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			OutputStream out = socket.getOutputStream();
+			for (String id : ids) {
+				out.write(("<MYP2> REGISTER " + id + " " + PASSWORD + " " + id + " " + id + "@replay\n")
+						.getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				String line;
+				while ((line = in.readLine()) != null && !line.startsWith("<MYP2> REGISTER_")) {
+				}
+			}
+		}
+	}
+
+	/*
+	 * [재생 스레드] 이벤트를 예정 시각(녹화 시각 / 속도)에 맞춰 보냄
+	 * OPEN은 새 소켓을 열어 수신 스레드에 넘기고, CLOSE는 남은 응답을 조금 기다렸다가 닫도록 표시만 함
+	 */
+	private void send(List<TrafficCapture.Event> events, double speed) throws IOException {
+		long start = startNanos = System.nanoTime();
+		for (TrafficCapture.Event e : events) {
+			if (speed > 0) {
+				long due = start + (long) (e.nanos / speed);
+				long now;
+				while ((now = System.nanoTime()) < due)
+					LockSupport.parkNanos(due - now);
+				maxLagNanos = Math.max(maxLagNanos, now - due);
+			}
+			if (e.type == TrafficCapture.OPEN) {
+				SocketChannel ch = SocketChannel.open(new InetSocketAddress(HOST, port));
+				ch.socket().setTcpNoDelay(true);
+				ch.configureBlocking(false);
+				ReplayConn c = new ReplayConn(ch);
+				conns.put(e.connId, c);
+				pendingRegister.add(c);
+				selector.wakeup();
+				continue;
+			}
+			ReplayConn c = conns.get(e.connId);
+			if (c == null)
+				continue; // 녹화가 접속 도중부터 시작됨
+			if (e.type == TrafficCapture.CLOSE) {
+				synchronized (c) {
+					c.closeAtNanos = System.nanoTime() + CLOSE_GRACE_NANOS;
+				}
+				selector.wakeup();
+				continue;
+			}
+			sendLine(c, e);
+		}
+	}
+
+	// 다 보냈거나 (서버가 꺼져서) 더 보낼 수 없음 -> 수신 스레드가 남은 응답을 기다린 뒤 끝내도록
+	private void finishSending() {
+		sendEndNanos = System.nanoTime();
+		sending = false;
+		selector.wakeup();
+	}
+
+	// 가려진 비밀번호를 채워서 보내고, 돌아올 응답을 기다리는 목록에 넣음
+	private void sendLine(ReplayConn c, TrafficCapture.Event e) throws IOException {
+		String body = e.line;
+		String[] parts = body.split(" ", 4);
+		if (parts.length >= 3 && ("LOGIN".equals(parts[0]) || "REGISTER".equals(parts[0]))
+				&& TrafficCapture.REDACTED.equals(parts[2])) {
+			parts[2] = PASSWORD;
+			body = String.join(" ", parts);
+		}
+		Expect expect = expectFor(c, body);
+		String line = (e.header ? TrafficCapture.HEADER : "") + body + "\n";
+		ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+		synchronized (c) {
+			if (c.closed)
+				return;
+			/*
+			 * 서버는 /quit을 받으면 아직 못 보낸 응답을 버리고 바로 닫음
+			 * 녹화 때는 앞선 응답을 다 받은 뒤였으므로, 빠르게 재생할 때도 응답이 다 오면(또는 유예 시간 뒤) 보내도록 수신 스레드에 넘김
+			 */
+			if (body.startsWith("/quit")) {
+				c.deferredQuit = buf;
+				c.closeAtNanos = System.nanoTime() + CLOSE_GRACE_NANOS;
+				sent++;
+				return;
+			}
+			if (expect != null)
+				c.expects.addLast(expect);
+		}
+		try {
+			while (buf.hasRemaining()) {
+				if (c.channel.write(buf) == 0)
+					LockSupport.parkNanos(50_000); // 서버가 이 접속을 잠시 안 읽는 중 (회원 처리 등)
+			}
+		} catch (IOException ex) {
+			return; // 서버가 먼저 닫음 -> 남은 응답은 수신 스레드가 못 받은 것으로 셈
+		}
+		sent++;
+	}
+
+	/*
+	 * 이 줄에 서버가 돌려줄 응답 (돌려주지 않는 줄이면 null), 명령 해석은 ClientHandler와 같은 순서
+	 * 귓속말 / 오류 응답은 채팅 broadcast를 앞지를 수 있으므로 (전송 통로가 다름) 다른 줄의 응답과 헷갈리지 않게
+	 * 오류는 문구까지, 귓속말은 대상 ID까지 넣어 맞춤 (본문은 금지어 규칙에 가려질 수 있으므로 보지 않음)
+	 */
+	private static Expect expectFor(ReplayConn c, String body) {
+		long now = System.nanoTime();
+		if ("PING".equals(body))
+			return new Expect(2, now, "<MYP2> PONG");
+		if ("PONG".equals(body) || body.startsWith("/quit"))
+			return null;
+		String[] parts = body.split(" ");
+		if (c.userId == null) {
+			switch (parts[0]) {
+			case "LOGIN":
+				if (parts.length < 3)
+					return null;
+				c.userId = parts[1]; // 실패하면 LOGIN_FAIL이 오고, 이후 줄은 NOT_LOGGED_IN으로 맞춰짐
+				return new Expect(3, now, "<MYP2> LOGIN_");
+			case "REGISTER":
+				return new Expect(3, now, "<MYP2> REGISTER_");
+			case "CHECK_ID":
+				return new Expect(3, now, "<MYP2> ID_");
+			default:
+				return new Expect(5, now, NOT_LOGGED_IN);
+			}
+		}
+		if (body.startsWith("WHISPER ")) {
+			String[] w = body.substring(8).split(" ", 2);
+			if (w.length < 2)
+				return new Expect(1, now, "<MYP2> ERROR 귓속말", NOT_LOGGED_IN);
+			// 금지어 규칙에 가려지면 본문이 달라지므로 대상까지만 맞춤 (같은 통로라 순서는 그대로)
+			return new Expect(1, now, "<MYP2> PRIVATE_SENT " + w[0] + " ", "<MYP2> ERROR " + w[0] + " ", FILTERED,
+					NOT_LOGGED_IN);
+		}
+		if (body.startsWith("ACK "))
+			return null; // 받은 귓속말 확인은 응답이 없음 (알림은 보낸 사람 쪽으로 감)
+		if (body.startsWith("WHISPER_MULTI "))
+			return new Expect(1, now, "<MYP2> PRIVATE_SENT_MULTI ", "<MYP2> ERROR 귓속말", "<MYP2> ERROR 그룹",
+					FILTERED, NOT_LOGGED_IN);
+		if (body.startsWith("GROUP_"))
+			return new Expect(3, now, "<MYP2> GROUP_", "<MYP2> ERROR 그룹", NOT_LOGGED_IN);
+		if (body.startsWith("SEARCH "))
+			return new Expect(4, now, "<MYP2> SEARCH_RESULT ", "<MYP2> ERROR 검색", NOT_LOGGED_IN);
+		if (body.startsWith("FILE_OFFER "))
+			return new Expect(5, now, "<MYP2> FILE_", NOT_LOGGED_IN);
+		if (body.startsWith("LOGIN ") || body.startsWith("REGISTER ") || body.startsWith("CHECK_ID "))
+			// 앞선 LOGIN이 실패했으면 회원 명령 응답이, 성공했으면 채팅으로 돌아옴
+			return new Expect(0, now, "<MYP2> MESSAGE " + c.userId + ": ", "<MYP2> LOGIN_",
+					"<MYP2> REGISTER_", "<MYP2> ID_");
+		return new Expect(0, now, "<MYP2> MESSAGE " + c.userId + ": ", FILTERED, NOT_LOGGED_IN);
+	}
+
+	/*
+	 * [수신 스레드] 모든 재생 소켓을 Selector 하나로 읽어 줄마다 기다리던 응답과 맞춰 봄
+	 * 닫기로 표시된 접속은 기다리던 응답이 다 왔거나 유예 시간이 지나면 닫음
+	 * 재생이 끝나면 남은 응답을 DRAIN_NANOS까지 기다린 뒤 끝냄
+	 */
+	private void receive() {
+		long drainUntil = Long.MAX_VALUE;
+		List<ReplayConn> open = new ArrayList<>();
+		try {
+			while (true) {
+				ReplayConn added;
+				while ((added = pendingRegister.poll()) != null) {
+					added.channel.register(selector, SelectionKey.OP_READ, added);
+					open.add(added);
+				}
+				selector.select(50);
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					readLines((ReplayConn) key.attachment());
+				}
+
+				long now = System.nanoTime();
+				if (!sending && drainUntil == Long.MAX_VALUE)
+					drainUntil = now + DRAIN_NANOS;
+				boolean waiting = false;
+				for (Iterator<ReplayConn> ci = open.iterator(); ci.hasNext();) {
+					ReplayConn c = ci.next();
+					synchronized (c) {
+						if (c.deferredQuit != null && (c.expects.isEmpty() || now >= c.closeAtNanos)) {
+							try {
+								c.channel.write(c.deferredQuit); // 짧은 줄 하나라 한 번에 나감 (못 보내도 곧 닫음)
+							} catch (IOException e) {
+							}
+							c.deferredQuit = null;
+						}
+						boolean done = c.closed || (c.closeAtNanos != 0 && (c.expects.isEmpty() || now >= c.closeAtNanos))
+								|| now >= drainUntil;
+						if (done) {
+							closeConn(c);
+							ci.remove();
+						} else if (!c.expects.isEmpty()) {
+							waiting = true;
+						}
+					}
+				}
+				if (!sending && (!waiting || now >= drainUntil) && pendingRegister.isEmpty()) {
+					for (ReplayConn c : open) {
+						synchronized (c) {
+							closeConn(c);
+						}
+					}
+					return;
+				}
+			}
+		} catch (IOException e) {
+			ServerLog.error("replay.receive_failed", "error", e);
+		}
+	}
+
+	// 아직 못 받은 응답은 잃은 것으로 셈 (c를 잠근 채 호출)
+	private void closeConn(ReplayConn c) {
+		if (!c.closed) {
+			c.closed = true;
+			try {
+				c.channel.close();
+			} catch (IOException e) {
+			}
+		}
+		lost += c.expects.size();
+		c.expects.clear();
+	}
+
+	private void readLines(ReplayConn c) {
+		int n;
+		try {
+			n = c.channel.read(c.in);
+		} catch (IOException e) {
+			n = -1;
+		}
+		long now = System.nanoTime();
+		ByteBuffer in = c.in;
+		in.flip();
+		int lineStart = 0;
+		for (int i = 0; i < in.limit(); i++) {
+			if (in.get(i) != '\n')
+				continue;
+			String line = new String(in.array(), lineStart, i - lineStart, StandardCharsets.UTF_8);
+			lineStart = i + 1;
+			received++;
+			lastReceiveNanos = now;
+			match(c, line, now);
+		}
+		in.position(lineStart);
+		in.compact();
+		if (!in.hasRemaining()) // 64KB보다 긴 줄은 버림
+			in.clear();
+		if (n < 0) {
+			synchronized (c) {
+				closeConn(c);
+			}
+		}
+	}
+
+	// 기다리던 응답 중 앞쪽 MATCH_WINDOW개 안에서 처음 맞는 것을 찾아 지연을 기록
+	private void match(ReplayConn c, String line, long now) {
+		synchronized (c) {
+			int scanned = 0;
+			for (Iterator<Expect> it = c.expects.iterator(); it.hasNext() && scanned < MATCH_WINDOW; scanned++) {
+				Expect e = it.next();
+				for (String p : e.prefixes) {
+					if (line.startsWith(p)) {
+						it.remove();
+						latencies[e.kind].add(now - e.sentNanos);
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private Properties report(boolean paced) {
+		Properties p = new Properties();
+		double sendSecs = Math.max(1, sendEndNanos - startNanos) / 1e9;
+		double secs = Math.max(1, Math.max(sendEndNanos, lastReceiveNanos) - startNanos) / 1e9;
+		System.out.printf("재생: 마지막 응답까지 %.2f초, 보낸 줄 %,d (%.2f초, 초당 %,.0f), 받은 줄 %,d (초당 %,.0f), 응답 못 받음 %,d%n",
+				secs, sent, sendSecs, sent / sendSecs, received, received / secs, lost);
+		if (paced)
+			System.out.printf("예정보다 늦게 보낸 최대 시간: %.2f ms%n", maxLagNanos / 1e6);
+		p.setProperty("elapsedMs", String.format("%.1f", secs * 1e3));
+		p.setProperty("sentPerSec", String.format("%.1f", sent / sendSecs));
+		p.setProperty("receivedPerSec", String.format("%.1f", received / secs));
+		p.setProperty("lost", Long.toString(lost));
+		for (int k = 0; k < KINDS.length; k++) {
+			Latencies l = latencies[k];
+			if (l.count == 0)
+				continue;
+			Arrays.sort(l.values, 0, l.count);
+			double p50 = l.percentileMillis(0.50);
+			double p95 = l.percentileMillis(0.95);
+			double p99 = l.percentileMillis(0.99);
+			double max = l.values[l.count - 1] / 1e6;
+			System.out.printf("  %-8s %,9d건  p50 %8.3f ms  p95 %8.3f ms  p99 %8.3f ms  최대 %8.3f ms%n", KINDS[k],
+					l.count, p50, p95, p99, max);
+			p.setProperty(KINDS[k] + ".p50", String.format("%.3f", p50));
+			p.setProperty(KINDS[k] + ".p95", String.format("%.3f", p95));
+			p.setProperty(KINDS[k] + ".p99", String.format("%.3f", p99));
+		}
+		return p;
+	}
+
+	// 기준 결과와 항목별로 비교 (양수 %는 이번 빌드 값이 더 큼 -> 지연은 나빠짐, 처리량은 좋아짐)
+	private static void compare(Properties base, Properties now) {
+		System.out.println("기준 결과와 비교 (기준 -> 이번)");
+		for (String key : now.stringPropertyNames().stream().sorted().toArray(String[]::new)) {
+			String b = base.getProperty(key);
+			if (b == null)
+				continue;
+			double bv = Double.parseDouble(b);
+			double nv = Double.parseDouble(now.getProperty(key));
+			String diff = bv == 0 ? "" : String.format(" (%+.1f%%)", (nv - bv) * 100 / bv);
+			System.out.printf("  %-16s %12s -> %12s%s%n", key, b, now.getProperty(key), diff);
+		}
+	}
+}
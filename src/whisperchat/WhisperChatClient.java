@@ -1,17 +1,29 @@
 package whisperchat;
 
+import javax.net.ssl.SSLSocket;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.TreeSet;
 
 /*
  * 채팅 클라이언트 메인 창
  * 서버와 소켓으로 연결된 후 채팅/귓속말 메시지를 송수신하는 GUI 클래스
  * 송신 시: 모든 메시지에 <MYP2> 헤더를 붙여 서버로 전송
  * 수신 시: <MYP2> 헤더를 제거한 뒤, 화면에는 내용만 출력
+ * 귓속말: 받은 귓속말의 seq를 기억했다가 1초마다 바뀐 것이 있을 때만 <MYP2> ACK 받은seq 읽은seq 한 줄로 확인
+ *         (창이 활성 상태일 때 받은 것 / 창을 다시 볼 때까지 받은 것은 읽음으로 봄)
+ *         보낸 귓속말 옆에는 (보냄) -> (받음) -> (읽음) 으로 상태 표시
  */
 public class WhisperChatClient extends JFrame {
 
@@ -25,9 +37,40 @@ public class WhisperChatClient extends JFrame {
 	private JTextField targetField;
 	private JTextField inputField;
 	private JButton sendButton;
+	private JButton fileButton;
 	private JToggleButton whisperButton;
 	private JButton logoutButton;
 
+	// FILE_OFFER를 보내고 FILE_READY를 기다리는 파일들 (서버는 보낸 순서대로 답함)
+	private final Deque<File> pendingUploads = new ArrayDeque<>();
+
+	// 확인(ACK) 주기
+	private static final int ACK_INTERVAL_MILLIS = 1000;
+	// 받은 귓속말 seq / 읽은 seq / 마지막으로 서버에 알린 값 (모두 Swing 스레드에서만 씀)
+	private long receivedSeq;
+	private long readSeq;
+	private long ackedReceived;
+	private long ackedRead;
+	// receivedSeq 다음 seq를 건너뛰고 먼저 받은 것들 (빈 seq가 채워질 때까지 ACK는 receivedSeq에 머묾)
+	private final TreeSet<Long> receivedAhead = new TreeSet<>();
+	// 보낸 귓속말 상태 표시: 귓속말 번호 -> 표시, 대상 ID -> 아직 받음 / 읽음 알림이 오지 않은 귓속말 번호들 (보낸 순서)
+	private final Map<Long, SentMark> sentMarks = new HashMap<>();
+	private final Map<String, Deque<Long>> awaitingDelivery = new HashMap<>();
+	private final Map<String, Deque<Long>> awaitingRead = new HashMap<>();
+
+	// 채팅창에 출력한 (보냄) 표시의 위치와 받는 사람 수 (여러 명이면 모두 받아야 / 읽어야 바꿈)
+	private static class SentMark {
+		final int offset;
+		final int recipients;
+		int delivered;
+		int read;
+
+		SentMark(int offset, int recipients) {
+			this.offset = offset;
+			this.recipients = recipients;
+		}
+	}
+
 	public WhisperChatClient(Socket socket, Scanner in, PrintWriter out, String myId) {
 		super("WhisperChat");
 		this.socket = socket;
@@ -45,6 +88,8 @@ public class WhisperChatClient extends JFrame {
 
 		// 서버로부터 오는 메시지를 별도 스레드에서 수신
 		startReaderThread();
+		// 받은 귓속말 확인은 주기적으로 한 줄만
+		new Timer(ACK_INTERVAL_MILLIS, e -> sendAck()).start();
 	}
 
 	// [GUI 구성]
@@ -59,7 +104,9 @@ public class WhisperChatClient extends JFrame {
 		topPanel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
 		topPanel.setBackground(new Color(240, 240, 240));
 
-		JLabel infoLabel = new JLabel("User: " + myId);
+		// TLS로 접속했으면 협상된 프로토콜도 함께 표시
+		String security = socket instanceof SSLSocket ? "  [" + ((SSLSocket) socket).getSession().getProtocol() + "]" : "";
+		JLabel infoLabel = new JLabel("User: " + myId + security);
 		infoLabel.setFont(new Font("SansSerif", Font.BOLD, 12));
 		topPanel.add(infoLabel, BorderLayout.WEST);
 
@@ -99,13 +146,27 @@ public class WhisperChatClient extends JFrame {
 		inputField = new JTextField();
 		bottomPanel.add(inputField, BorderLayout.CENTER);
 
+		JPanel sendPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+		fileButton = new JButton("File");
+		fileButton.setMargin(new Insets(2, 6, 2, 6));
+		sendPanel.add(fileButton);
 		sendButton = new JButton("Send");
-		bottomPanel.add(sendButton, BorderLayout.EAST);
+		sendPanel.add(sendButton);
+		bottomPanel.add(sendPanel, BorderLayout.EAST);
 
 		add(bottomPanel, BorderLayout.SOUTH);
 
-		// [Logout 버튼] 서버에 /quit 전송 후 프로그램 종료
+		// 창을 다시 보면 그때까지 받은 귓속말은 읽음
+		addWindowFocusListener(new WindowAdapter() {
+			@Override
+			public void windowGainedFocus(WindowEvent e) {
+				readSeq = receivedSeq;
+			}
+		});
+
+		// [Logout 버튼] 서버에 /quit 전송 후 프로그램 종료 (받은 귓속말 확인을 먼저 보냄)
 		logoutButton.addActionListener(e -> {
+			sendAck();
 			out.println("<MYP2> /quit"); // 종료 프로토콜 전송
 			try {
 				socket.close();
@@ -134,10 +195,93 @@ public class WhisperChatClient extends JFrame {
 		ActionListener sendAction = e -> sendMessage();
 		inputField.addActionListener(sendAction);
 		sendButton.addActionListener(sendAction);
+
+		// [File 버튼] Whisper 대상에게 파일 전송
+		fileButton.addActionListener(e -> offerFile());
+	}
+
+	/*
+	 * [파일 전송 요청] <MYP2> FILE_OFFER 대상ID 크기 파일명
+	 * 파일 내용은 채팅 연결로 보내지 않고, FILE_READY를 받은 뒤 데이터 포트로 따로 올림
+	 */
+	private void offerFile() {
+		String target = targetField.getText().trim();
+		if (!whisperButton.isSelected() || target.isEmpty()) {
+			JOptionPane.showMessageDialog(this, "Whisper 모드에서 받는 사람 ID를 입력하세요.");
+			return;
+		}
+
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+		File file = chooser.getSelectedFile();
+
+		pendingUploads.addLast(file);
+		out.println("<MYP2> FILE_OFFER " + target + " " + file.length() + " " + file.getName());
+	}
+
+	// FILE_READY <전송ID> <포트> <대상ID> <파일명> -> 별도 스레드에서 업로드
+	private void startUpload(String body) {
+		String[] parts = body.split(" ", 4);
+		File file = pendingUploads.pollFirst();
+		if (parts.length < 4 || file == null)
+			return;
+
+		String transferId = parts[0];
+		int port = Integer.parseInt(parts[1]);
+		String target = parts[2];
+		String host = socket.getInetAddress().getHostAddress();
+
+		messageArea.append("[파일] " + target + " 님에게 " + file.getName() + " 업로드 시작\n");
+		new Thread(() -> {
+			boolean ok = FileTransferClient.upload(host, port, transferId, file, this::appendFileStatus);
+			appendFileStatus(ok ? file.getName() + " 업로드 완료, 상대방 수신 대기 중" : file.getName() + " 업로드 실패");
+		}).start();
+	}
+
+	// FILE_OFFER <전송ID> <포트> <보낸사람> <크기> <파일명> -> 받을지 묻고, 받으면 별도 스레드에서 다운로드
+	private void acceptDownload(String body) {
+		String[] parts = body.split(" ", 5);
+		if (parts.length < 5)
+			return;
+
+		String transferId = parts[0];
+		int port = Integer.parseInt(parts[1]);
+		String from = parts[2];
+		String size = parts[3];
+		String fileName = parts[4];
+
+		int answer = JOptionPane.showConfirmDialog(this,
+				from + " 님이 파일을 보냈습니다: " + fileName + " (" + size + " bytes)\n받으시겠습니까?", "파일 수신",
+				JOptionPane.YES_NO_OPTION);
+		if (answer != JOptionPane.YES_OPTION)
+			return;
+
+		JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile(new File(fileName));
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+		File target = chooser.getSelectedFile();
+		String host = socket.getInetAddress().getHostAddress();
+
+		new Thread(() -> {
+			boolean ok = FileTransferClient.download(host, port, transferId, target, this::appendFileStatus);
+			appendFileStatus(ok ? fileName + " 수신 완료: " + target.getPath() : fileName + " 수신 실패");
+		}).start();
+	}
+
+	// 전송 스레드에서 채팅창에 진행 상황 출력 (Swing 스레드에서 처리)
+	private void appendFileStatus(String text) {
+		SwingUtilities.invokeLater(() -> {
+			messageArea.append("[파일] " + text + "\n");
+			messageArea.setCaretPosition(messageArea.getDocument().getLength());
+		});
 	}
 
 	/*
-	 * [메시지 전송] 일반 메시지: <MYP2> + msg 귓속말: <MYP2> WHISPER 대상ID 메시지
+	 * [메시지 전송] 일반 메시지: <MYP2> + msg 귓속말: <MYP2> WHISPER 대상ID 메시지 검색: /search 검색어 -> <MYP2> SEARCH 검색어
+	 * 여러 명에게 귓속말: 대상 칸에 a,b,c 또는 @그룹이름 -> <MYP2> WHISPER_MULTI 대상들 메시지
+	 * 그룹: /group save 이름 a,b,c -> GROUP_SAVE, /group delete 이름 -> GROUP_DELETE, /groups -> GROUP_LIST
 	 */
 	private void sendMessage() {
 		String msg = inputField.getText().trim();
@@ -150,8 +294,22 @@ public class WhisperChatClient extends JFrame {
 				JOptionPane.showMessageDialog(this, "Enter Recipient ID");
 				return;
 			}
-			// 귓속말 프로토콜: <MYP2> WHISPER 대상ID 메시지
-			out.println("<MYP2> WHISPER " + target + " " + msg);
+			if (target.contains(",") || target.startsWith("@")) {
+				// 여러 명(그룹) 귓속말: 서버가 한 번에 나눠 보내고 결과를 한 줄로 알려줌
+				out.println("<MYP2> WHISPER_MULTI " + target.replace(" ", "") + " " + msg);
+			} else {
+				// 귓속말 프로토콜: <MYP2> WHISPER 대상ID 메시지
+				out.println("<MYP2> WHISPER " + target + " " + msg);
+			}
+		} else if (msg.startsWith("/search ")) {
+			// 채팅 기록 검색: <MYP2> SEARCH 검색어
+			out.println("<MYP2> SEARCH " + msg.substring(8).trim());
+		} else if (msg.startsWith("/group save ")) {
+			out.println("<MYP2> GROUP_SAVE " + msg.substring(12).trim());
+		} else if (msg.startsWith("/group delete ")) {
+			out.println("<MYP2> GROUP_DELETE " + msg.substring(14).trim());
+		} else if ("/groups".equals(msg)) {
+			out.println("<MYP2> GROUP_LIST");
 		} else {
 			// 일반 메시지: <MYP2> + 실제 텍스트만 전송
 			out.println("<MYP2> " + msg);
@@ -161,6 +319,87 @@ public class WhisperChatClient extends JFrame {
 		inputField.requestFocus();
 	}
 
+	// [귓속말 확인] 지난번 이후 받거나 읽은 것이 있을 때만 <MYP2> ACK 받은seq 읽은seq
+	private void sendAck() {
+		if (receivedSeq == ackedReceived && readSeq == ackedRead)
+			return;
+		out.println("<MYP2> ACK " + receivedSeq + " " + readSeq);
+		ackedReceived = receivedSeq;
+		ackedRead = readSeq;
+	}
+
+	/*
+	 * 받은 귓속말 seq 기록 (새로 받은 것이면 true, 이미 받은 것이면 false)
+	 * 빈 seq 없이 이어진 곳까지만 receivedSeq를 올림 -> 도중에 빠진 것이 있으면 그 앞까지만 ACK해서 서버가 빠진 것을 들고 있게 함
+	 */
+	private boolean acceptSeq(long seq) {
+		if (seq <= receivedSeq || !receivedAhead.add(seq))
+			return false;
+		while (receivedAhead.remove(receivedSeq + 1))
+			receivedSeq++;
+		if (isActive())
+			readSeq = receivedSeq;
+		return true;
+	}
+
+	// 서버가 보낸 숫자 (잘못된 값이면 -1, 수신 처리를 멈추지 않도록 예외를 던지지 않음)
+	private static long parseNumber(String s) {
+		try {
+			return Long.parseLong(s);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	// 보낸 귓속말을 "[귓속말] To 대상 (보냄): 메시지" 로 출력하고 상태 표시 위치를 기억 (번호가 잘못됐으면 표시 없이)
+	private void appendSentWhisper(String to, long whisperId, int recipients, String[] targets, String msg) {
+		String head = "[귓속말] To " + to + " ";
+		if (whisperId < 0) {
+			messageArea.append(head.trim() + ": " + msg + "\n");
+			return;
+		}
+		int offset = messageArea.getDocument().getLength() + head.length();
+		messageArea.append(head + "(보냄): " + msg + "\n");
+		sentMarks.put(whisperId, new SentMark(offset, recipients));
+		for (String t : targets)
+			awaitingDelivery.computeIfAbsent(t, k -> new ArrayDeque<>()).addLast(whisperId);
+	}
+
+	/*
+	 * PRIVATE_DELIVERED / PRIVATE_READ <받는사람> <귓속말 번호> : 그 사람에게 보낸 것 중 번호 이하는 모두 받음 / 읽음
+	 * 읽음은 받음도 포함 (창이 넘쳐 받음 알림 없이 넘어간 것도 정리)
+	 */
+	private void onWhisperAck(String body, boolean read) {
+		String[] parts = body.split(" ");
+		if (parts.length < 2)
+			return;
+		long upTo = parseNumber(parts[1]);
+		if (upTo < 0)
+			return;
+		Deque<Long> sent = awaitingDelivery.getOrDefault(parts[0], new ArrayDeque<>());
+		Deque<Long> delivered = awaitingRead.computeIfAbsent(parts[0], k -> new ArrayDeque<>());
+		while (!sent.isEmpty() && sent.peekFirst() <= upTo) {
+			long id = sent.pollFirst();
+			delivered.addLast(id);
+			SentMark mark = sentMarks.get(id);
+			if (mark != null && ++mark.delivered == mark.recipients)
+				updateMark(mark, "(받음)");
+		}
+		while (read && !delivered.isEmpty() && delivered.peekFirst() <= upTo) {
+			long id = delivered.pollFirst();
+			SentMark mark = sentMarks.get(id);
+			if (mark != null && ++mark.read == mark.recipients) {
+				updateMark(mark, "(읽음)");
+				sentMarks.remove(id);
+			}
+		}
+	}
+
+	// 같은 길이의 표시로 바꿔 쓰므로 뒤에 출력된 표시들의 위치는 그대로
+	private void updateMark(SentMark mark, String text) {
+		messageArea.replaceRange(text, mark.offset, mark.offset + text.length());
+	}
+
 	// [수신 스레드 시작] 서버로부터 한 줄씩 메시지를 읽음
 	private void startReaderThread() {
 		Thread reader = new Thread(() -> {
@@ -173,6 +412,12 @@ public class WhisperChatClient extends JFrame {
 						line = line.substring(7);
 					}
 
+					// 서버 하트비트: 화면에는 표시하지 않고 바로 응답
+					if ("PING".equals(line)) {
+						out.println("<MYP2> PONG");
+						continue;
+					}
+
 					// final 변수로 복사 (람다식 사용 위해)
 					String finalLine = line;
 					SwingUtilities.invokeLater(() -> processServerMessage(finalLine));
@@ -189,7 +434,7 @@ public class WhisperChatClient extends JFrame {
 	}
 
 	/*
-	 * [서버 메시지 처리] MESSAGE / SYSTEM / PRIVATE_FROM / PRIVATE_SENT / ERROR 타입에 따라
+	 * [서버 메시지 처리] MESSAGE / SYSTEM / PRIVATE_* / FILE_* / ERROR 타입에 따라
 	 * 채팅창에 다른 형식으로 출력
 	 */
 	private void processServerMessage(String line) {
@@ -201,25 +446,105 @@ public class WhisperChatClient extends JFrame {
 		} else if (line.startsWith("SYSTEM ")) {
 			messageArea.append("[알림] " + line.substring(7) + "\n");
 
-			// 서버에서 보낸 귓속말 수신: PRIVATE_FROM 보낸사람:메시지
+			// 서버에서 보낸 귓속말 수신: PRIVATE_FROM 보낸사람 seq: 메시지
 		} else if (line.startsWith("PRIVATE_FROM ")) {
 			String content = line.substring(13);
 			String[] parts = content.split(":", 2);
 			if (parts.length >= 2) {
-				messageArea.append("[귓속말] From " + parts[0] + ": " + parts[1] + "\n");
+				String[] head = parts[0].split(" ");
+				long seq = head.length > 1 ? parseNumber(head[1]) : -1;
+				// 서버가 다시 보낸 것 중 이미 받은 것은 건너뜀
+				if (seq > 0 && !acceptSeq(seq))
+					return;
+				messageArea.append("[귓속말] From " + head[0] + ": " + parts[1].trim() + "\n");
 			} else {
 				messageArea.append("[귓속말] " + content + "\n");
 			}
 
-			// 내가 보낸 귓속말에 대한 확인 메시지: PRIVATE_SENT 대상ID:메시지
+			// 내가 보낸 귓속말에 대한 확인 메시지: PRIVATE_SENT 대상ID 귓속말번호: 메시지
 		} else if (line.startsWith("PRIVATE_SENT ")) {
 			String content = line.substring(13);
 			String[] parts = content.split(":", 2);
-			if (parts.length >= 2) {
-				messageArea.append("[귓속말] To " + parts[0] + ": " + parts[1] + "\n");
+			String[] head = parts[0].split(" ");
+			if (parts.length >= 2 && head.length >= 2) {
+				appendSentWhisper(head[0], parseNumber(head[1]), 1, new String[] { head[0] }, parts[1].trim());
 			} else {
 				messageArea.append("[귓속말] " + content + "\n");
 			}
+			// 여러 명에게 보낸 귓속말 결과: PRIVATE_SENT_MULTI 받은ID들(-) 못받은ID들(-) 귓속말번호 메시지
+		} else if (line.startsWith("PRIVATE_SENT_MULTI ")) {
+			String[] parts = line.substring(19).split(" ", 4);
+			if (parts.length >= 4) {
+				if (!"-".equals(parts[0])) {
+					String[] reached = parts[0].split(",");
+					appendSentWhisper(String.join(", ", reached), parseNumber(parts[2]), reached.length, reached,
+							parts[3]);
+				}
+				if (!"-".equals(parts[1]))
+					messageArea.append("[귓속말] 받지 못한 사용자: " + parts[1].replace(",", ", ") + "\n");
+			}
+
+			// 다시 로그인했을 때 서버가 알려 주는 이미 확인된 seq: PRIVATE_SEQ 받은seq 읽은seq
+		} else if (line.startsWith("PRIVATE_SEQ ")) {
+			String[] parts = line.substring(12).split(" ");
+			long received = parseNumber(parts[0]);
+			long read = parts.length > 1 ? parseNumber(parts[1]) : -1;
+			if (received > receivedSeq) {
+				receivedSeq = received;
+				receivedAhead.headSet(received, true).clear();
+				while (receivedAhead.remove(receivedSeq + 1))
+					receivedSeq++;
+				ackedReceived = received;
+			}
+			if (read > readSeq && read <= receivedSeq) {
+				readSeq = read;
+				ackedRead = read;
+			}
+			return;
+
+			// 보낸 귓속말을 상대가 받음 / 읽음: PRIVATE_DELIVERED 받는사람 귓속말번호 / PRIVATE_READ 받는사람 귓속말번호
+		} else if (line.startsWith("PRIVATE_DELIVERED ")) {
+			onWhisperAck(line.substring(18), false);
+			return;
+		} else if (line.startsWith("PRIVATE_READ ")) {
+			onWhisperAck(line.substring(13), true);
+			return;
+
+			// 귓속말 그룹: GROUP_OK 이름 인원 / GROUP_DELETED 이름 / GROUP_RESULT 개수 / GROUP_INFO 이름 ID들
+		} else if (line.startsWith("GROUP_OK ")) {
+			String[] parts = line.substring(9).split(" ");
+			messageArea.append("[그룹] @" + parts[0] + " 저장" + (parts.length > 1 ? " (" + parts[1] + "명)" : "") + "\n");
+		} else if (line.startsWith("GROUP_DELETED ")) {
+			messageArea.append("[그룹] @" + line.substring(14) + " 삭제\n");
+		} else if (line.startsWith("GROUP_RESULT ")) {
+			messageArea.append("[그룹] " + line.substring(13) + "개\n");
+		} else if (line.startsWith("GROUP_INFO ")) {
+			String[] parts = line.substring(11).split(" ", 2);
+			messageArea.append("[그룹] @" + parts[0] + ": " + (parts.length > 1 ? parts[1].replace(",", ", ") : "") + "\n");
+
+			// 파일 전송: 업로드 준비 완료 / 요청 실패 / 파일 도착 / 상대방 수신 완료
+		} else if (line.startsWith("FILE_READY ")) {
+			startUpload(line.substring(11));
+		} else if (line.startsWith("FILE_FAIL ")) {
+			pendingUploads.pollFirst();
+			messageArea.append("[파일] " + line.substring(10) + "\n");
+		} else if (line.startsWith("FILE_OFFER ")) {
+			acceptDownload(line.substring(11));
+		} else if (line.startsWith("FILE_DONE ")) {
+			String[] parts = line.substring(10).split(" ", 2);
+			messageArea.append("[파일] " + parts[0] + " 님이 " + (parts.length > 1 ? parts[1] : "") + " 을(를) 받았습니다.\n");
+
+			// 검색 결과: SEARCH_RESULT 건수 ms / SEARCH_HIT 시각(MM-dd HH:mm) 보낸사람 받는사람(*) 내용
+		} else if (line.startsWith("SEARCH_RESULT ")) {
+			String[] parts = line.substring(14).split(" ");
+			messageArea.append("[검색] " + parts[0] + "건" + (parts.length > 1 ? " (" + parts[1] + "ms)" : "") + "\n");
+		} else if (line.startsWith("SEARCH_HIT ")) {
+			String[] parts = line.substring(11).split(" ", 5);
+			if (parts.length >= 5) {
+				String who = "*".equals(parts[3]) ? parts[2] : parts[2] + " -> " + parts[3];
+				messageArea.append("[검색] " + parts[0] + " " + parts[1] + " " + who + ": " + parts[4] + "\n");
+			}
+
 			// 서버에서 내려준 에러 메시지
 		} else if (line.startsWith("ERROR ")) {
 			messageArea.append("[오류] " + line.substring(6) + "\n");
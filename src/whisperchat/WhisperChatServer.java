@@ -1,101 +1,397 @@
 package whisperchat;
 
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.HashMap;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
 
 /*
  * [채팅 서버 메인 클래스]
- * 클라이언트 접속을 받아서 ClientHandler에게 맡김
- * 현재 접속 중인 클라이언트 목록을 관리하고, 
- * broadcast / 귓속말(sendWhisper) 기능을 제공
+ * 클라이언트 접속을 받아서 이벤트 루프들에 차례대로(round-robin) 나눠 주고, 줄 단위 처리는 ClientHandler에게 맡김
+ * 현재 접속 중인 클라이언트 목록(SessionTable: 로그인마다 정수 번호 -> ID / 접속)을 관리하고,
+ * broadcast / 귓속말(sendWhisper, 여러 명에게 sendWhisperMulti) 기능을 제공
+ * 다른 루프에 있는 사용자에게 보낼 때는 그 루프의 우편함에 넣기만 함 (다른 루프의 접속 상태를 직접 만지지 않음)
  * 회원 정보는 MemberManager를 통해 처리
+ * 키 저장소(server.p12)가 있으면 채팅 포트를 TLS로 받음 (TlsConfig 참고), 없으면 평문
+ * 채팅 / 귓속말 본문은 전달 전에 MessageFilter(기본: 금지어 규칙 ContentFilter)를 한 번 거침
+ * 귓속말은 받는 사람마다 WhisperWindow에 확인(ACK)될 때까지 남겨 두고, 받기 전에 나간 사람의 창은 PARK_MILLIS 동안 맡아 둠
+ * -Dwhisperchat.capture=<파일> 이면 받은 줄을 모두 녹화 (TrafficCapture / TrafficReplay 참고)
  */
 public class WhisperChatServer {
 
 	// 서버 포트 번호
 	private static final int PORT = 59001;
+	// 서버 상태(접속 수, 버퍼 사용량, 힙 사용량)를 로그로 남기는 주기
+	private static final long STATS_INTERVAL_MILLIS = 60_000;
+	// 받지 못한 귓속말이 남은 채 나간 사용자의 확인 창을 맡아 두는 시간 (그 안에 다시 로그인하면 다시 보냄)
+	private static final long PARK_MILLIS = 10 * 60_000;
+	// 이벤트 루프 수 (기본: 코어 수, -Dwhisperchat.loops=N 으로 변경)
+	private static final int DEFAULT_LOOPS = Integer.getInteger("whisperchat.loops",
+			Runtime.getRuntime().availableProcessors());
+
+	private final int port;
+	// 파일 전송 전용 데이터 포트 (채팅 포트 + 1)
+	private final int filePort;
 
-	// 접속 중인 사용자 목록 (userId -> 출력 스트림)
-	private final Map<String, PrintWriter> onlineClients = new HashMap<>();
+	// 접속 중인 사용자 목록 (정수 번호 -> userId / 접속, ID로 찾는 것은 프로토콜에서 ID를 받을 때만)
+	private final SessionTable sessions = new SessionTable();
+	// 로그아웃 중인 사용자의 귓속말 확인 창 (userId -> 창, 로그인 / 로그아웃 때만 씀)
+	private final Map<String, WhisperWindow> parkedWindows = new ConcurrentHashMap<>();
+	// 귓속말 번호 (서버 전체에서 하나씩 증가, 보낸 사람에게 받음 / 읽음을 알릴 때 씀)
+	private final AtomicLong whisperIds = new AtomicLong();
 
 	private final MemberManager memberManager;
+	// 사용자마다 저장해 둔 귓속말 그룹 (groups.dat)
+	private final WhisperGroupStore groupStore;
+	// 파일 전송은 채팅 연결과 분리된 데이터 포트에서 처리
+	private final FileTransferServer fileTransferServer;
+	// 접속마다 하트비트/읽기 타임아웃을 거는 타이머 (0.5초 단위, 512칸 -> 한 바퀴 약 256초)
+	private final TimingWheel idleWheel;
+	// 로그인/회원가입처럼 users.dat을 읽고 쓰는 작업 전용 스레드풀 (이벤트 루프를 막지 않도록)
+	private final ExecutorService memberPool = Executors.newFixedThreadPool(4);
+	// 채팅 기록 검색 색인 (history 폴더) + SEARCH 처리 전용 스레드풀
+	private final ChatIndex chatIndex;
+	private final ExecutorService searchPool = Executors.newFixedThreadPool(2);
+	// 접속의 읽기/쓰기를 나눠 맡는 이벤트 루프들 (코어당 하나)
+	private final EventLoop[] loops;
+	// 다음 접속을 맡길 루프 번호 (accept 스레드만 사용)
+	private int nextLoop;
+	// broadcast 전달 완료 시간 통계
+	private final FanOutStats fanOutStats = new FanOutStats();
+	// TLS 서버 쪽 상태 (평문 서버면 null)
+	private final TlsAcceptor tlsAcceptor;
+	// 금지어 규칙 (filter.rules, 바뀌면 다시 읽음)과 지금 쓰는 검사 단계 (기본은 contentFilter)
+	private final ContentFilter contentFilter = ContentFilter.fromSystemProperty();
+	private volatile MessageFilter messageFilter = contentFilter;
+	// 받은 줄 녹화 (녹화하지 않으면 null)
+	private final TrafficCapture capture = TrafficCapture.fromSystemProperty();
 
-	public WhisperChatServer() {
+	public WhisperChatServer() throws IOException {
+		this(PORT, DEFAULT_LOOPS, TlsConfig.loadServerContext());
+	}
+
+	// 평문 서버 (측정 도구용)
+	public WhisperChatServer(int port, int loopCount) throws IOException {
+		this(port, loopCount, null);
+	}
+
+	// tlsContext가 null이면 평문
+	public WhisperChatServer(int port, int loopCount, SSLContext tlsContext) throws IOException {
+		this.port = port;
+		this.tlsAcceptor = tlsContext == null ? null : new TlsAcceptor(tlsContext);
+		this.filePort = port + 1;
 		this.memberManager = new MemberManager();
+		this.groupStore = new WhisperGroupStore();
+		this.fileTransferServer = new FileTransferServer(filePort, this);
+		this.idleWheel = new TimingWheel("idle-wheel", 500, 512, Executors.newFixedThreadPool(2));
+		this.chatIndex = new ChatIndex("history");
+		this.loops = new EventLoop[Math.max(1, loopCount)];
+		for (int i = 0; i < loops.length; i++)
+			loops[i] = new EventLoop("io-loop-" + i);
+	}
+
+	public FileTransferServer getFileTransferServer() {
+		return fileTransferServer;
+	}
+
+	public WhisperGroupStore getGroupStore() {
+		return groupStore;
+	}
+
+	public TimingWheel getIdleWheel() {
+		return idleWheel;
+	}
+
+	public ExecutorService getMemberPool() {
+		return memberPool;
+	}
+
+	public ChatIndex getChatIndex() {
+		return chatIndex;
+	}
+
+	public ExecutorService getSearchPool() {
+		return searchPool;
+	}
+
+	public FanOutStats getFanOutStats() {
+		return fanOutStats;
+	}
+
+	// TLS 통계 (평문 서버면 null)
+	public TlsStats getTlsStats() {
+		return tlsAcceptor == null ? null : tlsAcceptor.getStats();
+	}
+
+	public ContentFilter getContentFilter() {
+		return contentFilter;
+	}
+
+	// 검사 단계 바꾸기 (null이면 검사하지 않음)
+	public void setMessageFilter(MessageFilter filter) {
+		this.messageFilter = filter;
+	}
+
+	// 보낼 본문 검사 -> 전달할 본문 (가렸을 수 있음), null이면 막힘 (보낸 사람의 루프 스레드에서 호출)
+	public String filterMessage(String from, String text) {
+		MessageFilter f = messageFilter;
+		return f == null ? text : f.filter(from, text);
+	}
+
+	// 받은 줄 녹화 (녹화하지 않으면 null)
+	public TrafficCapture getCapture() {
+		return capture;
+	}
+
+	public EventLoop[] getLoops() {
+		return loops;
+	}
+
+	// 모든 루프가 맡고 있는 접속 수 합계
+	public int getConnectionCount() {
+		int sum = 0;
+		for (EventLoop loop : loops)
+			sum += loop.getConnectionCount();
+		return sum;
 	}
 
 	/*
-	 * 서버 시작 ServerSocket으로 PORT에서 접속 대기 클라이언트가 접속할 때마다 ClientHandler를 만들어 스레드풀에 맡김
+	 * 서버 시작 ServerSocketChannel로 port에서 접속 대기 (이 스레드는 accept만 담당)
+	 * 클라이언트가 접속할 때마다 ClientHandler를 만들어 다음 차례의 이벤트 루프에 등록 (접속마다 스레드를 만들지 않음)
 	 */
 	public void start() {
-		System.out.println("[WhisperChatServer] 서버가 " + PORT + " 포트에서 시작됩니다...");
-		ExecutorService pool = Executors.newFixedThreadPool(20);
+		ServerLog.info("server.start", "port", port, "filePort", filePort, "loops", loops.length);
+		if (tlsAcceptor != null)
+			ServerLog.info("server.tls_enabled", "handshakeThreads", tlsAcceptor.getHandshakeThreads());
+		for (EventLoop loop : loops)
+			loop.start();
+
+		// 파일 전송 서버는 별도 스레드에서 데이터 포트 대기
+		Thread fileThread = new Thread(fileTransferServer, "file-transfer");
+		fileThread.setDaemon(true);
+		fileThread.start();
+
+		scheduleStats();
+		contentFilter.startWatching();
 
-		try (ServerSocket listener = new ServerSocket(PORT)) {
+		try (ServerSocketChannel listener = ServerSocketChannel.open()) {
+			listener.bind(new InetSocketAddress(port));
 			while (true) {
-				Socket socket = listener.accept();
-				ClientHandler handler = new ClientHandler(socket, memberManager, this);
-				pool.execute(handler);
+				SocketChannel channel = listener.accept();
+				ClientHandler handler = new ClientHandler(memberManager, this);
+				EventLoop loop = loops[nextLoop];
+				nextLoop = (nextLoop + 1) % loops.length;
+				loop.register(channel, handler, tlsAcceptor);
 			}
 		} catch (Exception e) {
-			System.err.println("[WhisperChatServer] 서버 실행 중 오류: " + e.getMessage());
-			pool.shutdown();
+			ServerLog.error("server.error", "error", e);
+			memberPool.shutdown();
+			if (tlsAcceptor != null)
+				tlsAcceptor.shutdown();
+			for (EventLoop loop : loops)
+				loop.shutdown();
 		}
 	}
 
+	// 주기적으로 서버 상태 기록 (접속당 메모리 사용량 확인용)
+	private void scheduleStats() {
+		idleWheel.schedule(() -> {
+			logStats();
+			scheduleStats();
+		}, STATS_INTERVAL_MILLIS);
+	}
+
+	private void logStats() {
+		Runtime rt = Runtime.getRuntime();
+		ServerLog.info("server.stats", "connections", getConnectionCount(), "online", onlineCount(),
+				"heapUsedKB", (rt.totalMemory() - rt.freeMemory()) / 1024);
+		ServerLog.info("server.buffers", "inUseKB", getBufferInUseBytes() / 1024, "pooledKB",
+				getBufferPooledBytes() / 1024);
+		if (fanOutStats.getCount() > 0) {
+			ServerLog.info("server.fanout", "count", fanOutStats.getCount(), "avgMs",
+					String.format("%.2f", fanOutStats.getAvgMillis()), "maxMs",
+					String.format("%.2f", fanOutStats.getMaxMillis()));
+			fanOutStats.reset();
+		}
+		TlsStats tls = getTlsStats();
+		if (tls != null && tls.getHandshakes() + tls.getFailed() > 0) {
+			ServerLog.info("server.tls", "handshakes", tls.getHandshakes(), "resumed", tls.getResumed(), "avgMs",
+					String.format("%.2f", tls.getAvgMillis()));
+			if (tls.getFailed() > 0)
+				ServerLog.warn("server.tls_failed", "count", tls.getFailed());
+			tls.reset();
+		}
+		ServerLog.info("server.index", "segments", chatIndex.getSegmentCount(), "searches", chatIndex.getSearchCount(),
+				"avgSearchMs", String.format("%.2f", chatIndex.getAvgSearchMillis()));
+		if (chatIndex.getDroppedCount() > 0)
+			ServerLog.warn("server.index_dropped", "messages", chatIndex.getDroppedCount());
+		if (contentFilter.getCheckedCount() > 0) {
+			ServerLog.info("server.filter", "checked", contentFilter.getCheckedCount(), "blocked",
+					contentFilter.getBlockedCount(), "masked", contentFilter.getMaskedCount());
+			if (contentFilter.getFlaggedCount() > 0)
+				ServerLog.info("server.filter_flagged", "messages", contentFilter.getFlaggedCount());
+			contentFilter.resetStats();
+		}
+		if (!parkedWindows.isEmpty())
+			ServerLog.info("server.whisper_parked", "users", parkedWindows.size());
+		if (capture != null && capture.getDroppedCount() > 0)
+			ServerLog.warn("server.capture_dropped", "events", capture.getDroppedCount());
+	}
+
+	// 모든 루프의 버퍼 풀에서 지금 빌려간 다이렉트 버퍼 크기 합계
+	public long getBufferInUseBytes() {
+		long sum = 0;
+		for (EventLoop loop : loops)
+			sum += loop.getBufferPool().getInUseBytes();
+		return sum;
+	}
+
+	public long getBufferPooledBytes() {
+		long sum = 0;
+		for (EventLoop loop : loops)
+			sum += loop.getBufferPool().getAllocatedBytes();
+		return sum;
+	}
+
 	/*
-	 * 새 클라이언트 추가 userId와 그 사용자의 PrintWriter를 onlineClients에 등록 synchronized: 여러
-	 * 스레드가 동시에 접속/퇴장할 수 있으므로 동기화
+	 * 새 클라이언트 추가 userId와 그 사용자의 접속을 sessions에 등록하고 세션 번호 반환 (접속을 맡은 루프 스레드에서 호출)
+	 * 이미 같은 ID가 접속 중이면 등록하지 않고 SessionTable.NONE 반환 (확인과 등록을 한 번에 해서 중복 로그인 방지)
+	 * 등록되면 그 루프의 로그인 사용자 목록에도 넣어서 broadcast를 받게 함
+	 * 맡아 둔 귓속말 확인 창이 있으면 이어서 씀 (접속은 로그인 응답을 보낸 뒤 ClientHandler가 붙임)
 	 */
-	public synchronized void addClient(String userId, PrintWriter out) {
-		onlineClients.put(userId, out);
-		System.out.println("[Server] " + userId + " 접속. (현재 " + onlineClients.size() + "명)");
+	public int addClient(String userId, Connection conn) {
+		WhisperWindow parked = parkedWindows.remove(userId);
+		int handle = sessions.add(userId, conn, parked != null ? parked : new WhisperWindow(userId));
+		if (handle == SessionTable.NONE) {
+			if (parked != null)
+				parkedWindows.put(userId, parked);
+			return handle;
+		}
+		conn.loop().join(conn);
+		ServerLog.info("client.join", "user", userId, "handle", handle, "online", sessions.size());
+		return handle;
+	}
+
+	/*
+	 * 사용자가 나가면 sessions에서 번호 반납 (루프 목록에서는 Connection이 닫힐 때 빠짐)
+	 * 받지 못한 귓속말이 남았으면 번호를 반납하기 전에 확인 창을 맡겨 둠 (다음 로그인이 반드시 찾도록)
+	 */
+	public void removeClient(int handle) {
+		String userId = sessions.id(handle);
+		WhisperWindow window = sessions.window(handle);
+		if (window != null && window.detach()) {
+			int generation = window.getParkGeneration();
+			parkedWindows.put(userId, window);
+			idleWheel.schedule(() -> {
+				// 그 사이 다시 로그인해서 가져갔으면 맵에 없고, 다시 로그인했다가 또 맡겨졌으면 회차가 다름
+				// (맵에서 빼는 것과 회차 확인을 키 하나의 compute 안에서 해서 addClient의 remove와 겹치지 않게)
+				parkedWindows.computeIfPresent(userId,
+						(id, w) -> w == window && window.discardIfParked(generation) ? null : w);
+			}, PARK_MILLIS);
+		}
+		sessions.remove(handle);
+		ServerLog.info("client.leave", "user", userId, "online", sessions.size());
+	}
+
+	// 로그인한 세션의 귓속말 확인 창
+	public WhisperWindow getWhisperWindow(int handle) {
+		return sessions.window(handle);
 	}
 
-	// 사용자가 나가면 onlineClients에서 제거
-	public synchronized void removeClient(String userId) {
-		onlineClients.remove(userId);
-		System.out.println("[Server] " + userId + " 퇴장. (현재 " + onlineClients.size() + "명)");
+	public long nextWhisperId() {
+		return whisperIds.incrementAndGet();
 	}
 
 	// 해당 ID가 현재 접속 중인지 여부 확인 (중복 로그인 방지용)
-	public synchronized boolean isUserOnline(String userId) {
-		return onlineClients.containsKey(userId);
+	public boolean isUserOnline(String userId) {
+		return sessions.find(userId) != SessionTable.NONE;
+	}
+
+	public int onlineCount() {
+		return sessions.size();
 	}
 
 	/*
 	 * broadcast type: MESSAGE / SYSTEM 등 메시지 종류 message: 실제 내용 여기에서 <MYP2> 헤더를 한 번만
 	 * 붙여서, 모든 클라이언트에게 뿌려줌
+	 * 바이트 변환도 한 번만 하고, 루프마다 우편함에 "내 사용자들에게 전달" 작업 하나씩만 넣음
+	 * -> 루프(코어)마다 자기 사용자 몫을 동시에 전달하고, 큰 몫은 루프 안에서 다시 여러 바퀴로 나눔
+	 * 같은 보낸 사람의 채팅은 우편함과 전달 대기열 모두 들어온 순서대로 처리되므로 모든 수신자에게 순서대로 도착
+	 * 마지막 루프가 끝나면 전달 완료 시간이 fanOutStats에 기록됨
 	 */
-	public synchronized void broadcast(String type, String message) {
-		String line = "<MYP2> " + type + " " + message;
-		for (PrintWriter writer : onlineClients.values()) {
-			writer.println(line);
+	public void broadcast(String type, String message) {
+		broadcastFrame(Connection.encode("<MYP2> " + type + " " + message));
+	}
+
+	// 채팅 broadcast: 보낸 사람이 로그인 때 만들어 둔 "<MYP2> MESSAGE 아이디: " 바이트 뒤에 본문만 붙임
+	public void broadcastChat(byte[] prefix, String text) {
+		broadcastFrame(Connection.encode(prefix, text));
+	}
+
+	private void broadcastFrame(byte[] frame) {
+		FanOut fanOut = new FanOut(frame, loops.length, fanOutStats);
+		for (EventLoop loop : loops) {
+			// 보낸 사람이 속한 루프는 우편함을 거치지 않고 바로 대기열에 넣음
+			if (loop.inLoop())
+				loop.deliverToMembers(fanOut);
+			else
+				loop.execute(() -> loop.deliverToMembers(fanOut));
 		}
 	}
 
 	/*
-	 * 귓속말 전송 fromId: 보낸 사람 toId: 받을 사람 message: 내용 대상이 접속 중이면 PRIVATE_FROM 메시지를 한 번
-	 * 보내고 true 반환 대상이 없으면 false 반환
+	 * 귓속말 전송 fromId: 보낸 사람 fromPrefix: 보낸 사람의 "<MYP2> PRIVATE_FROM 아이디 " 바이트 toId: 받을 사람
+	 * whisperId: 귓속말 번호 text: 내용(UTF-8)
+	 * 대상이 접속 중이면 대상의 확인 창에 넣고 PRIVATE_FROM 메시지를 한 번 보냄
+	 * 결과: WhisperWindow.DELIVERED / OFFLINE(대상이 없음) / FULL(대상이 확인하지 않은 귓속말이 너무 많음)
 	 */
-	public synchronized boolean sendWhisper(String fromId, String toId, String message) {
-		PrintWriter targetWriter = onlineClients.get(toId);
+	public int sendWhisper(String fromId, byte[] fromPrefix, String toId, long whisperId, byte[] text) {
+		WhisperWindow target = sessions.lookupWindow(toId);
+		return target == null ? WhisperWindow.OFFLINE : target.deliver(fromId, fromPrefix, whisperId, text);
+	}
 
-		if (targetWriter != null) {
-			targetWriter.println("<MYP2> PRIVATE_FROM " + fromId + ": " + message);
-			return true;
-		} else {
-			return false;
+	/*
+	 * [여러 명에게 귓속말] 본문 바이트는 한 번만 만들어 모든 대상의 확인 창이 같은 배열을 가리킴
+	 * 대상마다 seq가 달라 프레임은 대상마다 만들고, seq 순서대로 도착하도록 창의 잠금 안에서 대상 루프의 우편함에 넣음
+	 * 창에 넣은 대상은 reached에, 접속 중이 아니거나 창이 가득 찬 대상은 unreached에 담음
+	 */
+	public void sendWhisperMulti(String fromId, byte[] fromPrefix, Collection<String> toIds, long whisperId,
+			byte[] text, List<String> reached, List<String> unreached) {
+		for (String toId : toIds) {
+			if (sendWhisper(fromId, fromPrefix, toId, whisperId, text) == WhisperWindow.DELIVERED)
+				reached.add(toId);
+			else
+				unreached.add(toId);
 		}
 	}
 
-	public static void main(String[] args) {
+	/*
+	 * 특정 사용자에게 이미 완성된 프로토콜 한 줄을 그대로 전달 (파일 전송 알림 등, 제어 통로)
+	 * 대상이 접속 중이면 true, 아니면 false 반환
+	 */
+	public boolean sendToUser(String toId, String line) {
+		return sendToUser(toId, line, Connection.LANE_CONTROL);
+	}
+
+	public boolean sendToUser(String toId, String line, int lane) {
+		Connection target = sessions.lookup(toId);
+		if (target == null)
+			return false;
+		target.send(line, lane);
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException {
 		WhisperChatServer server = new WhisperChatServer();
 		server.start();
 	}
-}
\ No newline at end of file
+}
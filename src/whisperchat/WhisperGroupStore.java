@@ -0,0 +1,152 @@
+package whisperchat;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * [귓속말 그룹 저장소] 사용자마다 이름을 붙여 저장해 둔 귓속말 대상 목록 (WHISPER_MULTI @그룹이름 으로 사용)
+ *
+ * 파일(groups.dat) 한 줄에 그룹 하나: owner::name::id1,id2,...
+ * 서버 시작 때 한 번 읽어 메모리에 두고, 귓속말을 보낼 때는 메모리에서만 찾음 (이벤트 루프에서 바로 호출 가능)
+ * 저장 / 삭제는 전체를 임시 파일에 다시 쓰고 바꿔치기 -> 회원 처리 스레드풀에서 호출할 것
+ */
+public class WhisperGroupStore {
+
+	static final String GROUP_FILE = "groups.dat";
+	// 한 그룹에 넣을 수 있는 인원, 한 사용자가 만들 수 있는 그룹 수
+	static final int MAX_MEMBERS = 100;
+	static final int MAX_GROUPS_PER_USER = 32;
+	// 그룹 이름에 쓸 수 없는 문자 (프로토콜 / 파일 구분자와 겹침)
+	private static final String NAME_FORBIDDEN = " ,:@";
+
+	private final Path file;
+	// owner -> (그룹 이름 -> 대상 ID 목록), 목록은 바꾸지 않고 통째로 교체
+	private final Map<String, Map<String, List<String>>> groups = new ConcurrentHashMap<>();
+
+	public WhisperGroupStore() {
+		this(GROUP_FILE);
+	}
+
+	WhisperGroupStore(String fileName) {
+		this.file = Paths.get(fileName);
+		load();
+	}
+
+	private void load() {
+		if (!Files.exists(file))
+			return;
+		int count = 0;
+		try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] parts = line.split(MemberManager.DELIMITER);
+				if (parts.length < 3)
+					continue;
+				byOwner(parts[0]).put(parts[1], Collections.unmodifiableList(Arrays.asList(parts[2].split(","))));
+				count++;
+			}
+		} catch (IOException e) {
+			ServerLog.error("group.load_failed", "file", file, "error", e);
+		}
+		if (count > 0)
+			ServerLog.info("group.load", "groups", count);
+	}
+
+	private Map<String, List<String>> byOwner(String owner) {
+		return groups.computeIfAbsent(owner, k -> new ConcurrentHashMap<>());
+	}
+
+	// 그룹 이름으로 쓸 수 있는지 (1 ~ 20자, 공백 / 쉼표 / 콜론 / @ 제외)
+	static boolean isValidName(String name) {
+		if (name.isEmpty() || name.length() > 20)
+			return false;
+		for (int i = 0; i < name.length(); i++) {
+			if (NAME_FORBIDDEN.indexOf(name.charAt(i)) >= 0)
+				return false;
+		}
+		return true;
+	}
+
+	// owner의 그룹 대상 목록 (없으면 null)
+	public List<String> get(String owner, String name) {
+		Map<String, List<String>> mine = groups.get(owner);
+		return mine == null ? null : mine.get(name);
+	}
+
+	// owner의 모든 그룹 (이름순)
+	public Map<String, List<String>> list(String owner) {
+		Map<String, List<String>> mine = groups.get(owner);
+		return mine == null ? Collections.emptyMap() : new TreeMap<>(mine);
+	}
+
+	/*
+	 * [저장] 같은 이름이 있으면 덮어씀, 그룹 수가 한도를 넘으면 false
+	 * 바뀐 내용을 넣어 파일에 다 쓴 뒤에 메모리에 반영 (쓰기에 실패하면 예외, 메모리는 그대로)
+	 * -> 이벤트 루프의 get()은 파일에 써진 그룹만 봄 (곧 되돌려질 목록으로 귓속말을 보내지 않음)
+	 */
+	public synchronized boolean save(String owner, String name, List<String> members) throws IOException {
+		Map<String, List<String>> mine = groups.get(owner);
+		int count = mine == null ? 0 : mine.size();
+		if ((mine == null || !mine.containsKey(name)) && count >= MAX_GROUPS_PER_USER)
+			return false;
+		List<String> copy = Collections.unmodifiableList(new ArrayList<>(members));
+		writeAll(owner, name, copy);
+		byOwner(owner).put(name, copy);
+		ServerLog.info("group.save", "user", owner, "group", name, "members", copy.size());
+		return true;
+	}
+
+	// [삭제] 없는 그룹이면 false (저장과 같이 파일에서 먼저 지운 뒤 메모리에서 뺌)
+	public synchronized boolean delete(String owner, String name) throws IOException {
+		Map<String, List<String>> mine = groups.get(owner);
+		if (mine == null || !mine.containsKey(name))
+			return false;
+		writeAll(owner, name, null);
+		mine.remove(name);
+		return true;
+	}
+
+	/*
+	 * 지금 내용에 (owner, name) 하나만 replacement로 바꿔서(null이면 뺌) 임시 파일에 쓰고 바꿔치기
+	 * 중간에 서버가 죽어도 예전 파일은 그대로 (save / delete가 synchronized라 그 사이 메모리는 바뀌지 않음)
+	 */
+	private void writeAll(String changedOwner, String changedName, List<String> replacement) throws IOException {
+		Path tmp = Paths.get(file + ".tmp");
+		try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			boolean written = false;
+			for (Map.Entry<String, Map<String, List<String>>> owner : groups.entrySet()) {
+				for (Map.Entry<String, List<String>> g : owner.getValue().entrySet()) {
+					List<String> members = g.getValue();
+					if (owner.getKey().equals(changedOwner) && g.getKey().equals(changedName)) {
+						members = replacement;
+						written = true;
+					}
+					if (members != null)
+						writeLine(out, owner.getKey(), g.getKey(), members);
+				}
+			}
+			if (!written && replacement != null)
+				writeLine(out, changedOwner, changedName, replacement);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeLine(BufferedWriter out, String owner, String name, List<String> members)
+			throws IOException {
+		out.write(String.join(MemberManager.DELIMITER, owner, name, String.join(",", members)));
+		out.newLine();
+	}
+}
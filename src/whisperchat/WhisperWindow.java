@@ -0,0 +1,236 @@
+package whisperchat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * [귓속말 확인 창] 받는 사람 한 명에게 간 귓속말 중 아직 확인(ACK)되지 않은 것만 들고 있는 작은 원형 버퍼
+ *
+ * 받는 사람에게 가는 귓속말마다 순번(seq, 1부터 하나씩)을 붙여 PRIVATE_FROM <보낸사람> <seq>: <내용> 으로 보냄
+ * 클라이언트는 주기적으로 ACK <받은 seq> <읽은 seq> 한 줄만 보냄 (그 seq까지 모두 받음 / 읽음, 메시지마다 ACK하지 않음)
+ * -> 받은 것은 본문을 버리고 보낸 사람 정보만 남겼다가, 읽으면 그것도 버림
+ * 보낸 사람에게는 귓속말 번호(서버 전체에서 하나씩 늘어나는 id) 기준으로 PRIVATE_DELIVERED / PRIVATE_READ <받는사람> <id>
+ * (그 받는 사람에게 보낸 것 중 id 이하는 모두 받음 / 읽음) 를 ACK 한 번에 보낸 사람마다 한 줄씩만 알림
+ *
+ * 받는 사람의 접속이 끊기면 창은 서버에 맡겨 두었다가(WhisperChatServer 참고) 다시 로그인하면 받지 못한 것을 같은 seq로 다시 보냄
+ * 이때 먼저 PRIVATE_SEQ <받은 seq> <읽은 seq> 를 보내 새 클라이언트가 seq를 어디부터 셀지 알려 줌
+ * 같은 사람에게 여러 루프(보낸 사람들)에서 동시에 넣을 수 있으므로 메서드는 모두 synchronized
+ * seq를 붙이는 것과 받는 사람 루프의 우편함에 넣는 것(Connection.postFrame)을 같은 잠금 안에서 하므로 받는 쪽에는 항상 seq 순서대로 도착
+ * (보낸 사람이 받는 사람과 같은 루프여도 우편함을 거침 -> 다른 루프가 먼저 넣은 seq를 앞지르지 않음)
+ *
+ * 받지 못한 것으로 창이 가득 차면 새 귓속말은 받지 않음 (보낸 사람에게 오류, 받았다고 거짓으로 알리지 않도록 버리지 않음)
+ */
+final class WhisperWindow {
+
+	// 들고 있을 최대 개수 (넘으면 받았지만 읽지 않은 것부터 버리고, 모두 받지 못한 것이면 새 귓속말을 거절)
+	static final int MAX_ENTRIES = 1024;
+	// deliver 결과
+	static final int DELIVERED = 0;
+	static final int OFFLINE = 1; // 버려진 창 (받는 사람이 막 나감)
+	static final int FULL = 2; // 받지 못한 귓속말이 MAX_ENTRIES개
+	private static final int INITIAL_CAPACITY = 8;
+
+	private final String owner;
+	// 지금 접속 (로그아웃 중이면 null)
+	private Connection conn;
+	// 버려진 창 (로그아웃 때 남은 것이 없었거나 맡겨 둔 시간이 지남) -> 더 넣지 않음
+	private boolean discarded;
+	// 맡겨질 때마다 하나씩 늘어남 (앞서 맡겨졌을 때 걸어 둔 정리 타이머가 다시 맡겨진 창을 버리지 않도록)
+	private int parkGeneration;
+
+	// seq 배정
+	private long nextSeq = 1;
+	// 클라이언트가 확인한 seq (delivered 이하는 받음, read 이하는 읽음, read <= delivered)
+	private long delivered;
+	private long read;
+	// 원형 버퍼: seq = read + 1 + i 인 항목이 (head + i) & (용량 - 1) 칸에 있음, 개수는 nextSeq - read - 1
+	private int head;
+	private String[] senders = new String[INITIAL_CAPACITY];
+	private long[] whisperIds = new long[INITIAL_CAPACITY];
+	// 보낸 사람의 "<MYP2> PRIVATE_FROM 아이디 " 바이트와 본문 바이트 (여러 명에게 보낸 것이면 모두 같은 배열을 가리킴), 받은 뒤에는 null
+	private byte[][] prefixes = new byte[INITIAL_CAPACITY][];
+	private byte[][] texts = new byte[INITIAL_CAPACITY][];
+	// 창이 가득 차서 거절한 수
+	private long refused;
+
+	WhisperWindow(String owner) {
+		this.owner = owner;
+	}
+
+	private int count() {
+		return (int) (nextSeq - read - 1);
+	}
+
+	private int slot(long seq) {
+		return (head + (int) (seq - read - 1)) & (senders.length - 1);
+	}
+
+	/*
+	 * [귓속말 넣기] seq를 붙여 창에 넣고, 접속 중이면 받는 사람 루프의 우편함에 넣음 (보낸 사람의 루프 스레드에서 호출)
+	 * 결과: DELIVERED / OFFLINE(버려진 창, 보낸 사람에게는 접속 중이 아니라고 알림) / FULL
+	 */
+	synchronized int deliver(String from, byte[] fromPrefix, long whisperId, byte[] text) {
+		if (discarded)
+			return OFFLINE;
+		if (count() == MAX_ENTRIES) {
+			if (read == delivered) {
+				if (refused++ == 0)
+					ServerLog.warn("whisper.window_full", "user", owner, "max", MAX_ENTRIES);
+				return FULL;
+			}
+			dropOldestRead();
+		} else if (count() == senders.length)
+			grow();
+		long seq = nextSeq++;
+		int i = slot(seq);
+		senders[i] = from;
+		whisperIds[i] = whisperId;
+		prefixes[i] = fromPrefix;
+		texts[i] = text;
+		if (conn != null)
+			conn.postFrame(frame(fromPrefix, seq, text), Connection.LANE_WHISPER);
+		return DELIVERED;
+	}
+
+	// 받았지만 읽지 않은 것 중 가장 오래된 것을 버림 (그 보낸 사람은 읽음 알림만 받지 못함, 받음은 이미 알렸음)
+	private void dropOldestRead() {
+		long seq = read + 1;
+		clear(slot(seq));
+		read = seq;
+		head = (head + 1) & (senders.length - 1);
+	}
+
+	private void grow() {
+		int n = count();
+		int cap = senders.length * 2;
+		String[] s = new String[cap];
+		long[] w = new long[cap];
+		byte[][] p = new byte[cap][];
+		byte[][] t = new byte[cap][];
+		for (int k = 0; k < n; k++) {
+			int i = (head + k) & (senders.length - 1);
+			s[k] = senders[i];
+			w[k] = whisperIds[i];
+			p[k] = prefixes[i];
+			t[k] = texts[i];
+		}
+		senders = s;
+		whisperIds = w;
+		prefixes = p;
+		texts = t;
+		head = 0;
+	}
+
+	private void clear(int i) {
+		senders[i] = null;
+		prefixes[i] = null;
+		texts[i] = null;
+	}
+
+	/*
+	 * [다시 로그인] 새 접속을 붙이고 받지 못한 것(delivered 다음부터)을 같은 seq로 다시 보냄 (받는 사람의 루프 스레드)
+	 * 맡겨 둔 창이면 먼저 PRIVATE_SEQ로 이미 확인된 seq를 알려 줌 (새 클라이언트는 0부터 세므로, 알려 주지 않으면 빈 seq로 봄)
+	 * 다시 보낸 개수 반환
+	 */
+	synchronized int attach(Connection c) {
+		conn = c;
+		if (delivered > 0)
+			c.postFrame(Connection.encode("<MYP2> PRIVATE_SEQ " + delivered + " " + read), Connection.LANE_WHISPER);
+		int resent = 0;
+		for (long seq = delivered + 1; seq < nextSeq; seq++) {
+			int i = slot(seq);
+			c.postFrame(frame(prefixes[i], seq, texts[i]), Connection.LANE_WHISPER);
+			resent++;
+		}
+		return resent;
+	}
+
+	/*
+	 * [로그아웃] 접속을 떼고, 받았지만 읽지 않은 것은 더 알릴 일이 없으므로 버림
+	 * 받지 못한 것이 남았으면 true (서버가 맡아 둠, 맡긴 회차는 getParkGeneration), 없으면 창을 버리고 false
+	 * 사용자 표에서 빼기 전에 호출 (그래야 같은 ID의 다음 로그인이 맡겨 둔 창을 찾음)
+	 */
+	synchronized boolean detach() {
+		parkGeneration++;
+		conn = null;
+		while (read < delivered) {
+			clear(slot(read + 1));
+			read++;
+			head = (head + 1) & (senders.length - 1);
+		}
+		if (count() == 0)
+			discarded = true;
+		return !discarded;
+	}
+
+	synchronized int getParkGeneration() {
+		return parkGeneration;
+	}
+
+	// 맡아 둔 시간이 지나면 버림 (그 사이 다시 로그인했거나, 다시 로그인했다가 또 맡겨졌으면 false)
+	synchronized boolean discardIfParked(int generation) {
+		if (conn != null || generation != parkGeneration)
+			return false;
+		discarded = true;
+		return true;
+	}
+
+	/*
+	 * [ACK 처리] 클라이언트가 보낸 누적 확인 (받는 사람의 루프 스레드)
+	 * 범위를 넘는 값은 잘라서 씀, 보낸 사람에게 보낼 알림을 {보낸 사람 ID, 한 줄} 목록으로 돌려줌 (잠금 밖에서 보내도록)
+	 */
+	synchronized List<String[]> ack(long deliveredSeq, long readSeq) {
+		long d = Math.min(Math.max(deliveredSeq, delivered), nextSeq - 1);
+		long r = Math.min(Math.max(readSeq, read), d);
+		List<String[]> notices = new ArrayList<>();
+		if (d > delivered) {
+			Map<String, Long> last = new LinkedHashMap<>();
+			for (long seq = delivered + 1; seq <= d; seq++) {
+				int i = slot(seq);
+				last.put(senders[i], whisperIds[i]);
+				prefixes[i] = null;
+				texts[i] = null;
+			}
+			delivered = d;
+			for (Map.Entry<String, Long> e : last.entrySet())
+				notices.add(new String[] { e.getKey(), "<MYP2> PRIVATE_DELIVERED " + owner + " " + e.getValue() });
+		}
+		if (r > read) {
+			Map<String, Long> last = new LinkedHashMap<>();
+			while (read < r) {
+				int i = slot(read + 1);
+				last.put(senders[i], whisperIds[i]);
+				clear(i);
+				read++;
+				head = (head + 1) & (senders.length - 1);
+			}
+			for (Map.Entry<String, Long> e : last.entrySet())
+				notices.add(new String[] { e.getKey(), "<MYP2> PRIVATE_READ " + owner + " " + e.getValue() });
+		}
+		return notices;
+	}
+
+	// 받지 못한 개수 (통계용)
+	synchronized int getPendingCount() {
+		return (int) (nextSeq - 1 - delivered);
+	}
+
+	// "<MYP2> PRIVATE_FROM 아이디 " + seq + ": " + 본문 + '\n' (seq 외에는 보낸 사람이 만들어 둔 바이트를 복사만 함)
+	private static byte[] frame(byte[] prefix, long seq, byte[] text) {
+		byte[] digits = Long.toString(seq).getBytes(StandardCharsets.US_ASCII);
+		byte[] frame = new byte[prefix.length + digits.length + 2 + text.length + 1];
+		int p = 0;
+		System.arraycopy(prefix, 0, frame, p, prefix.length);
+		p += prefix.length;
+		System.arraycopy(digits, 0, frame, p, digits.length);
+		p += digits.length;
+		frame[p++] = ':';
+		frame[p++] = ' ';
+		System.arraycopy(text, 0, frame, p, text.length);
+		frame[frame.length - 1] = '\n';
+		return frame;
+	}
+}